@@ -0,0 +1,51 @@
+#!/bin/sh
+#
+# Perfil sense finestres de BeWater, per fer moltes simulacions curtes seguides.
+#
+#   bin/bewater-headless.sh preparar                     compila i crea l'arxiu de classes compartides
+#   bin/bewater-headless.sh entrada sortida [opcions]    simula (les opcions són les de BeWater)
+#
+# "preparar" compila src amb la concatenació de textos en línia (sense invokedynamic, que a l'arrencada crea
+# classes), ho posa en un JAR i fa una simulació d'entrenament amb BEWATER_ENTRENAMENT. La llista de classes que
+# ha carregat (out/headless/bewater.classlist) és el pla de càrrega: amb ella es crea l'arxiu AppCDS
+# out/headless/bewater.jsa, que té totes aquestes classes ja analitzades i verificades.
+# Si l'arxiu no hi és, la simulació no es fa i s'avisa que cal preparar-lo: preparar esborra i torna a crear
+# out/headless, i no es pot fer mentre hi ha altres simulacions en marxa. S'ha de tornar a preparar si canvia el codi o
+# la JVM: si no, la JVM no el fa servir (i funciona igual, però arrenca més lent).
+#
+# Les simulacions només tenen aquest JAR a la ruta de classes, i amb --headless: mai no es carrega GraphStream ni cap
+# classe de finestres.
+# Per defecte només compila amb C1, que per a simulacions curtes és el més ràpid; per a xarxes molt grans es pot
+# canviar amb BEWATER_JAVA_OPTS.
+
+ARREL=$(cd "$(dirname "$0")/.." && pwd)
+DIR="$ARREL/out/headless"
+JAR="$DIR/bewater.jar"
+LLISTA="$DIR/bewater.classlist"
+ARXIU="$DIR/bewater.jsa"
+ENTRENAMENT=${BEWATER_ENTRENAMENT:-"$ARREL/test/testsProf/complet1.txt"}
+OPCIONS=${BEWATER_JAVA_OPTS:-"-XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:-UsePerfData"}
+
+preparar() {
+    rm -rf "$DIR/classes" && mkdir -p "$DIR/classes" || exit 1
+    javac -encoding UTF-8 -XDstringConcat=inline -cp "$ARREL/lib/*" -d "$DIR/classes" "$ARREL"/src/*.java \
+        || exit 1
+    jar cf "$JAR" -C "$DIR/classes" . || exit 1
+    rm -f "$LLISTA" "$ARXIU"
+    java -Djava.awt.headless=true -XX:DumpLoadedClassList="$LLISTA" -cp "$JAR" \
+        BeWater "$ENTRENAMENT" "$DIR/entrenament.out" --headless > /dev/null || exit 1
+    java -Xshare:dump -XX:SharedClassListFile="$LLISTA" -XX:SharedArchiveFile="$ARXIU" -cp "$JAR" > /dev/null \
+        || exit 1
+}
+
+if [ "$1" = "preparar" ]; then
+    preparar
+    exit 0
+fi
+
+if [ ! -f "$ARXIU" ] || [ ! -f "$JAR" ]; then
+    echo "No s'ha preparat $ARXIU: executeu primer $0 preparar" >&2
+    exit 1
+fi
+exec java -Djava.awt.headless=true $OPCIONS -Xshare:auto -XX:SharedArchiveFile="$ARXIU" -cp "$JAR" \
+    BeWater "$@" --headless
@@ -0,0 +1,589 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/** @file AnalisiContingencies.java
+ @brief Classe AnalisiContingencies
+ */
+
+/** @class AnalisiContingencies
+ @brief Anàlisi N-1 de les aixetes d'una component connexa d'una Xarxa: què passa si es tanca cada connexió sola
+
+ Per a cada connexió oberta de la component es calcula quins terminals es quedarien sense aigua (tenien cabal i ja no
+ en tindrien) i quina demanda deixaria de servir-se si només es tanqués aquella aixeta. Es parteix d'una sola
+ avaluació de tota la component, compartida: en tancar una aixeta només es tornen a calcular les demandes dels nodes
+ de sobre que canvien, amb les mateixes operacions i en el mateix ordre que AvaluacioCabals. Dels cabals només compta
+ si són positius, zero o indefinits (NaN), i només es propaguen cap avall mentre això canvia. El resultat és el mateix
+ que tancar l'aixeta i avaluar tota la component, llevat de cabals tan petits o tan grans que s'arrodoneixin a zero o a
+ infinit.
+ Les aixetes s'analitzen en paral·lel (fork-join). Cada fil té la seva pròpia còpia de l'estat que canvia, que
+ reutilitza per a totes les aixetes que analitza.
+ */
+
+public class AnalisiContingencies {
+
+    private static final int AIXETES_PER_TASCA = 32;
+    private static final byte ZERO = 0;
+    private static final byte POSITIU = 1;
+    private static final byte INDEFINIT = 2;
+
+    //Atributs
+    private final int[] _component; //identificador enter de cada node de la component, per posició
+    private final NodeAixeta[] _nodes;
+    private final int[] _rang; //posició de cada node en l'ordre topològic
+    private final int[] _ordre; //node de cada posició de l'ordre topològic
+    private final int[] _iniciSortides; //canonades que surten de cada node (per posició, consecutives)
+    private final int[] _iniciEntrades;
+    private final int[] _entrades; //canonades que entren a cada node (per posició)
+    private final int[] _origen; //node d'on surt cada canonada (per posició)
+    private final int[] _desti; //node on arriba cada canonada (per posició)
+    private final float[] _capacitat;
+    private final float[] _capacitatEntrades;
+    private final byte[] _tipus;
+    private final boolean[] _aixetaOberta;
+    private final float[] _demandaActual;
+    private final float[] _cabalOrigen;
+
+    private final float[] _demanda; //avaluació de la component sense tancar cap aixeta
+    private final float[] _demandaSortides;
+    private final float[] _demandaCanonada;
+    private final byte[] _classe; //ZERO, POSITIU o INDEFINIT segons el cabal
+    private final byte[] _classeCanonada;
+
+    private final int[] _aixetes; //posicions de les connexions obertes que s'analitzen
+    private final float[] _demandaNoServida; //resultats de cada aixeta de _aixetes
+    private final int[][] _senseAigua;
+    private final int[] _ranquing; //aixetes de _aixetes, de més a menys afectació
+    private final Map<String, Integer> _posicioAixeta; //identificador --> aixeta de _aixetes
+    private final Map<Thread, Escenari> _escenaris; //escenari de cada fil que analitza aixetes (només durant el càlcul)
+
+    /** @brief Analitza la component connexa de node
+     @pre node pertanyia a la xarxa de la instantània xarxa i la seva component connexa no té cicles
+     @post Crea l'anàlisi de tancar cada connexió oberta de la component connexa que conté node
+     @exception "NoSuchElementException" si node no pertanyia a la xarxa
+     IllegalArgumentException si la component té cicles
+     */
+    public AnalisiContingencies(InstantaniaXarxa xarxa, NodeAixeta node) {
+        int v0 = xarxa.id(node);
+        if (v0 < 0) {
+            throw new NoSuchElementException("Aquest node no pertany a la xarxa");
+        }
+
+        //la component amb identificadors per posició
+        _component = xarxa.membres(v0);
+        int nNodes = _component.length;
+        NumeracioLocal posicio = new NumeracioLocal(_component, nNodes);
+        int[] ordre = AvaluacioCabals.ordreTopologic(xarxa, _component, posicio);
+        _ordre = ordre;
+        _rang = new int[nNodes];
+        for (int i = 0; i < nNodes; i++) {
+            _rang[ordre[i]] = i;
+        }
+
+        int[] iniciSortides = xarxa.iniciSortides();
+        int[] sortides = xarxa.sortides();
+        int[] iniciEntrades = xarxa.iniciEntrades();
+        int[] entrades = xarxa.entrades();
+        _nodes = new NodeAixeta[nNodes];
+        _tipus = new byte[nNodes];
+        _aixetaOberta = new boolean[nNodes];
+        _demandaActual = new float[nNodes];
+        _cabalOrigen = new float[nNodes];
+        _iniciSortides = new int[nNodes + 1];
+        for (int p = 0; p < nNodes; p++) {
+            int v = _component[p];
+            _nodes[p] = xarxa.node(v);
+            _tipus[p] = xarxa.tipus(v);
+            _aixetaOberta[p] = xarxa.aixetaOberta(v);
+            _demandaActual[p] = xarxa.demandaActual(v);
+            _cabalOrigen[p] = xarxa.cabalOrigen(v);
+            _iniciSortides[p + 1] = _iniciSortides[p] + iniciSortides[v + 1] - iniciSortides[v];
+        }
+
+        //les canonades es numeren per node d'on surten, en l'ordre CSR, com a AvaluacioCabals
+        int nCanonades = _iniciSortides[nNodes];
+        NumeracioLocal posicioAresta = new NumeracioLocal(nCanonades);
+        _origen = new int[nCanonades];
+        _desti = new int[nCanonades];
+        _capacitat = new float[nCanonades];
+        for (int p = 0; p < nNodes; p++) {
+            int v = _component[p];
+            for (int k = iniciSortides[v], pa = _iniciSortides[p]; k < iniciSortides[v + 1]; k++, pa++) {
+                int e = sortides[k];
+                posicioAresta.afegir(e);
+                _origen[pa] = p;
+                _desti[pa] = posicio.posicio(xarxa.destins()[e]);
+                _capacitat[pa] = xarxa.capacitats()[e];
+            }
+        }
+        _iniciEntrades = new int[nNodes + 1];
+        _entrades = new int[nCanonades];
+        _capacitatEntrades = new float[nNodes];
+        for (int p = 0; p < nNodes; p++) {
+            int v = _component[p];
+            _iniciEntrades[p + 1] = _iniciEntrades[p];
+            for (int k = iniciEntrades[v]; k < iniciEntrades[v + 1]; k++) {
+                int pa = posicioAresta.posicio(entrades[k]);
+                _entrades[_iniciEntrades[p + 1]++] = pa;
+                _capacitatEntrades[p] += _capacitat[pa];
+            }
+        }
+
+        //avaluació compartida, sense cap aixeta tancada de més
+        _demanda = new float[nNodes];
+        _demandaSortides = new float[nNodes];
+        _demandaCanonada = new float[nCanonades];
+        float[] cabal = new float[nNodes];
+        float[] cabalCanonada = new float[nCanonades];
+        for (int i = nNodes - 1; i >= 0; i--) {
+            int p = ordre[i];
+            for (int pa = _iniciSortides[p]; pa < _iniciSortides[p + 1]; pa++) {
+                _demandaCanonada[pa] = MemoriaCabals.repartirDemanda(_capacitat[pa], _capacitatEntrades[_desti[pa]],
+                        _demanda[_desti[pa]]);
+                _demandaSortides[p] += _demandaCanonada[pa];
+            }
+            _demanda[p] = MemoriaCabals.demandaNode(_aixetaOberta[p], _tipus[p], _demandaActual[p],
+                    _demandaSortides[p]);
+        }
+        for (int i = 0; i < nNodes; i++) {
+            int p = ordre[i];
+            cabal[p] = cabalNode(p, _demanda[p], cabalCanonada);
+            for (int pa = _iniciSortides[p]; pa < _iniciSortides[p + 1]; pa++) {
+                cabalCanonada[pa] = MemoriaCabals.repartirCabal(_demandaCanonada[pa], _demandaSortides[p], cabal[p]);
+            }
+        }
+        _classe = new byte[nNodes];
+        for (int p = 0; p < nNodes; p++) {
+            _classe[p] = classe(cabal[p]);
+        }
+        _classeCanonada = new byte[nCanonades];
+        for (int pa = 0; pa < nCanonades; pa++) {
+            _classeCanonada[pa] = classe(cabalCanonada[pa]);
+        }
+
+        //les aixetes que es poden tancar, analitzades en paral·lel
+        int nAixetes = 0;
+        for (int p = 0; p < nNodes; p++) {
+            if (_tipus[p] == IndexXarxa.CONNEXIO && _aixetaOberta[p]) {
+                nAixetes++;
+            }
+        }
+        _aixetes = new int[nAixetes];
+        _posicioAixeta = new HashMap<>();
+        for (int p = 0, i = 0; p < nNodes; p++) {
+            if (_tipus[p] == IndexXarxa.CONNEXIO && _aixetaOberta[p]) {
+                _posicioAixeta.put(_nodes[p].id(), i);
+                _aixetes[i++] = p;
+            }
+        }
+        _demandaNoServida = new float[_aixetes.length];
+        _senseAigua = new int[_aixetes.length][];
+        _escenaris = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(new Tasca(0, _aixetes.length));
+        _escenaris.clear();
+
+        //de més a menys demanda no servida, després de més a menys terminals sense aigua, i per identificador
+        Integer[] ranquing = new Integer[nAixetes];
+        for (int i = 0; i < nAixetes; i++) {
+            ranquing[i] = i;
+        }
+        Arrays.sort(ranquing, (i, j) -> {
+            int comparacio = Float.compare(_demandaNoServida[j], _demandaNoServida[i]);
+            if (comparacio == 0) {
+                comparacio = Integer.compare(_senseAigua[j].length, _senseAigua[i].length);
+            }
+            return (comparacio != 0) ? comparacio : _nodes[_aixetes[i]].id().compareTo(_nodes[_aixetes[j]].id());
+        });
+        _ranquing = new int[nAixetes];
+        for (int k = 0; k < nAixetes; k++) {
+            _ranquing[k] = ranquing[k];
+        }
+    }
+
+    /** @brief Aixetes
+     @pre ---
+     @post Retorna les connexions obertes de la component, de la que deixa més demanda sense servir a la que menys; en
+     cas d'empat, primer la que deixa més terminals sense aigua i després per identificador
+     */
+    public List<NodeAixeta> aixetes() {
+        List<NodeAixeta> aixetes = new ArrayList<>(_ranquing.length);
+        for (int i : _ranquing) {
+            aixetes.add(_nodes[_aixetes[i]]);
+        }
+        return aixetes;
+    }
+
+    /** @brief Terminals sense aigua
+     @pre aixeta és una de les aixetes()
+     @post Retorna, per identificador, els terminals que tenien cabal i en deixarien de tenir si només es tanqués aixeta
+     @exception "NoSuchElementException" si aixeta no s'ha analitzat
+     */
+    public List<Terminal> terminalsSenseAigua(NodeAixeta aixeta) {
+        int[] senseAigua = _senseAigua[posicio(aixeta)];
+        List<Terminal> terminals = new ArrayList<>(senseAigua.length);
+        for (int p : senseAigua) {
+            terminals.add((Terminal) _nodes[p]);
+        }
+        terminals.sort(Comparator.comparing(NodeAixeta::id));
+        return terminals;
+    }
+
+    /** @brief Demanda no servida
+     @pre aixeta és una de les aixetes()
+     @post Retorna la suma de les demandes dels terminalsSenseAigua(aixeta)
+     @exception "NoSuchElementException" si aixeta no s'ha analitzat
+     */
+    public float demandaNoServida(NodeAixeta aixeta) {
+        return _demandaNoServida[posicio(aixeta)];
+    }
+
+    /** @brief Posició d'una aixeta
+     @pre ---
+     @post Retorna la posició dels resultats de aixeta
+     @exception "NoSuchElementException" si aixeta no s'ha analitzat
+     */
+    private int posicio(NodeAixeta aixeta) {
+        Integer i = _posicioAixeta.get(aixeta.id());
+        if (i == null) {
+            throw new NoSuchElementException("La connexió " + aixeta.id() + " no s'ha analitzat");
+        }
+        return i;
+    }
+
+    /** @brief Cabal d'un node
+     @pre Els cabals de cabalCanonada de les canonades que entren a p ja estan calculats
+     @post Retorna el cabal teòric al node p si té demanda demanda, com a AvaluacioCabals
+     */
+    private float cabalNode(int p, float demanda, float[] cabalCanonada) {
+        if (_tipus[p] == IndexXarxa.TERMINAL && _demandaActual[p] == 0) {
+            return 0;
+        }
+        if (_tipus[p] == IndexXarxa.ORIGEN) {
+            return MemoriaCabals.cabalOrigen(_cabalOrigen[p], demanda);
+        }
+
+        float cabalTotal = 0;
+        for (int k = _iniciEntrades[p]; k < _iniciEntrades[p + 1]; k++) {
+            cabalTotal += cabalCanonada[_entrades[k]];
+        }
+        return cabalTotal;
+    }
+
+    /** @brief Classe d'un node
+     @pre Les classes de classeCanonada de les canonades que entren a p ja estan calculades
+     @post Retorna la classe del cabal teòric al node p si té demanda demanda, com la de cabalNode()
+     */
+    private byte classeNode(int p, float demanda, byte[] classeCanonada) {
+        if (_tipus[p] == IndexXarxa.TERMINAL && _demandaActual[p] == 0) {
+            return ZERO;
+        }
+        if (_tipus[p] == IndexXarxa.ORIGEN) {
+            return classe(MemoriaCabals.cabalOrigen(_cabalOrigen[p], demanda));
+        }
+
+        //una suma amb algun NaN és NaN; si no, és positiva si algun sumand ho és
+        byte classe = ZERO;
+        for (int k = _iniciEntrades[p]; k < _iniciEntrades[p + 1]; k++) {
+            classe = (byte) Math.max(classe, classeCanonada[_entrades[k]]);
+        }
+        return classe;
+    }
+
+    /** @brief Classe d'una canonada
+     @pre ---
+     @post Retorna la classe de MemoriaCabals.repartirCabal(demandaCanonada, demandaSortides, c) si c és de la classe
+     classeCabal
+     */
+    private static byte classeCanonada(float demandaCanonada, float demandaSortides, byte classeCabal) {
+        byte proporcio = classe(demandaCanonada / demandaSortides);
+        if (proporcio == INDEFINIT || classeCabal == INDEFINIT) {
+            return INDEFINIT;
+        }
+        return (proporcio == ZERO || classeCabal == ZERO) ? ZERO : POSITIU;
+    }
+
+    /** @brief Classe d'un cabal
+     @pre ---
+     @post Retorna INDEFINIT si cabal és NaN, POSITIU si és més gran que 0 o ZERO altrament
+     */
+    private static byte classe(float cabal) {
+        if (Float.isNaN(cabal)) {
+            return INDEFINIT;
+        }
+        return (cabal > 0) ? POSITIU : ZERO;
+    }
+
+    /** @class Tasca
+     @brief Anàlisi d'un interval d'aixetes, que es divideix en dues tasques si és massa gran
+     */
+    private class Tasca extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int _inici;
+        private final int _fi;
+
+        Tasca(int inici, int fi) {
+            _inici = inici;
+            _fi = fi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_fi - _inici > AIXETES_PER_TASCA) {
+                int mig = (_inici + _fi) >>> 1;
+                invokeAll(new Tasca(_inici, mig), new Tasca(mig, _fi));
+            }
+            else {
+                Escenari escenari = _escenaris.computeIfAbsent(Thread.currentThread(), fil -> new Escenari());
+                for (int i = _inici; i < _fi; i++) {
+                    escenari.tancar(i);
+                }
+            }
+        }
+    }
+
+    /** @class Escenari
+     @brief Còpia de l'avaluació compartida on es tanca una aixeta. En acabar cada aixeta es tornen a deixar com abans
+     només els valors que han canviat, per reutilitzar-la amb la següent
+     */
+    private class Escenari {
+
+        private final float[] _demandaNova;
+        private final float[] _demandaSortidesNova;
+        private final float[] _demandaCanonadaNova;
+        private final byte[] _classeNova;
+        private final byte[] _classeCanonadaNova;
+        private final boolean[] _canviat;
+        private final int[] _canviats; //nodes amb algun valor recalculat
+        private int _nCanviats;
+        private final boolean[] _pendent;
+        private final CuaRangs _pujada; //nodes pendents per la demanda, de rang més gran a més petit
+        private final CuaRangs _baixada; //nodes pendents pel cabal, de rang més petit a més gran
+
+        Escenari() {
+            _demandaNova = _demanda.clone();
+            _demandaSortidesNova = _demandaSortides.clone();
+            _demandaCanonadaNova = _demandaCanonada.clone();
+            _classeNova = _classe.clone();
+            _classeCanonadaNova = _classeCanonada.clone();
+            _canviat = new boolean[_component.length];
+            _canviats = new int[_component.length];
+            _nCanviats = 0;
+            _pendent = new boolean[_component.length];
+            _pujada = new CuaRangs(_component.length, true);
+            _baixada = new CuaRangs(_component.length, false);
+        }
+
+        /** @brief Tancar
+         @pre 0 <= i < nombre d'aixetes
+         @post S'han guardat els terminals sense aigua i la demanda no servida si es tanca l'aixeta i, i l'escenari torna
+         a ser l'avaluació compartida
+         */
+        void tancar(int i) {
+            int aixeta = _aixetes[i];
+
+            //Demanda, de baix a dalt: només els nodes d'on surt alguna canonada cap a un node amb la demanda canviada
+            marcar(aixeta);
+            _demandaNova[aixeta] = 0;
+            if (Float.floatToIntBits(_demanda[aixeta]) != Float.floatToIntBits(0f)) {
+                afegirEntrades(aixeta);
+            }
+            while (!_pujada.buida()) {
+                int p = _pujada.treure();
+                _pendent[p] = false;
+                if (recalcularDemanda(p)) {
+                    afegirEntrades(p);
+                }
+            }
+
+            //Cabal, de dalt a baix: els nodes recalculats i els que reben alguna canonada amb la classe canviada
+            for (int k = 0; k < _nCanviats; k++) {
+                afegir(_baixada, _canviats[k]);
+            }
+            while (!_baixada.buida()) {
+                int p = _baixada.treure();
+                _pendent[p] = false;
+                marcar(p);
+                _classeNova[p] = classeNode(p, _demandaNova[p], _classeCanonadaNova);
+                for (int pa = _iniciSortides[p]; pa < _iniciSortides[p + 1]; pa++) {
+                    byte classe = classeCanonada(_demandaCanonadaNova[pa], _demandaSortidesNova[p], _classeNova[p]);
+                    if (classe != _classeCanonadaNova[pa]) {
+                        _classeCanonadaNova[pa] = classe;
+                        afegir(_baixada, _desti[pa]);
+                    }
+                }
+            }
+
+            //terminals que tenien aigua i ja no en tenen, en l'ordre de la component
+            int nSenseAigua = 0;
+            for (int k = 0; k < _nCanviats; k++) {
+                int p = _canviats[k];
+                if (_tipus[p] == IndexXarxa.TERMINAL && _classe[p] == POSITIU && _classeNova[p] != POSITIU) {
+                    nSenseAigua++;
+                }
+            }
+            int[] senseAigua = new int[nSenseAigua];
+            for (int k = 0, j = 0; k < _nCanviats; k++) {
+                int p = _canviats[k];
+                if (_tipus[p] == IndexXarxa.TERMINAL && _classe[p] == POSITIU && _classeNova[p] != POSITIU) {
+                    senseAigua[j++] = p;
+                }
+            }
+            Arrays.sort(senseAigua);
+            _senseAigua[i] = senseAigua;
+            float demandaNoServida = 0;
+            for (int p : senseAigua) {
+                demandaNoServida += _demandaActual[p];
+            }
+            _demandaNoServida[i] = demandaNoServida;
+
+            restaurar();
+        }
+
+        /** @brief Recalcular demanda
+         @pre Les demandes dels nodes on arriben les canonades que surten de p ja són les de l'escenari
+         @post S'han recalculat les demandes de les canonades que surten de p i la de p, i es retorna si la de p ha canviat
+         */
+        private boolean recalcularDemanda(int p) {
+            marcar(p);
+            float demandaSortides = 0;
+            for (int pa = _iniciSortides[p]; pa < _iniciSortides[p + 1]; pa++) {
+                _demandaCanonadaNova[pa] = MemoriaCabals.repartirDemanda(_capacitat[pa],
+                        _capacitatEntrades[_desti[pa]], _demandaNova[_desti[pa]]);
+                demandaSortides += _demandaCanonadaNova[pa];
+            }
+            _demandaSortidesNova[p] = demandaSortides;
+
+            float demanda = MemoriaCabals.demandaNode(_aixetaOberta[p], _tipus[p], _demandaActual[p], demandaSortides);
+            boolean canviada = Float.floatToIntBits(demanda) != Float.floatToIntBits(_demandaNova[p]);
+            _demandaNova[p] = demanda;
+            return canviada;
+        }
+
+        /** @brief Afegir entrades
+         @pre ---
+         @post Els nodes d'on surten les canonades que entren a p estan pendents de recalcular la demanda
+         */
+        private void afegirEntrades(int p) {
+            for (int k = _iniciEntrades[p]; k < _iniciEntrades[p + 1]; k++) {
+                afegir(_pujada, _origen[_entrades[k]]);
+            }
+        }
+
+        /** @brief Afegir
+         @pre ---
+         @post p és a cua, si no hi era
+         */
+        private void afegir(CuaRangs cua, int p) {
+            if (!_pendent[p]) {
+                _pendent[p] = true;
+                cua.afegir(p);
+            }
+        }
+
+        /** @brief Marcar
+         @pre ---
+         @post p és un dels nodes canviats
+         */
+        private void marcar(int p) {
+            if (!_canviat[p]) {
+                _canviat[p] = true;
+                _canviats[_nCanviats++] = p;
+            }
+        }
+
+        /** @brief Restaurar
+         @pre ---
+         @post Els valors dels nodes canviats i de les canonades que en surten tornen a ser els de l'avaluació compartida
+         */
+        private void restaurar() {
+            for (int k = 0; k < _nCanviats; k++) {
+                int p = _canviats[k];
+                _demandaNova[p] = _demanda[p];
+                _demandaSortidesNova[p] = _demandaSortides[p];
+                _classeNova[p] = _classe[p];
+                for (int pa = _iniciSortides[p]; pa < _iniciSortides[p + 1]; pa++) {
+                    _demandaCanonadaNova[pa] = _demandaCanonada[pa];
+                    _classeCanonadaNova[pa] = _classeCanonada[pa];
+                }
+                _canviat[p] = false;
+            }
+            _nCanviats = 0;
+        }
+    }
+
+    /** @class CuaRangs
+     @brief Cua de prioritat de nodes de la component segons el seu rang en l'ordre topològic, en un monticle binari de
+     tipus primitiu. Com que els rangs són diferents, es guarda el rang (o el seu complementari) en lloc del node
+     */
+    private class CuaRangs {
+
+        private final int[] _monticle; //claus: el rang, o nombre de nodes - 1 - rang si surt primer el més gran
+        private final boolean _mesGranPrimer;
+        private int _mida;
+
+        /** @brief Crea una CuaRangs
+         @pre capacitat >= nombre de nodes que hi poden ser alhora
+         @post Crea una cua buida; si mesGranPrimer, surt primer el node de rang més gran, si no el de rang més petit
+         */
+        CuaRangs(int capacitat, boolean mesGranPrimer) {
+            _monticle = new int[capacitat];
+            _mesGranPrimer = mesGranPrimer;
+            _mida = 0;
+        }
+
+        /** @brief És buida
+         @pre ---
+         @post Diu si la cua no té cap node
+         */
+        boolean buida() {
+            return _mida == 0;
+        }
+
+        /** @brief Afegir
+         @pre p no és a la cua
+         @post p és a la cua
+         */
+        void afegir(int p) {
+            int clau = _mesGranPrimer ? _ordre.length - 1 - _rang[p] : _rang[p];
+            int i = _mida++;
+            while (i > 0) {
+                int pare = (i - 1) >>> 1;
+                if (_monticle[pare] <= clau) {
+                    break;
+                }
+                _monticle[i] = _monticle[pare];
+                i = pare;
+            }
+            _monticle[i] = clau;
+        }
+
+        /** @brief Treure
+         @pre La cua no és buida
+         @post Treu el primer node de la cua i el retorna
+         */
+        int treure() {
+            int primera = _monticle[0];
+            int clau = _monticle[--_mida];
+            int i = 0;
+            while (true) {
+                int fill = 2 * i + 1;
+                if (fill >= _mida) {
+                    break;
+                }
+                if (fill + 1 < _mida && _monticle[fill + 1] < _monticle[fill]) {
+                    fill++;
+                }
+                if (_monticle[fill] >= clau) {
+                    break;
+                }
+                _monticle[i] = _monticle[fill];
+                i = fill;
+            }
+            if (_mida > 0) {
+                _monticle[i] = clau;
+            }
+            return _ordre[_mesGranPrimer ? _ordre.length - 1 - primera : primera];
+        }
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.*;
+
+/** @file AvaluacioCabals.java
+ @brief Classe AvaluacioCabals
+ */
+
+/** @class AvaluacioCabals
+ @brief Demandes i cabals teòrics de tots els nodes i canonades d'una component connexa d'una Xarxa
+
+ Es calcula en una sola passada en ordre topològic sobre una InstantaniaXarxa: primer la demanda de baix a dalt i
+ després el cabal de dalt a baix. El resultat no canvia encara que després es modifiqui la xarxa.
+ */
+
+public class AvaluacioCabals {
+
+    //Atributs
+    private final List<NodeAixeta> _nodes; //nodes de la component, en l'ordre de la ComponentXarxa
+    private final Map<String, Integer> _posicioNode;
+    private final boolean[] _aixetaOberta;
+    private final float[] _demandaNode;
+    private final float[] _cabalNode;
+    private final List<Canonada> _canonades;
+    private final Map<Canonada, Integer> _posicioCanonada;
+    private final float[] _demandaCanonada;
+    private final float[] _cabalCanonada;
+
+    /** @brief Avalua una component connexa
+     @pre component són els nodes d'una component connexa de xarxa
+     @post Crea l'avaluació de demandes i cabals de la component, en l'ordre de component
+     @exception "IllegalArgumentException" si la component té cicles
+     */
+    public AvaluacioCabals(InstantaniaXarxa xarxa, int[] component) {
+        int nNodes = component.length;
+        int[] iniciSortides = xarxa.iniciSortides();
+        int[] sortides = xarxa.sortides();
+        int[] iniciEntrades = xarxa.iniciEntrades();
+        int[] entrades = xarxa.entrades();
+        int[] destins = xarxa.destins();
+        float[] capacitats = xarxa.capacitats();
+
+        //posicions dels nodes i de les canonades dins la component, amb taules de la mida de la component
+        NumeracioLocal posicio = new NumeracioLocal(component, nNodes);
+        int nCanonades = 0;
+        for (int v : component) {
+            nCanonades += iniciSortides[v + 1] - iniciSortides[v];
+        }
+        NumeracioLocal posicioAresta = new NumeracioLocal(nCanonades);
+        _nodes = new ArrayList<>(nNodes);
+        _posicioNode = new HashMap<>();
+        _aixetaOberta = new boolean[nNodes];
+        _canonades = new ArrayList<>();
+        _posicioCanonada = new HashMap<>();
+        for (int v : component) {
+            NodeAixeta node = xarxa.node(v);
+            _aixetaOberta[_nodes.size()] = xarxa.aixetaOberta(v);
+            _posicioNode.put(node.id(), _nodes.size());
+            _nodes.add(node);
+            for (int k = iniciSortides[v]; k < iniciSortides[v + 1]; k++) {
+                Canonada canonada = xarxa.canonada(sortides[k]);
+                posicioAresta.afegir(sortides[k]);
+                _posicioCanonada.put(canonada, _canonades.size());
+                _canonades.add(canonada);
+            }
+        }
+
+        int[] ordre = ordreTopologic(xarxa, component, posicio);
+
+        float[] capacitatEntrades = new float[nNodes];
+        for (int p = 0; p < nNodes; p++) {
+            int v = component[p];
+            for (int k = iniciEntrades[v]; k < iniciEntrades[v + 1]; k++) {
+                capacitatEntrades[p] += capacitats[entrades[k]];
+            }
+        }
+
+        //Demanda, de baix a dalt
+        _demandaNode = new float[nNodes];
+        _demandaCanonada = new float[nCanonades];
+        float[] demandaSortides = new float[nNodes];
+        for (int i = nNodes - 1; i >= 0; i--) {
+            int p = ordre[i];
+            int v = component[p];
+
+            //les canonades que surten de v reparteixen la demanda dels seus destins, ja calculada
+            for (int k = iniciSortides[v]; k < iniciSortides[v + 1]; k++) {
+                int e = sortides[k];
+                int p2 = posicio.posicio(destins[e]);
+
+                float demandaCanonada = MemoriaCabals.repartirDemanda(capacitats[e], capacitatEntrades[p2],
+                        _demandaNode[p2]);
+                _demandaCanonada[posicioAresta.posicio(e)] = demandaCanonada;
+                demandaSortides[p] += demandaCanonada;
+            }
+
+            _demandaNode[p] = MemoriaCabals.demandaNode(_aixetaOberta[p], xarxa.tipus(v), xarxa.demandaActual(v),
+                    demandaSortides[p]);
+        }
+
+        //Cabal, de dalt a baix
+        _cabalNode = new float[nNodes];
+        _cabalCanonada = new float[nCanonades];
+        for (int i = 0; i < nNodes; i++) {
+            int p = ordre[i];
+            int v = component[p];
+
+            _cabalNode[p] = cabalNode(xarxa, v, p, posicioAresta);
+            //les canonades que surten de v reparteixen el seu cabal
+            for (int k = iniciSortides[v]; k < iniciSortides[v + 1]; k++) {
+                int pa = posicioAresta.posicio(sortides[k]);
+                _cabalCanonada[pa] = MemoriaCabals.repartirCabal(_demandaCanonada[pa], demandaSortides[p],
+                        _cabalNode[p]);
+            }
+        }
+    }
+
+    /** @brief Nodes
+     @pre ---
+     @post Retorna els nodes de la component, en l'ordre en què hi ha anat entrant
+     */
+    public List<NodeAixeta> nodes() {
+        return Collections.unmodifiableList(_nodes);
+    }
+
+    /** @brief Canonades
+     @pre ---
+     @post Retorna les canonades de la component
+     */
+    public List<Canonada> canonades() {
+        return Collections.unmodifiableList(_canonades);
+    }
+
+    /** @brief Conté node
+     @pre ---
+     @post True si node pertany a la component avaluada
+     */
+    public boolean conte(NodeAixeta node) {
+        return _posicioNode.containsKey(node.id());
+    }
+
+    /** @brief Aixeta oberta
+     @pre node pertany a la component
+     @post Diu si l'aixeta del node estava oberta en el moment de l'avaluació
+     @exception "NoSuchElementException" si node no pertany a la component
+     */
+    public boolean aixetaOberta(NodeAixeta node) {
+        return _aixetaOberta[posicio(node)];
+    }
+
+    /** @brief Demanda teòrica
+     @pre node pertany a la component
+     @post Retorna la demanda teòrica al node en el moment de l'avaluació
+     @exception "NoSuchElementException" si node no pertany a la component
+     */
+    public float demanda(NodeAixeta node) {
+        return _demandaNode[posicio(node)];
+    }
+
+    /** @brief Cabal teòric
+     @pre node pertany a la component
+     @post Retorna el cabal teòric al node en el moment de l'avaluació
+     @exception "NoSuchElementException" si node no pertany a la component
+     */
+    public float cabal(NodeAixeta node) {
+        return _cabalNode[posicio(node)];
+    }
+
+    /** @brief Demanda canonada
+     @pre canonada pertany a la component
+     @post Retorna la demanda que hi ha d'haver per la canonada en el moment de l'avaluació
+     @exception "NoSuchElementException" si canonada no pertany a la component
+     */
+    public float demanda(Canonada canonada) {
+        return _demandaCanonada[posicio(canonada)];
+    }
+
+    /** @brief Cabal canonada
+     @pre canonada pertany a la component
+     @post Retorna el cabal que circula per la canonada en el moment de l'avaluació
+     @exception "NoSuchElementException" si canonada no pertany a la component
+     */
+    public float cabal(Canonada canonada) {
+        return _cabalCanonada[posicio(canonada)];
+    }
+
+    /** @brief Posició d'un node
+     @pre ---
+     @post Retorna la posició del node dins la component
+     @exception "NoSuchElementException" si node no pertany a la component
+     */
+    private int posicio(NodeAixeta node) {
+        Integer p = _posicioNode.get(node.id());
+        if (p == null) {
+            throw new NoSuchElementException("El node " + node.id() + " no pertany a la component avaluada");
+        }
+        return p;
+    }
+
+    /** @brief Posició d'una canonada
+     @pre ---
+     @post Retorna la posició de la canonada dins la component
+     @exception "NoSuchElementException" si canonada no pertany a la component
+     */
+    private int posicio(Canonada canonada) {
+        Integer p = _posicioCanonada.get(canonada);
+        if (p == null) {
+            throw new NoSuchElementException("La canonada " + canonada.node1().id() + "-" + canonada.node2().id()
+                    + " no pertany a la component avaluada");
+        }
+        return p;
+    }
+
+    /** @brief Cabal d'un node
+     @pre Els cabals de totes les canonades que entren a v ja estan calculats
+     @post Retorna el cabal teòric al node v, que ocupa la posició p
+     */
+    private float cabalNode(InstantaniaXarxa xarxa, int v, int p, NumeracioLocal posicioAresta) {
+        byte tipus = xarxa.tipus(v);
+
+        if (tipus == IndexXarxa.TERMINAL) {
+            if (xarxa.demandaActual(v) == 0) {
+                return 0;
+            }
+        }
+
+        if (tipus == IndexXarxa.ORIGEN) {
+            return MemoriaCabals.cabalOrigen(xarxa.cabalOrigen(v), _demandaNode[p]);
+        }
+
+        int[] iniciEntrades = xarxa.iniciEntrades();
+        int[] entrades = xarxa.entrades();
+        float cabalTotal = 0;
+        for (int k = iniciEntrades[v]; k < iniciEntrades[v + 1]; k++) {
+            cabalTotal += _cabalCanonada[posicioAresta.posicio(entrades[k])];
+        }
+
+        return cabalTotal;
+    }
+
+    /** @brief Ordre topològic
+     @pre posicio és la numeració dels nodes de component, en el seu ordre
+     @post Retorna les posicions dels nodes de component en ordre topològic
+     @exception "IllegalArgumentException" si la component té cicles
+     */
+    static int[] ordreTopologic(InstantaniaXarxa xarxa, int[] component, NumeracioLocal posicio) {
+        int[] iniciSortides = xarxa.iniciSortides();
+        int[] sortides = xarxa.sortides();
+        int[] iniciEntrades = xarxa.iniciEntrades();
+        int[] destins = xarxa.destins();
+        int nNodes = component.length;
+        int[] grauEntrada = new int[nNodes];
+        int[] ordre = new int[nNodes];
+        int fi = 0;
+
+        for (int p = 0; p < nNodes; p++) {
+            grauEntrada[p] = iniciEntrades[component[p] + 1] - iniciEntrades[component[p]];
+            if (grauEntrada[p] == 0) {
+                ordre[fi++] = p;
+            }
+        }
+
+        for (int inici = 0; inici < fi; inici++) {
+            int v = component[ordre[inici]];
+            for (int k = iniciSortides[v]; k < iniciSortides[v + 1]; k++) {
+                int p2 = posicio.posicio(destins[sortides[k]]);
+                if (--grauEntrada[p2] == 0) {
+                    ordre[fi++] = p2;
+                }
+            }
+        }
+
+        if (fi < nNodes) {
+            throw new IllegalArgumentException("La xarxa té cicles i no es poden calcular els cabals");
+        }
+
+        return ordre;
+    }
+}
@@ -14,6 +14,8 @@
  @brief Classe BeWater
  */
 
+import java.io.*;
+
 /** @class BeWater
  @brief Programa principal de simulació de xarxes de distribució d'aigua
  */
@@ -21,11 +23,67 @@
 public abstract class BeWater {
 
     public static void main(String[] args) {
-        SimuladorModeText simulador = new SimuladorModeText();
+        //BeWater --servidor adreça nom=fitxer... serveix les xarxes per un sòcol (vegeu ServidorXarxes)
+        if (args.length > 1 && args[0].equals("--servidor")) {
+            servidor(args);
+            return;
+        }
+
+        //opcions després dels fitxers: --headless (o -Djava.awt.headless=true) per no obrir finestres, --carregar fitxer
+        //per començar amb una xarxa guardada i --guardar fitxer per guardar la xarxa en acabar
+        boolean senseFinestres = Boolean.getBoolean("java.awt.headless");
+        String fitxerCarregar = null;
+        String fitxerGuardar = null;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--headless")) senseFinestres = true;
+            else if (args[i].equals("--carregar") && i + 1 < args.length) fitxerCarregar = args[++i];
+            else if (args[i].equals("--guardar") && i + 1 < args.length) fitxerGuardar = args[++i];
+        }
+        SimuladorModeText simulador = new SimuladorModeText(senseFinestres);
         System.out.println("Be water, my friend");
         System.out.println(args[0]);
-        simulador.simular(args[0], args[1]);
+        try {
+            if (fitxerCarregar != null) simulador.carregarXarxa(fitxerCarregar);
+            simulador.simular(args[0], args[1]);
+            if (fitxerGuardar != null) simulador.guardarXarxa(fitxerGuardar);
+        }
+        catch (IOException e) {
+            System.out.println("Error!!!: " + e.getMessage());
+        }
+
+    }
 
+    /** @brief Mode servidor
+     @pre args és --servidor adreça nom=fitxer...
+     @post Carrega cada xarxa amb el seu nom i les serveix a l'adreça (camí d'un sòcol Unix o port local) fins que
+     s'atura el programa
+     */
+    private static void servidor(String[] args) {
+        try {
+            ServidorXarxes servidor = new ServidorXarxes(args[1]);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    servidor.close();
+                }
+                catch (IOException e) {
+                    System.out.println("Error!!!: " + e.getMessage());
+                }
+            }));
+            for (int i = 2; i < args.length; i++) {
+                int igual = args[i].indexOf('=');
+                if (igual <= 0) {
+                    System.out.println("Xarxa no vàlida (s'esperava nom=fitxer): " + args[i]);
+                    return;
+                }
+                servidor.carregar(args[i].substring(0, igual), args[i].substring(igual + 1));
+            }
+            System.out.println("Be water, my friend");
+            System.out.println("Servidor a " + servidor.adreca());
+            servidor.servir();
+        }
+        catch (IOException e) {
+            System.out.println("Error!!!: " + e.getMessage());
+        }
     }
 }
 
@@ -0,0 +1,78 @@
+
+/** @file ComponentXarxa.java
+ @brief Classe ComponentXarxa
+ */
+
+/** @class ComponentXarxa
+ @brief Vista d'una component connexa d'una Xarxa
+
+ No copia cap node ni canonada: conté els identificadors enters dels nodes de la component i fa servir les taules
+ de l'IndexXarxa per recórrer les canonades. És vàlida mentre no es connectin nodes nous a la component.
+ */
+
+public class ComponentXarxa {
+
+    //Atributs
+    private final IndexXarxa _index;
+    private final int[] _nodes;
+    private int[] _canonades; //es calculen el primer cop que es demanen
+
+    /** @brief Crea una ComponentXarxa
+     @pre nodes són tots els nodes d'una component connexa de index
+     @post Crea la vista de la component formada per nodes
+     */
+    public ComponentXarxa(IndexXarxa index, int[] nodes) {
+        _index = index;
+        _nodes = nodes;
+        _canonades = null;
+    }
+
+    /** @brief Índex
+     @pre ---
+     @post Retorna l'índex de la xarxa a la qual pertany la component
+     */
+    public IndexXarxa index() {
+        return _index;
+    }
+
+    /** @brief Nodes
+     @pre ---
+     @post Retorna els identificadors enters dels nodes de la component (no s'ha de modificar)
+     */
+    public int[] nodes() {
+        return _nodes;
+    }
+
+    /** @brief Mida
+     @pre ---
+     @post Retorna el nombre de nodes de la component
+     */
+    public int mida() {
+        return _nodes.length;
+    }
+
+    /** @brief Canonades
+     @pre ---
+     @post Retorna els identificadors enters de les canonades de la component, agrupades pel node d'on surten
+     (no s'ha de modificar)
+     */
+    public int[] canonades() {
+        if (_canonades == null) {
+            int[] iniciSortides = _index.iniciSortides();
+            int[] sortides = _index.sortides();
+            int nCanonades = 0;
+            for (int v : _nodes) {
+                nCanonades += iniciSortides[v + 1] - iniciSortides[v];
+            }
+
+            _canonades = new int[nCanonades];
+            int i = 0;
+            for (int v : _nodes) {
+                for (int k = iniciSortides[v]; k < iniciSortides[v + 1]; k++) {
+                    _canonades[i++] = sortides[k];
+                }
+            }
+        }
+        return _canonades;
+    }
+}
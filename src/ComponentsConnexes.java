@@ -0,0 +1,174 @@
+import java.util.*;
+
+/** @file ComponentsConnexes.java
+ @brief Classe ComponentsConnexes
+ */
+
+/** @class ComponentsConnexes
+ @brief Partició dels nodes d'una Xarxa en components connexes (union-find)
+
+ Els nodes s'identifiquen amb enters densos. Cada component té un representant i els seus membres formen una llista
+ encadenada, de manera que unir dues components i saber quins nodes hi ha en una component no requereix recórrer el graf.
+ També es guarda si cada component té cicles: una component amb cicles en continua tenint quan s'uneix amb una altra.
+ I si l'ordre topològic de cada component està pendent de refer, que també passa a la component unida.
+ */
+
+public class ComponentsConnexes {
+
+    private static final int MIDA_INICIAL = 16;
+
+    //Atributs
+    private int[] _pare; //pare de cada node a l'arbre d'union-find
+    private int[] _mida; //nombre de nodes de cada component (vàlid pels representants)
+    private int[] _seguent; //següent membre de la component, o -1
+    private int[] _primer; //primer membre de cada component (vàlid pels representants)
+    private int[] _darrer; //darrer membre de cada component (vàlid pels representants)
+    private boolean[] _ambCicles; //si cada component té cicles (vàlid pels representants)
+    private boolean[] _ordrePendent; //si l'ordre topològic de cada component està per refer (vàlid pels representants)
+    private int _nNodes;
+
+    /** @brief Crea unes ComponentsConnexes
+     @pre ---
+     @post Crea una partició sense cap node
+     */
+    public ComponentsConnexes() {
+        _pare = new int[MIDA_INICIAL];
+        _mida = new int[MIDA_INICIAL];
+        _seguent = new int[MIDA_INICIAL];
+        _primer = new int[MIDA_INICIAL];
+        _darrer = new int[MIDA_INICIAL];
+        _ambCicles = new boolean[MIDA_INICIAL];
+        _ordrePendent = new boolean[MIDA_INICIAL];
+        _nNodes = 0;
+    }
+
+    /** @brief Afegir node
+     @pre ---
+     @post S'ha afegit un node nou, sol en la seva component, i es retorna el seu identificador
+     */
+    public int afegirNode() {
+        if (_nNodes == _pare.length) {
+            int mida = _nNodes * 2;
+            _pare = Arrays.copyOf(_pare, mida);
+            _mida = Arrays.copyOf(_mida, mida);
+            _seguent = Arrays.copyOf(_seguent, mida);
+            _primer = Arrays.copyOf(_primer, mida);
+            _darrer = Arrays.copyOf(_darrer, mida);
+            _ambCicles = Arrays.copyOf(_ambCicles, mida);
+            _ordrePendent = Arrays.copyOf(_ordrePendent, mida);
+        }
+
+        int v = _nNodes++;
+        _pare[v] = v;
+        _mida[v] = 1;
+        _seguent[v] = -1;
+        _primer[v] = v;
+        _darrer[v] = v;
+        _ambCicles[v] = false;
+        _ordrePendent[v] = false;
+
+        return v;
+    }
+
+    /** @brief Representant
+     @pre 0 <= v < nombre de nodes
+     @post Retorna el representant de la component de v
+     */
+    public int representant(int v) {
+        while (_pare[v] != v) {
+            _pare[v] = _pare[_pare[v]]; //es va escurçant el camí
+            v = _pare[v];
+        }
+        return v;
+    }
+
+    /** @brief Unir
+     @pre 0 <= v1, v2 < nombre de nodes
+     @post Les components de v1 i v2 són una de sola, i es retorna el seu representant
+     */
+    public int unir(int v1, int v2) {
+        int r1 = representant(v1);
+        int r2 = representant(v2);
+        if (r1 == r2) {
+            return r1;
+        }
+
+        //la component petita penja de la gran i els seus membres van al final de la llista
+        if (_mida[r1] < _mida[r2]) {
+            int r = r1;
+            r1 = r2;
+            r2 = r;
+        }
+        _pare[r2] = r1;
+        _mida[r1] += _mida[r2];
+        _seguent[_darrer[r1]] = _primer[r2];
+        _darrer[r1] = _darrer[r2];
+        _ambCicles[r1] = _ambCicles[r1] || _ambCicles[r2];
+        _ordrePendent[r1] = _ordrePendent[r1] || _ordrePendent[r2];
+
+        return r1;
+    }
+
+    /** @brief Té cicles
+     @pre 0 <= v < nombre de nodes
+     @post Diu si la component de v té cicles
+     */
+    public boolean teCicles(int v) {
+        return _ambCicles[representant(v)];
+    }
+
+    /** @brief Marcar cicle
+     @pre 0 <= v < nombre de nodes
+     @post La component de v té cicles
+     */
+    public void marcarCicle(int v) {
+        _ambCicles[representant(v)] = true;
+    }
+
+    /** @brief Ordre pendent
+     @pre 0 <= v < nombre de nodes
+     @post Diu si l'ordre topològic de la component de v està pendent de refer
+     */
+    public boolean ordrePendent(int v) {
+        return _ordrePendent[representant(v)];
+    }
+
+    /** @brief Marcar ordre pendent
+     @pre 0 <= v < nombre de nodes
+     @post L'ordre topològic de la component de v està pendent de refer si pendent és cert, i ja és correcte si no
+     */
+    public void marcarOrdrePendent(int v, boolean pendent) {
+        _ordrePendent[representant(v)] = pendent;
+    }
+
+    /** @brief Mida
+     @pre 0 <= v < nombre de nodes
+     @post Retorna el nombre de nodes de la component de v
+     */
+    public int mida(int v) {
+        return _mida[representant(v)];
+    }
+
+    /** @brief Següents membres
+     @pre ---
+     @post Retorna la taula amb el següent membre de la component de cada node, o -1 (no s'ha de modificar). Unir
+     components només omple el -1 del darrer membre d'una llista: els altres valors ja no canvien mai
+     */
+    public int[] seguents() {
+        return _seguent;
+    }
+
+    /** @brief Membres
+     @pre 0 <= v < nombre de nodes
+     @post Retorna els nodes de la component de v
+     */
+    public int[] membres(int v) {
+        int r = representant(v);
+        int[] membres = new int[_mida[r]];
+        int i = 0;
+        for (int m = _primer[r]; m != -1; m = _seguent[m]) {
+            membres[i++] = m;
+        }
+        return membres;
+    }
+}
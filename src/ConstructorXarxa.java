@@ -0,0 +1,197 @@
+import java.util.*;
+
+/** @file ConstructorXarxa.java
+ @brief Classe ConstructorXarxa
+ */
+
+/** @class ConstructorXarxa
+ @brief Constructor d'una Xarxa sencera a partir de taules de nodes i de canonades
+
+ Es donen tots els nodes (cadascun amb la seva posició, 0, 1, 2...) i totes les canonades (posició del node d'on
+ surt, del node on arriba i capacitat), ja sigui amb taules o afegint-los un per un, i construir() crea la xarxa d'un
+ sol cop. Abans de crear-la ho comprova tot en bloc: identificadors repetits, canonades que surten d'un node terminal
+ o que van a un node que no existeix, capacitats negatives i nodes connectats més d'una vegada (en qualsevol sentit).
+ Si hi ha errors, no es crea res i l'excepció els diu tots (fins a MAX_ERRORS).
+
+ La xarxa que en surt és la mateixa que si s'haguessin afegit els nodes i connectat les canonades un per un, en el
+ mateix ordre: els nodes tenen com a identificador enter la seva posició. Però no es torna a buscar cap node pel seu
+ identificador ni a comprovar cap canonada, i les taules de l'índex es reserven d'entrada.
+ */
+
+public class ConstructorXarxa {
+
+    public static final int MAX_ERRORS = 10;
+
+    private static final int MIDA_INICIAL = 16;
+
+    //Atributs
+    private NodeAixeta[] _nodes;
+    private int _nNodes;
+    private int[] _origens; //posició del node d'on surt cada canonada
+    private int[] _destins; //posició del node on arriba cada canonada
+    private float[] _capacitats;
+    private int _nCanonades;
+
+    /** @brief Crea un ConstructorXarxa
+     @pre ---
+     @post Crea un constructor sense nodes ni canonades
+     */
+    public ConstructorXarxa() {
+        this(MIDA_INICIAL, MIDA_INICIAL);
+    }
+
+    /** @brief Crea un ConstructorXarxa amb espai reservat
+     @pre nNodes, nCanonades >= 0
+     @post Crea un constructor sense nodes ni canonades, amb espai per nNodes nodes i nCanonades canonades
+     */
+    public ConstructorXarxa(int nNodes, int nCanonades) {
+        _nodes = new NodeAixeta[Math.max(nNodes, 1)];
+        _origens = new int[Math.max(nCanonades, 1)];
+        _destins = new int[_origens.length];
+        _capacitats = new float[_origens.length];
+    }
+
+    /** @brief Crea un ConstructorXarxa a partir de taules
+     @pre 0 <= nNodes <= nodes.length i 0 <= nCanonades <= origens.length, destins.length, capacitats.length
+     @post Crea un constructor amb els nodes nodes[0..nNodes) i les canonades de nodes[origens[e]] a
+     nodes[destins[e]] amb capacitat capacitats[e], per e < nCanonades. Les taules no es copien: no s'han de
+     modificar mentre es fa servir el constructor
+     */
+    public ConstructorXarxa(NodeAixeta[] nodes, int nNodes, int[] origens, int[] destins, float[] capacitats,
+                            int nCanonades) {
+        _nodes = nodes;
+        _nNodes = nNodes;
+        _origens = origens;
+        _destins = destins;
+        _capacitats = capacitats;
+        _nCanonades = nCanonades;
+    }
+
+    /** @brief Afegir node
+     @pre ---
+     @post S'ha afegit node i es retorna la seva posició
+     */
+    public int afegir(NodeAixeta node) {
+        if (_nNodes == _nodes.length) {
+            _nodes = Arrays.copyOf(_nodes, _nNodes * 2);
+        }
+        _nodes[_nNodes] = node;
+        return _nNodes++;
+    }
+
+    /** @brief Connectar
+     @pre ---
+     @post S'ha afegit una canonada de capacitat c del node de posició node1 al de posició node2
+     */
+    public void connectar(int node1, int node2, float c) {
+        if (_nCanonades == _origens.length) {
+            int mida = _nCanonades * 2;
+            _origens = Arrays.copyOf(_origens, mida);
+            _destins = Arrays.copyOf(_destins, mida);
+            _capacitats = Arrays.copyOf(_capacitats, mida);
+        }
+        _origens[_nCanonades] = node1;
+        _destins[_nCanonades] = node2;
+        _capacitats[_nCanonades] = c;
+        _nCanonades++;
+    }
+
+    /** @brief Nombre de nodes
+     @pre ---
+     @post Retorna el nombre de nodes afegits
+     */
+    public int nombreNodes() {
+        return _nNodes;
+    }
+
+    /** @brief Nombre de canonades
+     @pre ---
+     @post Retorna el nombre de canonades afegides
+     */
+    public int nombreCanonades() {
+        return _nCanonades;
+    }
+
+    /** @brief Construir
+     @pre ---
+     @post Retorna una xarxa nova amb tots els nodes i canonades, com si s'haguessin afegit i connectat en ordre
+     @exception "IllegalArgumentException" si algun node és nul o té l'identificador repetit, si alguna canonada va
+     a un node que no existeix, surt d'un node terminal o té capacitat negativa, o si dos nodes estan connectats més
+     d'una vegada
+     */
+    public Xarxa construir() {
+        validar();
+        Xarxa x = new Xarxa(_nNodes, _nCanonades);
+        x.afegirEnBloc(_nodes, _nNodes, _origens, _destins, _capacitats, _nCanonades);
+        return x;
+    }
+
+    /** @brief Validar
+     @pre ---
+     @post No retorna res si els nodes i les canonades formen una xarxa vàlida
+     @exception "IllegalArgumentException" amb els errors trobats, si no la formen
+     */
+    private void validar() {
+        List<String> errors = new ArrayList<>();
+        int nErrors = 0;
+
+        Map<String, Integer> ids = new HashMap<>(Math.max(16, (int) (_nNodes / 0.75f) + 1));
+        for (int v = 0; v < _nNodes; v++) {
+            if (_nodes[v] == null) {
+                nErrors = error(errors, nErrors, "El node " + v + " és nul");
+            }
+            else if (ids.putIfAbsent(_nodes[v].id(), v) != null) {
+                nErrors = error(errors, nErrors, "El node amb id " + _nodes[v].id() + " està repetit");
+            }
+        }
+
+        //cada parell de nodes connectats, amb el menor davant, per trobar els repetits ordenant
+        long[] parells = new long[_nCanonades];
+        int nParells = 0;
+        for (int e = 0; e < _nCanonades; e++) {
+            int v1 = _origens[e];
+            int v2 = _destins[e];
+            if (v1 < 0 || v1 >= _nNodes || v2 < 0 || v2 >= _nNodes || _nodes[v1] == null || _nodes[v2] == null) {
+                nErrors = error(errors, nErrors, "La canonada " + e + " va a un node que no existeix");
+                continue;
+            }
+            if (_nodes[v1] instanceof Terminal) {
+                nErrors = error(errors, nErrors, "El node " + _nodes[v1].id() + " és un node terminal");
+            }
+            if (_capacitats[e] < 0) {
+                nErrors = error(errors, nErrors, "La capacitat de la canonada " + _nodes[v1].id() + "-"
+                        + _nodes[v2].id() + " és negativa");
+            }
+            parells[nParells++] = ((long) Math.min(v1, v2) << 32) | Math.max(v1, v2);
+        }
+
+        Arrays.sort(parells, 0, nParells);
+        for (int i = 1; i < nParells; i++) {
+            if (parells[i] == parells[i - 1] && (i == 1 || parells[i - 1] != parells[i - 2])) {
+                int v1 = (int) (parells[i] >>> 32);
+                int v2 = (int) parells[i];
+                nErrors = error(errors, nErrors, "Els nodes " + _nodes[v1].id() + " i " + _nodes[v2].id()
+                        + " ja estan connectats");
+            }
+        }
+
+        if (nErrors > 0) {
+            String missatge = "Xarxa no vàlida: " + String.join("; ", errors);
+            if (nErrors > errors.size()) {
+                missatge += " i " + (nErrors - errors.size()) + " errors més";
+            }
+            throw new IllegalArgumentException(missatge);
+        }
+    }
+
+    /** @brief Error
+     @pre ---
+     @post Si errors encara no té MAX_ERRORS errors, s'hi ha afegit missatge; retorna nErrors + 1
+     */
+    private static int error(List<String> errors, int nErrors, String missatge) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(missatge);
+        }
+        return nErrors + 1;
+    }
+}
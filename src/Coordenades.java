@@ -13,7 +13,10 @@ import java.lang.Math;
 public class Coordenades {
 
     private double alatitud, alongitud; //en decimal
+    private double latitudRadians, longitudRadians, cosLatitud; //precalculats, les coordenades no canvien
+    private double x, y, z; //vector unitari sobre l'esfera, precalculat
     public static final double RADI_TERRA = 6371; //km
+    public static final int MIDA_EMPAQUETADA = 3; //valors de cada coordenada empaquetada (latitud, longitud, cos latitud)
 
     /** @brief Crea un objecte coordenades amb longitud i latitud expressada en graus
      @pre 0 <= grausLatitud <= 60, 0 <= minutsLatitud <= 60, 0 <= segonsLatitud <= 60, direccioLatitud = 'N' o 'S',
@@ -47,6 +50,8 @@ public class Coordenades {
         if (direccioLongitud == 'W') {
             alongitud *= -1;
         }
+
+        precalcular();
     }
 
     /** @brief Crea un objecte coordenades amb longitud i latitud expressada en radians
@@ -65,6 +70,42 @@ public class Coordenades {
 
         alatitud = latitud;
         alongitud = longitud;
+
+        precalcular();
+    }
+
+    /** @brief Crea un objecte coordenades amb longitud i latitud expressada en graus decimals, sense arrodonir
+     @pre -90 <= latitud <= 90, -180 <= longitud <= 180
+     @post Crea unes coordenades amb els valors indicats (les que tornen getAlatitud() i getAlongitud())
+     @exception "IllegalArgumentException" si es viola la precondició*/
+    public Coordenades(double latitud, double longitud)
+    {
+        if (!(-90 <= latitud && latitud <= 90)) {
+            throw new IllegalArgumentException("Valors de la latitud incorrectes");
+        }
+
+        if(!(-180 <= longitud && longitud <= 180)) {
+            throw new IllegalArgumentException("Valors de la longitud incorrectes");
+        }
+
+        alatitud = latitud;
+        alongitud = longitud;
+
+        precalcular();
+    }
+
+    /** @brief Precalcular
+     @pre alatitud i alongitud ja estan guardades
+     @post Guarda la latitud i la longitud en radians, el cosinus de la latitud i el vector unitari
+     */
+    private void precalcular()
+    {
+        latitudRadians = Math.toRadians(alatitud);
+        longitudRadians = Math.toRadians(alongitud);
+        cosLatitud = Math.cos(latitudRadians);
+        x = cosLatitud * Math.cos(longitudRadians);
+        y = cosLatitud * Math.sin(longitudRadians);
+        z = Math.sin(latitudRadians);
     }
 
     /** @brief Distancia entre coordenades
@@ -73,18 +114,43 @@ public class Coordenades {
     */
     public double distancia(Coordenades c)
     {
-        //Convertim a radiants
-        double latitud1 = Math.toRadians(alatitud);
-        double longitud1 = Math.toRadians(alongitud);
-        double latitud2 = Math.toRadians(c.alatitud);
-        double longitud2 = Math.toRadians(c.alongitud);
-
-        //Càlcul distància
-        double latitudTotal = latitud2 - latitud1;
-        double longitudTotal = longitud2 - longitud1;
-        double a = Math.sin(latitudTotal / 2) * Math.sin(latitudTotal / 2) +
-                Math.cos(latitud1) * Math.cos(latitud2) *
-                        Math.sin(longitudTotal / 2) * Math.sin(longitudTotal / 2);
+        return distancia(c.latitudRadians, c.longitudRadians, c.cosLatitud);
+    }
+
+    /** @brief Distancies a coordenades empaquetades
+     @pre empaquetades conté n coordenades escrites amb empaquetar(), i distancies té n caselles o més
+     @post distancies[i] és la distància entre aquestes coordenades i les i-èsimes d'empaquetades, expressada en km
+     (el mateix valor que retornaria distancia)
+     */
+    public void distancies(double[] empaquetades, int n, double[] distancies)
+    {
+        for (int i = 0; i < n; i++) {
+            int p = MIDA_EMPAQUETADA * i;
+            distancies[i] = distancia(empaquetades[p], empaquetades[p + 1], empaquetades[p + 2]);
+        }
+    }
+
+    /** @brief Empaquetar
+     @pre empaquetades té MIDA_EMPAQUETADA * (i + 1) caselles o més
+     @post Escriu aquestes coordenades a la posició i d'empaquetades, per calcular-hi distàncies amb distancies()
+     */
+    public void empaquetar(double[] empaquetades, int i)
+    {
+        int p = MIDA_EMPAQUETADA * i;
+        empaquetades[p] = latitudRadians;
+        empaquetades[p + 1] = longitudRadians;
+        empaquetades[p + 2] = cosLatitud;
+    }
+
+    /** @brief Distancia (haversine)
+     @pre latitud2 i longitud2 en radians, i cosLatitud2 és el cosinus de latitud2
+     @post Retorna la distància entre aquestes coordenades i les indicades, expressada en km
+     */
+    private double distancia(double latitud2, double longitud2, double cosLatitud2)
+    {
+        double sinLatitud = Math.sin((latitud2 - latitudRadians) / 2);
+        double sinLongitud = Math.sin((longitud2 - longitudRadians) / 2);
+        double a = sinLatitud * sinLatitud + cosLatitud * cosLatitud2 * sinLongitud * sinLongitud;
 
         return RADI_TERRA * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
     }
@@ -108,4 +174,49 @@ public class Coordenades {
         return alongitud;
     }
 
+    /** @brief Latitud en radians
+     @pre ---
+     @post Retorna la latitud en radians
+     */
+    public double getLatitudRadians()
+    {
+        return latitudRadians;
+    }
+
+    /** @brief Longitud en radians
+     @pre ---
+     @post Retorna la longitud en radians
+     */
+    public double getLongitudRadians()
+    {
+        return longitudRadians;
+    }
+
+    /** @brief Vector unitari (x)
+     @pre ---
+     @post Retorna la component x del vector unitari d'aquestes coordenades sobre l'esfera
+     */
+    public double getX()
+    {
+        return x;
+    }
+
+    /** @brief Vector unitari (y)
+     @pre ---
+     @post Retorna la component y del vector unitari d'aquestes coordenades sobre l'esfera
+     */
+    public double getY()
+    {
+        return y;
+    }
+
+    /** @brief Vector unitari (z)
+     @pre ---
+     @post Retorna la component z del vector unitari d'aquestes coordenades sobre l'esfera
+     */
+    public double getZ()
+    {
+        return z;
+    }
+
 }
@@ -0,0 +1,117 @@
+import java.util.*;
+
+/** @file CursorCanonades.java
+ @brief Classe CursorCanonades
+ */
+
+/** @class CursorCanonades
+ @brief Iterador reutilitzable de les canonades que surten o entren d'un node d'una Xarxa
+
+ Recorre directament les taules CSR de l'IndexXarxa, sense copiar les canonades a cap llista. Un mateix cursor es pot
+ tornar a situar sobre un altre node tantes vegades com calgui.
+ */
+
+public class CursorCanonades implements Iterator<Canonada> {
+
+    //Atributs
+    private final IndexXarxa _index;
+    private int[] _llista; //taula CSR que es recorre (sortides o entrades)
+    private int _pos;
+    private int _fi;
+
+    /** @brief Crea un CursorCanonades
+     @pre ---
+     @post Crea un cursor sobre les canonades de index, sense cap canonada a recórrer
+     */
+    public CursorCanonades(IndexXarxa index) {
+        _index = index;
+        _pos = 0;
+        _fi = 0;
+    }
+
+    /** @brief Sortides d'un node
+     @pre node pertany a l'índex
+     @post El cursor recorre les canonades que surten de node i es retorna ell mateix
+     @exception "NoSuchElementException" si node no pertany a l'índex
+     */
+    public CursorCanonades sortides(NodeAixeta node) {
+        return sortides(idNode(node));
+    }
+
+    /** @brief Sortides d'un node
+     @pre 0 <= v < nombreNodes() de l'índex
+     @post El cursor recorre les canonades que surten del node v i es retorna ell mateix
+     */
+    public CursorCanonades sortides(int v) {
+        int[] inici = _index.iniciSortides();
+        _llista = _index.sortides();
+        _pos = inici[v];
+        _fi = inici[v + 1];
+        return this;
+    }
+
+    /** @brief Entrades d'un node
+     @pre node pertany a l'índex
+     @post El cursor recorre les canonades que entren a node i es retorna ell mateix
+     @exception "NoSuchElementException" si node no pertany a l'índex
+     */
+    public CursorCanonades entrades(NodeAixeta node) {
+        return entrades(idNode(node));
+    }
+
+    /** @brief Entrades d'un node
+     @pre 0 <= v < nombreNodes() de l'índex
+     @post El cursor recorre les canonades que entren al node v i es retorna ell mateix
+     */
+    public CursorCanonades entrades(int v) {
+        int[] inici = _index.iniciEntrades();
+        _llista = _index.entrades();
+        _pos = inici[v];
+        _fi = inici[v + 1];
+        return this;
+    }
+
+    /** @brief Queden canonades
+     @pre ---
+     @post Diu si queden canonades per recórrer
+     */
+    @Override
+    public boolean hasNext() {
+        return _pos < _fi;
+    }
+
+    /** @brief Següent canonada
+     @pre hasNext()
+     @post Retorna la següent canonada
+     @exception "NoSuchElementException" si no queden canonades
+     */
+    @Override
+    public Canonada next() {
+        return _index.canonada(seguentIndex());
+    }
+
+    /** @brief Següent canonada (identificador enter)
+     @pre hasNext()
+     @post Retorna l'identificador enter de la següent canonada
+     @exception "NoSuchElementException" si no queden canonades
+     */
+    public int seguentIndex() {
+        if (_pos >= _fi) {
+            throw new NoSuchElementException("No queden canonades");
+        }
+        return _llista[_pos++];
+    }
+
+    /** @brief Identificador enter d'un node
+     @pre ---
+     @post Retorna l'identificador enter de node a l'índex
+     @exception "NoSuchElementException" si node no pertany a l'índex
+     */
+    private int idNode(NodeAixeta node) {
+        int v = _index.id(node.id());
+        if (v < 0) {
+            throw new NoSuchElementException("El node no pertany a la xarxa");
+        }
+        return v;
+    }
+}
@@ -0,0 +1,236 @@
+import java.util.*;
+
+/** @file DiariCanvis.java
+ @brief Classe DiariCanvis
+ */
+
+/** @class DiariCanvis
+ @brief Diari compacte dels canvis d'aixetes, demandes i cabals d'una Xarxa, per desfer-los i refer-los
+
+ Cada canvi és un long: el tipus (2 bits), si l'aixeta ha canviat d'estat (1 bit), el node (29 bits) i, als 32 bits
+ baixos, la posició dels seus valors anterior i nou a la taula de valors (només en els canvis de demanda i cabal).
+ Les entrades [0, posicio()) són les aplicades; les de després, fins que se n'escrigui una de nova, es poden refer.
+ Els punts de control guarden una posició del diari amb un nom. El diari no modifica la xarxa: només diu quins canvis
+ s'han de desfer o refer.
+ */
+
+public class DiariCanvis {
+
+    public static final byte AIXETA = 0;
+    public static final byte DEMANDA = 1;
+    public static final byte CABAL = 2;
+
+    private static final int MIDA_INICIAL = 16;
+    private static final long CANVIAT = 1L << 61;
+    private static final int MAX_NODES = 1 << 29;
+
+    //Atributs
+    private long[] _entrades;
+    private int _nEntrades; //entrades aplicades o que es poden refer
+    private int _posicio; //nombre d'entrades aplicades
+    private float[] _valors; //valor anterior i nou de cada canvi de demanda o cabal
+    private int _nValors;
+    private final Map<String, Integer> _puntsControl;
+
+    /** @brief Crea un DiariCanvis
+     @pre ---
+     @post Crea un diari buit
+     */
+    public DiariCanvis() {
+        _entrades = new long[MIDA_INICIAL];
+        _valors = new float[MIDA_INICIAL];
+        _puntsControl = new HashMap<>();
+    }
+
+    /** @brief Registrar aixeta
+     @pre 0 <= v
+     @post S'ha afegit al diari una operació d'obrir o tancar l'aixeta de v, que ha fet canviar el seu estat si canviat.
+     Els canvis que es podien refer es descarten
+     */
+    public void registrarAixeta(int v, boolean canviat) {
+        descartarRefer();
+        escriure(entrada(AIXETA, v, canviat, _nValors));
+    }
+
+    /** @brief Registrar valor
+     @pre tipus és DEMANDA o CABAL i 0 <= v
+     @post S'ha afegit al diari el canvi de la demanda o el cabal de v d'anterior a nou. Els canvis que es podien refer
+     es descarten
+     */
+    public void registrarValor(byte tipus, int v, float anterior, float nou) {
+        descartarRefer();
+        if (_nValors + 2 > _valors.length) {
+            _valors = Arrays.copyOf(_valors, _valors.length * 2);
+        }
+        int p = _nValors;
+        _valors[p] = anterior;
+        _valors[p + 1] = nou;
+        _nValors += 2;
+        escriure(entrada(tipus, v, false, p));
+    }
+
+    /** @brief Posició
+     @pre ---
+     @post Retorna el nombre d'entrades aplicades
+     */
+    public int posicio() {
+        return _posicio;
+    }
+
+    /** @brief Pot desfer
+     @pre ---
+     @post Diu si hi ha alguna entrada aplicada
+     */
+    public boolean potDesfer() {
+        return _posicio > 0;
+    }
+
+    /** @brief Desfer
+     @pre potDesfer()
+     @post Retorna la darrera entrada aplicada, que passa a ser la primera que es pot refer
+     */
+    public long desfer() {
+        return _entrades[--_posicio];
+    }
+
+    /** @brief Pot refer
+     @pre ---
+     @post Diu si hi ha alguna entrada que es pot refer
+     */
+    public boolean potRefer() {
+        return _posicio < _nEntrades;
+    }
+
+    /** @brief Refer
+     @pre potRefer()
+     @post Retorna la primera entrada que es pot refer, que passa a estar aplicada
+     */
+    public long refer() {
+        return _entrades[_posicio++];
+    }
+
+    /** @brief Treure
+     @pre potDesfer()
+     @post Es treu del diari la darrera entrada aplicada, que es retorna; les entrades que es podien refer es descarten
+     */
+    public long treure() {
+        descartarRefer();
+        long entrada = _entrades[--_posicio];
+        _nEntrades = _posicio;
+        _nValors = posicioValors(entrada);
+        descartarPuntsControl();
+        return entrada;
+    }
+
+    /** @brief Descartar refer
+     @pre ---
+     @post Es descarten les entrades que es podien refer, amb els seus valors i els punts de control que hi apuntaven
+     */
+    public void descartarRefer() {
+        if (_posicio == _nEntrades) {
+            return;
+        }
+        _nValors = posicioValors(_entrades[_posicio]); //els valors de les entrades descartades són al final
+        _nEntrades = _posicio;
+        descartarPuntsControl();
+    }
+
+    /** @brief Marcar punt de control
+     @pre ---
+     @post El punt de control nom és la posició actual del diari
+     */
+    public void marcar(String nom) {
+        _puntsControl.put(nom, _posicio);
+    }
+
+    /** @brief Posició d'un punt de control
+     @pre ---
+     @post Retorna la posició del punt de control nom, o -1 si no existeix o s'ha descartat
+     */
+    public int posicio(String nom) {
+        Integer p = _puntsControl.get(nom);
+        return (p != null) ? p : -1;
+    }
+
+    /** @brief Tipus d'una entrada
+     @pre ---
+     @post Retorna AIXETA, DEMANDA o CABAL
+     */
+    public static byte tipus(long entrada) {
+        return (byte) (entrada >>> 62);
+    }
+
+    /** @brief Node d'una entrada
+     @pre ---
+     @post Retorna el node que ha canviat
+     */
+    public static int node(long entrada) {
+        return (int) (entrada >>> 32) & (MAX_NODES - 1);
+    }
+
+    /** @brief Canviat
+     @pre tipus(entrada) == AIXETA
+     @post Diu si l'operació va fer canviar l'estat de l'aixeta
+     */
+    public static boolean canviat(long entrada) {
+        return (entrada & CANVIAT) != 0;
+    }
+
+    /** @brief Valor anterior
+     @pre tipus(entrada) és DEMANDA o CABAL i l'entrada és al diari
+     @post Retorna el valor que hi havia abans del canvi
+     */
+    public float anterior(long entrada) {
+        return _valors[posicioValors(entrada)];
+    }
+
+    /** @brief Valor nou
+     @pre tipus(entrada) és DEMANDA o CABAL i l'entrada és al diari
+     @post Retorna el valor que hi ha després del canvi
+     */
+    public float nou(long entrada) {
+        return _valors[posicioValors(entrada) + 1];
+    }
+
+    /** @brief Entrada
+     @pre 0 <= v < MAX_NODES
+     @post Retorna l'entrada codificada
+     @exception "IllegalArgumentException" si v no hi cap
+     */
+    private static long entrada(byte tipus, int v, boolean canviat, int posicioValors) {
+        if (v < 0 || v >= MAX_NODES) {
+            throw new IllegalArgumentException("El diari no admet el node " + v);
+        }
+        return ((long) tipus << 62) | (canviat ? CANVIAT : 0) | ((long) v << 32) | (posicioValors & 0xFFFFFFFFL);
+    }
+
+    /** @brief Posició dels valors
+     @pre ---
+     @post Retorna la posició del valor anterior de l'entrada a la taula de valors
+     */
+    private static int posicioValors(long entrada) {
+        return (int) entrada;
+    }
+
+    /** @brief Escriure
+     @pre No hi ha cap entrada per refer
+     @post entrada passa a ser la darrera aplicada
+     */
+    private void escriure(long entrada) {
+        if (_posicio == _entrades.length) {
+            _entrades = Arrays.copyOf(_entrades, _posicio * 2);
+        }
+        _entrades[_posicio++] = entrada;
+        _nEntrades = _posicio;
+    }
+
+    /** @brief Descartar punts de control
+     @pre ---
+     @post Es descarten els punts de control posteriors a la posició actual
+     */
+    private void descartarPuntsControl() {
+        if (!_puntsControl.isEmpty()) {
+            _puntsControl.values().removeIf(p -> p > _posicio);
+        }
+    }
+}
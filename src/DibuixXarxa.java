@@ -0,0 +1,197 @@
+import java.util.*;
+
+/** @file DibuixXarxa.java
+ @brief Classe DibuixXarxa
+ */
+
+/** @class DibuixXarxa
+ @brief Contingut d'un dibuix d'una component connexa d'una Xarxa: nodes, canonades i les seves etiquetes
+
+ Es calcula sense cap finestra. Mostrar-lo és opcional: VisorGrafic el dibuixa i escriure() el treu en forma de text,
+ de manera que les execucions per lots no han de carregar cap classe gràfica.
+ */
+
+public class DibuixXarxa {
+
+    //Atributs
+    private final String _titol;
+    private final List<NodeAixeta> _nodes;
+    private final List<String> _classesNode; //origen, connexio, terminal o tancat
+    private final List<String> _etiquetesNode; //etiqueta extra de cada node, o null
+    private final List<Canonada> _canonades;
+    private final List<String> _etiquetesCanonada;
+    private final List<String> _classesCanonada; //classe de cada canonada, o null
+    private Float _total; //valor total del dibuix, o null
+
+    /** @brief Crea un DibuixXarxa
+     @pre ---
+     @post Crea un dibuix buit amb títol titol
+     */
+    public DibuixXarxa(String titol) {
+        _titol = titol;
+        _nodes = new ArrayList<>();
+        _classesNode = new ArrayList<>();
+        _etiquetesNode = new ArrayList<>();
+        _canonades = new ArrayList<>();
+        _etiquetesCanonada = new ArrayList<>();
+        _classesCanonada = new ArrayList<>();
+        _total = null;
+    }
+
+    /** @brief Afegir node
+     @pre classe és origen, connexio, terminal o tancat
+     @post S'ha afegit node al dibuix, amb la classe classe i l'etiqueta extra etiqueta (pot ser null)
+     */
+    public void afegirNode(NodeAixeta node, String classe, String etiqueta) {
+        _nodes.add(node);
+        _classesNode.add(classe);
+        _etiquetesNode.add(etiqueta);
+    }
+
+    /** @brief Afegir canonada
+     @pre Els dos nodes de canonada ja són al dibuix
+     @post S'ha afegit canonada al dibuix, amb l'etiqueta etiqueta i la classe classe (pot ser null)
+     */
+    public void afegirCanonada(Canonada canonada, String etiqueta, String classe) {
+        _canonades.add(canonada);
+        _etiquetesCanonada.add(etiqueta);
+        _classesCanonada.add(classe);
+    }
+
+    /** @brief Establir total
+     @pre ---
+     @post El valor total del dibuix és total
+     */
+    public void establirTotal(float total) {
+        _total = total;
+    }
+
+    /** @brief Títol
+     @pre ---
+     @post Retorna el títol del dibuix
+     */
+    public String titol() {
+        return _titol;
+    }
+
+    /** @brief Té total
+     @pre ---
+     @post Diu si el dibuix té un valor total
+     */
+    public boolean teTotal() {
+        return _total != null;
+    }
+
+    /** @brief Total
+     @pre teTotal()
+     @post Retorna el valor total del dibuix
+     */
+    public float total() {
+        return _total;
+    }
+
+    /** @brief Nombre de nodes
+     @pre ---
+     @post Retorna el nombre de nodes del dibuix
+     */
+    public int nombreNodes() {
+        return _nodes.size();
+    }
+
+    /** @brief Node
+     @pre 0 <= i < nombreNodes()
+     @post Retorna l'i-èsim node del dibuix
+     */
+    public NodeAixeta node(int i) {
+        return _nodes.get(i);
+    }
+
+    /** @brief Classe d'un node
+     @pre 0 <= i < nombreNodes()
+     @post Retorna la classe de l'i-èsim node (origen, connexio, terminal o tancat)
+     */
+    public String classeNode(int i) {
+        return _classesNode.get(i);
+    }
+
+    /** @brief Etiqueta d'un node
+     @pre 0 <= i < nombreNodes()
+     @post Retorna l'etiqueta extra de l'i-èsim node, o null si no en té
+     */
+    public String etiquetaNode(int i) {
+        return _etiquetesNode.get(i);
+    }
+
+    /** @brief Nombre de canonades
+     @pre ---
+     @post Retorna el nombre de canonades del dibuix
+     */
+    public int nombreCanonades() {
+        return _canonades.size();
+    }
+
+    /** @brief Canonada
+     @pre 0 <= i < nombreCanonades()
+     @post Retorna l'i-èsima canonada del dibuix
+     */
+    public Canonada canonada(int i) {
+        return _canonades.get(i);
+    }
+
+    /** @brief Etiqueta d'una canonada
+     @pre 0 <= i < nombreCanonades()
+     @post Retorna l'etiqueta de l'i-èsima canonada
+     */
+    public String etiquetaCanonada(int i) {
+        return _etiquetesCanonada.get(i);
+    }
+
+    /** @brief Classe d'una canonada
+     @pre 0 <= i < nombreCanonades()
+     @post Retorna la classe de l'i-èsima canonada, o null si no en té
+     */
+    public String classeCanonada(int i) {
+        return _classesCanonada.get(i);
+    }
+
+    /** @brief Etiqueta de coordenades
+     @pre ---
+     @post Retorna la latitud i la longitud de c, arrodonides a dos decimals, separades per ":"
+     */
+    public static String etiquetaCoordenades(Coordenades c) {
+        return Math.round(c.getAlatitud() * 100.0)/100.0 + ":" + Math.round(c.getAlongitud() * 100.0)/100.0;
+    }
+
+    /** @brief Escriure
+     @pre ---
+     @post Escriu a sortida el títol, el total (si n'hi ha), una línia per canonada amb la seva etiqueta i una línia
+     per cada node amb etiqueta extra o tancat
+     */
+    public void escriure(SortidaResultats sortida) {
+        sortida.linia(_titol);
+        if (teTotal()) {
+            sortida.escriure(_total).linia();
+        }
+        for (int i = 0; i < _canonades.size(); i++) {
+            Canonada canonada = _canonades.get(i);
+            String classe = _classesCanonada.get(i);
+            sortida.escriure(canonada.node1().id()).escriure('-').escriure(canonada.node2().id()).escriure(' ')
+                    .escriure(_etiquetesCanonada.get(i));
+            if (classe != null) {
+                sortida.escriure(' ').escriure(classe);
+            }
+            sortida.linia();
+        }
+        for (int i = 0; i < _nodes.size(); i++) {
+            String etiqueta = _etiquetesNode.get(i);
+            boolean tancat = _classesNode.get(i).equals("tancat");
+            if (etiqueta != null || tancat) {
+                sortida.escriure(_nodes.get(i).id());
+                if (etiqueta != null) {
+                    sortida.escriure(' ').escriure(etiqueta);
+                }
+                sortida.linia(tancat ? " tancat" : "");
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.*;
+
+/** @file EstatNodes.java
+ @brief Classe EstatNodes
+ */
+
+/** @class EstatNodes
+ @brief Estat de cada node d'una Xarxa (tipus, aixeta, demanda i cabal), amb instantànies que comparteixen les dades
+
+ Els nodes, indexats amb el seu identificador enter de l'IndexXarxa, es guarden en trossos de MIDA_TROS nodes. Fer una
+ instantània només copia la taula de trossos: els trossos passen a ser compartits i el primer canvi a cadascun el copia
+ (còpia en escriptura), de manera que una instantània costa O(nodes / MIDA_TROS) i cada canvi posterior, com a molt,
+ la còpia d'un tros. Els trossos d'una instantània ja no es modifiquen mai, i per tant es poden llegir des d'altres fils.
+ */
+
+public class EstatNodes {
+
+    private static final int BITS_TROS = 8;
+    private static final int MIDA_TROS = 1 << BITS_TROS;
+    private static final int MIDA_INICIAL = 16;
+
+    //Atributs
+    private Tros[] _trossos;
+    private int _nNodes;
+    private int _generacio; //els trossos d'una altra generació són compartits amb alguna instantània
+    private final boolean _instantania;
+
+    /** @brief Crea un EstatNodes
+     @pre ---
+     @post Crea un estat sense cap node
+     */
+    public EstatNodes() {
+        _trossos = new Tros[MIDA_INICIAL];
+        _nNodes = 0;
+        _generacio = 0;
+        _instantania = false;
+    }
+
+    /** @brief Crea una instantània
+     @pre trossos són els trossos, que ja no es modificaran, d'un estat de nNodes nodes
+     @post Crea un estat de només lectura que comparteix trossos
+     */
+    private EstatNodes(Tros[] trossos, int nNodes) {
+        _trossos = trossos;
+        _nNodes = nNodes;
+        _generacio = -1;
+        _instantania = true;
+    }
+
+    /** @brief Guardar node
+     @pre 0 <= v <= nombreNodes() i no és una instantània
+     @post L'estat del node v és el de node (si v == nombreNodes(), s'ha afegit un node nou)
+     @exception "IllegalStateException" si és una instantània
+     */
+    public void guardar(int v, NodeAixeta node) {
+        if (_instantania) {
+            throw new IllegalStateException("Una instantània no es pot modificar");
+        }
+
+        if (v == _nNodes) {
+            int t = _nNodes >>> BITS_TROS;
+            if (t == _trossos.length) {
+                _trossos = Arrays.copyOf(_trossos, t * 2);
+            }
+            if (_trossos[t] == null) {
+                _trossos[t] = new Tros(_generacio);
+            }
+            _nNodes++;
+        }
+
+        Tros tros = trosPropi(v >>> BITS_TROS);
+        int i = v & (MIDA_TROS - 1);
+        tros._node[i] = node;
+        tros._tipus[i] = IndexXarxa.tipus(node);
+        tros._oberta[i] = node.aixetaOberta();
+        tros._demanda[i] = (node instanceof Terminal nodeTerminal) ? nodeTerminal.demandaActual() : 0;
+        tros._cabal[i] = (node instanceof Origen nodeOrigen) ? nodeOrigen.cabal() : 0;
+    }
+
+    /** @brief Instantània
+     @pre ---
+     @post Retorna un estat de només lectura igual a l'actual, que no canviarà encara que aquest es modifiqui
+     */
+    public EstatNodes instantania() {
+        if (_instantania) {
+            return this;
+        }
+
+        int nTrossos = (_nNodes + MIDA_TROS - 1) >>> BITS_TROS;
+        _generacio++; //a partir d'ara tots els trossos actuals són compartits
+        return new EstatNodes(Arrays.copyOf(_trossos, nTrossos), _nNodes);
+    }
+
+    /** @brief Nombre de nodes
+     @pre ---
+     @post Retorna el nombre de nodes
+     */
+    public int nombreNodes() {
+        return _nNodes;
+    }
+
+    /** @brief Node
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el node v
+     */
+    public NodeAixeta node(int v) {
+        return _trossos[v >>> BITS_TROS]._node[v & (MIDA_TROS - 1)];
+    }
+
+    /** @brief Tipus
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el tipus del node v (IndexXarxa.ORIGEN, IndexXarxa.CONNEXIO o IndexXarxa.TERMINAL)
+     */
+    public byte tipus(int v) {
+        return _trossos[v >>> BITS_TROS]._tipus[v & (MIDA_TROS - 1)];
+    }
+
+    /** @brief Aixeta oberta
+     @pre 0 <= v < nombreNodes()
+     @post Diu si l'aixeta del node v està oberta
+     */
+    public boolean aixetaOberta(int v) {
+        return _trossos[v >>> BITS_TROS]._oberta[v & (MIDA_TROS - 1)];
+    }
+
+    /** @brief Demanda
+     @pre 0 <= v < nombreNodes()
+     @post Retorna la demanda actual del node v si és un terminal, o 0 altrament
+     */
+    public float demanda(int v) {
+        return _trossos[v >>> BITS_TROS]._demanda[v & (MIDA_TROS - 1)];
+    }
+
+    /** @brief Cabal
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el cabal que surt del node v si és un origen, o 0 altrament
+     */
+    public float cabal(int v) {
+        return _trossos[v >>> BITS_TROS]._cabal[v & (MIDA_TROS - 1)];
+    }
+
+    /** @brief Tros propi
+     @pre 0 <= t < nombre de trossos
+     @post Retorna el tros t, que ja no és compartit amb cap instantània (si ho era, se n'ha fet una còpia)
+     */
+    private Tros trosPropi(int t) {
+        Tros tros = _trossos[t];
+        if (tros._generacio != _generacio) {
+            tros = _trossos[t] = new Tros(tros, _generacio);
+        }
+        return tros;
+    }
+
+    /** @class Tros
+     @brief Estat de MIDA_TROS nodes consecutius
+     */
+    private static class Tros {
+
+        private final int _generacio;
+        private final NodeAixeta[] _node;
+        private final byte[] _tipus;
+        private final boolean[] _oberta;
+        private final float[] _demanda;
+        private final float[] _cabal;
+
+        Tros(int generacio) {
+            _generacio = generacio;
+            _node = new NodeAixeta[MIDA_TROS];
+            _tipus = new byte[MIDA_TROS];
+            _oberta = new boolean[MIDA_TROS];
+            _demanda = new float[MIDA_TROS];
+            _cabal = new float[MIDA_TROS];
+        }
+
+        Tros(Tros original, int generacio) {
+            _generacio = generacio;
+            _node = original._node.clone();
+            _tipus = original._tipus.clone();
+            _oberta = original._oberta.clone();
+            _demanda = original._demanda.clone();
+            _cabal = original._cabal.clone();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/** @file FitxerXarxa.java
+ @brief Classe FitxerXarxa
+ */
+
+/** @class FitxerXarxa
+ @brief Format binari per guardar i carregar una Xarxa completa
+
+ El fitxer comença amb MAGIC, la VERSIO del format i el nombre de nodes, canonades i clients. Després hi ha els nodes
+ per ordre d'identificador enter (tipus, aixeta oberta, latitud i longitud en double, demanda punta i actual si és un
+ terminal o cabal si és un origen, i identificador), les canonades per ordre (node d'on surt, node on arriba i
+ capacitat) i els clients (identificador i node del terminal). Els textos són la seva mida en bytes i els bytes en
+ UTF-8. Com que es carreguen en el mateix ordre, la xarxa carregada té els mateixos identificadors enters i dona
+ exactament els mateixos resultats que la guardada.
+
+ Només es guarda l'estat actual: el diari de canvis no, de manera que després de carregar no hi ha res per desfer.
+ S'escriu per blocs amb un FileChannel i es llegeix de memòria amb el fitxer mapat (fins a 2 GB). Els nodes i les
+ canonades llegits es passen tots junts a un ConstructorXarxa, que comprova en bloc que la xarxa és vàlida.
+
+ */
+
+public class FitxerXarxa {
+
+    public static final int MAGIC = 0x42575852; //"BWXR"
+    public static final int VERSIO = 1;
+
+    private static final int MIDA_BUFFER = 1 << 20;
+
+    /** @brief Guardar
+     @pre ---
+     @post S'ha escrit la xarxa x al fitxer fitxer, que es buida o es crea
+     @exception "IOException" si no es pot escriure el fitxer
+     */
+    public static void guardar(Xarxa x, String fitxer) throws IOException {
+        IndexXarxa index = x.index();
+        Map<String, Terminal> clients = x.clients();
+        try (FileChannel canal = FileChannel.open(Paths.get(fitxer), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(MIDA_BUFFER);
+            buffer.putInt(MAGIC).putInt(VERSIO);
+            buffer.putInt(index.nombreNodes()).putInt(index.nombreCanonades()).putInt(clients.size());
+
+            for (int v = 0; v < index.nombreNodes(); v++) {
+                NodeAixeta node = index.node(v);
+                espai(canal, buffer, 26);
+                buffer.put(index.tipus(v)).put((byte) (node.aixetaOberta() ? 1 : 0));
+                buffer.putDouble(node.coordenades().getAlatitud()).putDouble(node.coordenades().getAlongitud());
+                if (node instanceof Terminal nodeTerminal) {
+                    buffer.putFloat(nodeTerminal.demandaPunta()).putFloat(nodeTerminal.demandaActual());
+                }
+                else if (node instanceof Origen nodeOrigen) {
+                    buffer.putFloat(nodeOrigen.cabal());
+                }
+                escriureText(canal, buffer, node.id());
+            }
+
+            int[] origens = index.origens();
+            int[] destins = index.destins();
+            float[] capacitats = index.capacitats();
+            for (int e = 0; e < index.nombreCanonades(); e++) {
+                espai(canal, buffer, 12);
+                buffer.putInt(origens[e]).putInt(destins[e]).putFloat(capacitats[e]);
+            }
+
+            for (Map.Entry<String, Terminal> client : clients.entrySet()) {
+                escriureText(canal, buffer, client.getKey());
+                espai(canal, buffer, 4);
+                buffer.putInt(index.id(client.getValue().id()));
+            }
+
+            buidar(canal, buffer);
+        }
+    }
+
+    /** @brief Carregar
+     @pre ---
+     @post Retorna la xarxa guardada al fitxer fitxer
+     @exception "IOException" si no es pot llegir el fitxer, no és una xarxa guardada, és d'una versió posterior o està
+     malmès
+     */
+    public static Xarxa carregar(String fitxer) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel canal = FileChannel.open(Paths.get(fitxer), StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("El fitxer de xarxa " + fitxer + " és massa gran");
+            }
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+
+        try {
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException("El fitxer " + fitxer + " no és una xarxa guardada");
+            }
+            int versio = buffer.getInt();
+            if (versio > VERSIO) {
+                throw new IOException("La versió " + versio + " del fitxer de xarxa " + fitxer + " no està suportada");
+            }
+            int nNodes = buffer.getInt();
+            int nCanonades = buffer.getInt();
+            int nClients = buffer.getInt();
+
+            NodeAixeta[] nodes = new NodeAixeta[mida(buffer, nNodes, 1)];
+            for (int v = 0; v < nNodes; v++) {
+                byte tipus = buffer.get();
+                boolean oberta = buffer.get() != 0;
+                Coordenades c = new Coordenades(buffer.getDouble(), buffer.getDouble());
+                if (tipus == IndexXarxa.TERMINAL) {
+                    float demandaPunta = buffer.getFloat();
+                    float demandaActual = buffer.getFloat();
+                    Terminal nodeTerminal = new Terminal(llegirText(buffer), c, demandaPunta);
+                    nodeTerminal.establirDemandaActual(demandaActual);
+                    nodes[v] = nodeTerminal;
+                }
+                else if (tipus == IndexXarxa.ORIGEN) {
+                    float cabal = buffer.getFloat();
+                    Origen nodeOrigen = new Origen(llegirText(buffer), c);
+                    nodeOrigen.establirCabal(cabal);
+                    nodes[v] = nodeOrigen;
+                }
+                else if (tipus == IndexXarxa.CONNEXIO) {
+                    nodes[v] = new Connexio(llegirText(buffer), c);
+                }
+                else {
+                    throw new IOException("El fitxer de xarxa " + fitxer + " està malmès");
+                }
+
+                //l'estat es posa abans de construir la xarxa, perquè no quedi al diari de canvis
+                if (!oberta) {
+                    nodes[v].tancarAixeta();
+                }
+            }
+
+            int[] origens = new int[mida(buffer, nCanonades, 12)];
+            int[] destins = new int[nCanonades];
+            float[] capacitats = new float[nCanonades];
+            for (int e = 0; e < nCanonades; e++) {
+                origens[e] = buffer.getInt();
+                destins[e] = buffer.getInt();
+                capacitats[e] = buffer.getFloat();
+            }
+            Xarxa x = new ConstructorXarxa(nodes, nNodes, origens, destins, capacitats, nCanonades).construir();
+
+            mida(buffer, nClients, 1);
+            for (int i = 0; i < nClients; i++) {
+                String idClient = llegirText(buffer);
+                x.abonar(idClient, (Terminal) nodes[buffer.getInt()]);
+            }
+            return x;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException
+               | IllegalArgumentException | NoSuchElementException e) {
+            throw new IOException("El fitxer de xarxa " + fitxer + " està malmès", e);
+        }
+    }
+
+    /** @brief És una xarxa guardada
+     @pre ---
+     @post Diu si el fitxer fitxer comença com una xarxa guardada (amb MAGIC)
+     @exception "IOException" si no es pot llegir el fitxer
+     */
+    public static boolean esXarxaGuardada(String fitxer) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(fitxer), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            int n = 0;
+            while (buffer.hasRemaining() && n >= 0) {
+                n = canal.read(buffer);
+            }
+            return !buffer.hasRemaining() && buffer.getInt(0) == MAGIC;
+        }
+    }
+
+    /** @brief Espai
+     @pre n <= MIDA_BUFFER
+     @post buffer té almenys n bytes lliures; si no n'hi havia prou, abans s'ha escrit el que tenia a canal
+     */
+    private static void espai(FileChannel canal, ByteBuffer buffer, int n) throws IOException {
+        if (buffer.remaining() < n) {
+            buidar(canal, buffer);
+        }
+    }
+
+    /** @brief Buidar
+     @pre ---
+     @post S'ha escrit a canal tot el que hi havia a buffer, que queda buit
+     */
+    private static void buidar(FileChannel canal, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /** @brief Escriure text
+     @pre ---
+     @post S'ha escrit text (la mida i els bytes en UTF-8) a buffer o, si no hi cabia, directament a canal
+     */
+    private static void escriureText(FileChannel canal, ByteBuffer buffer, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        espai(canal, buffer, 4);
+        buffer.putInt(bytes.length);
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+        }
+        else {
+            buidar(canal, buffer);
+            ByteBuffer llarg = ByteBuffer.wrap(bytes);
+            while (llarg.hasRemaining()) {
+                canal.write(llarg);
+            }
+        }
+    }
+
+    /** @brief Llegir text
+     @pre ---
+     @post Retorna el text següent de buffer
+     @exception "BufferUnderflowException" si el text no hi és sencer
+     */
+    private static String llegirText(ByteBuffer buffer) {
+        byte[] bytes = new byte[mida(buffer, buffer.getInt(), 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** @brief Mida
+     @pre ---
+     @post Retorna n, si buffer pot contenir n elements de com a mínim bytesElement bytes
+     @exception "BufferUnderflowException" si n és negatiu o massa gran
+     */
+    private static int mida(ByteBuffer buffer, int n, int bytesElement) {
+        if (n < 0 || (long) n * bytesElement > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return n;
+    }
+}
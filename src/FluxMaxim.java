@@ -0,0 +1,469 @@
+import java.util.*;
+
+/** @file FluxMaxim.java
+ @brief Classe FluxMaxim
+ */
+
+/** @class FluxMaxim
+ @brief Flux màxim que pot circular per una component connexa d'una Xarxa i el seu tall mínim
+
+ Tots els orígens de la component pengen d'una font comuna i tots els terminals desguassen a un pou comú, amb
+ capacitat il·limitada; només limiten el flux les capacitats de les canonades. Es calcula amb l'algorisme de
+ push-relabel sobre taules de tipus primitiu: sempre es descarrega el node actiu més alt i, de tant en tant, es
+ recalculen totes les altures amb un recorregut en amplada des del pou (reetiquetatge global). Una primera fase
+ porta al pou tota l'aigua que hi pot arribar, deixant de banda els nodes que ja no hi arriben (heurística del buit);
+ la segona retorna a la font l'aigua sobrant. El resultat no canvia encara que després es modifiqui la xarxa.
+ */
+
+public class FluxMaxim {
+
+    //Atributs
+    private final List<Canonada> _canonades; //canonades de la component
+    private final float[] _flux; //flux que circula per cada canonada, en l'ordre de _canonades
+    private final boolean[] _tall; //si cada canonada és del tall mínim, en l'ordre de _canonades
+    private final List<Canonada> _tallMinim;
+    private final float _valor;
+
+    //Graf residual (només durant el càlcul). Els arcs que surten de cada node són consecutius (format CSR).
+    private int _font;
+    private int _pou;
+    private int[] _inici; //primer arc de cada node
+    private int[] _cap; //destí de cada arc
+    private double[] _residual; //capacitat residual de cada arc
+    private int[] _invers; //arc invers de cada arc
+    private int _nNodes;
+    private int[] _altura;
+    private double[] _exces; //aigua que arriba a cada node i encara no n'ha sortit
+    private int[] _actual; //arc actual de cada node
+    private int[] _primerActiu; //primer node actiu de cada altura, o -1
+    private int[] _seguentActiu; //següent node actiu de la mateixa altura, o -1
+    private int _alturaMaxima; //altura més gran que pot tenir algun node actiu
+    private int _limitAltura; //els nodes d'aquesta altura o més no són actius en la fase actual
+    private int[] _primerAltura; //primer node de cada altura per sota del nombre de nodes, o -1
+    private int[] _seguentAltura; //següent node de la mateixa altura, o -1
+    private int[] _anteriorAltura; //node anterior de la mateixa altura, o -1
+    private int _alturaMaximaNodes; //altura més gran, per sota del nombre de nodes, que pot tenir algun node
+
+    /** @brief Calcula el flux màxim d'una component
+     @pre component és una component connexa de index
+     @post Crea el flux màxim que pot anar dels orígens als terminals de component
+     */
+    public FluxMaxim(IndexXarxa index, ComponentXarxa component) {
+        int[] nodes = component.nodes();
+        int[] canonades = component.canonades();
+        int nNodes = nodes.length;
+        int nCanonades = canonades.length;
+
+        //posicions dels nodes dins la component, amb una taula de la mida de la component
+        NumeracioLocal posicio = new NumeracioLocal(nodes, nNodes);
+        int nOrigens = 0;
+        int nTerminals = 0;
+        for (int v : nodes) {
+            if (index.tipus(v) == IndexXarxa.ORIGEN) {
+                nOrigens++;
+            }
+            else if (index.tipus(v) == IndexXarxa.TERMINAL) {
+                nTerminals++;
+            }
+        }
+
+        //graf residual: canonades, font --> orígens i terminals --> pou
+        _font = nNodes;
+        _pou = nNodes + 1;
+        int nArcs = 2 * (nCanonades + nOrigens + nTerminals);
+        int[] cua = new int[nArcs];
+        int[] cap = new int[nArcs];
+        double[] capacitat = new double[nArcs];
+        _canonades = new ArrayList<>(nCanonades);
+        int[] origens = index.origens();
+        int[] destins = index.destins();
+        float[] capacitats = index.capacitats();
+        int a = 0;
+        for (int i = 0; i < nCanonades; i++) {
+            int e = canonades[i];
+            _canonades.add(index.canonada(e));
+            a = afegirArc(cua, cap, capacitat, a, posicio.posicio(origens[e]), posicio.posicio(destins[e]),
+                    capacitats[e]);
+        }
+        for (int p = 0; p < nNodes; p++) {
+            byte tipus = index.tipus(nodes[p]);
+            if (tipus == IndexXarxa.ORIGEN) {
+                a = afegirArc(cua, cap, capacitat, a, _font, p, Double.POSITIVE_INFINITY);
+            }
+            else if (tipus == IndexXarxa.TERMINAL) {
+                a = afegirArc(cua, cap, capacitat, a, p, _pou, Double.POSITIVE_INFINITY);
+            }
+        }
+        int[] arc = construirGrafResidual(nNodes + 2, cua, cap, capacitat);
+
+        _valor = (float) calcularFlux(nNodes + 2);
+
+        //el flux d'una canonada és la capacitat residual del seu arc invers
+        _flux = new float[nCanonades];
+        for (int i = 0; i < nCanonades; i++) {
+            _flux[i] = (float) _residual[_invers[arc[2 * i]]];
+        }
+
+        //tall mínim: canonades que van dels nodes als quals encara arriba la font a la resta
+        boolean[] arribaFont = nodesAccessibles();
+        _tall = new boolean[nCanonades];
+        _tallMinim = new ArrayList<>();
+        for (int i = 0; i < nCanonades; i++) {
+            if (arribaFont[cua[2 * i]] && !arribaFont[cap[2 * i]]) {
+                _tall[i] = true;
+                _tallMinim.add(_canonades.get(i));
+            }
+        }
+
+        _inici = null;
+        _cap = null;
+        _residual = null;
+        _invers = null;
+        _altura = null;
+        _exces = null;
+        _actual = null;
+        _primerActiu = null;
+        _seguentActiu = null;
+        _primerAltura = null;
+        _seguentAltura = null;
+        _anteriorAltura = null;
+    }
+
+    /** @brief Valor
+     @pre ---
+     @post Retorna el flux màxim total que pot arribar dels orígens als terminals
+     */
+    public float valor() {
+        return _valor;
+    }
+
+    /** @brief Canonades
+     @pre ---
+     @post Retorna les canonades de la component, en l'ordre de la ComponentXarxa
+     */
+    public List<Canonada> canonades() {
+        return Collections.unmodifiableList(_canonades);
+    }
+
+    /** @brief Flux d'una canonada
+     @pre 0 <= i < canonades().size()
+     @post Retorna el flux que circula per la canonada i de canonades() quan el flux total és màxim
+     */
+    public float flux(int i) {
+        return _flux[i];
+    }
+
+    /** @brief És del tall mínim
+     @pre 0 <= i < canonades().size()
+     @post Diu si la canonada i de canonades() és de tallMinim()
+     */
+    public boolean esTallMinim(int i) {
+        return _tall[i];
+    }
+
+    /** @brief Tall mínim
+     @pre ---
+     @post Retorna les canonades d'un tall mínim: la suma de les seves capacitats és valor() i, si es tallessin,
+     no arribaria aigua a cap terminal
+     */
+    public List<Canonada> tallMinim() {
+        return Collections.unmodifiableList(_tallMinim);
+    }
+
+    /** @brief Afegir arc
+     @pre a és el primer arc lliure
+     @post Afegeix l'arc de v1 a v2 amb capacitat c i el seu invers (a i a + 1), i retorna el primer arc lliure
+     */
+    private static int afegirArc(int[] cua, int[] cap, double[] capacitat, int a, int v1, int v2, double c) {
+        cua[a] = v1;
+        cap[a] = v2;
+        capacitat[a] = c;
+        cua[a + 1] = v2;
+        cap[a + 1] = v1;
+        capacitat[a + 1] = 0;
+        return a + 2;
+    }
+
+    /** @brief Construir graf residual
+     @pre Els arcs 2i i 2i + 1 de cua, cap i capacitat són inversos l'un de l'altre
+     @post El graf residual conté els arcs, agrupats pel node d'on surten, i es retorna la posició que hi ocupa cada arc
+     */
+    private int[] construirGrafResidual(int nNodes, int[] cua, int[] cap, double[] capacitat) {
+        int nArcs = cua.length;
+        _inici = new int[nNodes + 1];
+        for (int v : cua) {
+            _inici[v + 1]++;
+        }
+        for (int v = 0; v < nNodes; v++) {
+            _inici[v + 1] += _inici[v];
+        }
+
+        int[] arc = new int[nArcs];
+        int[] pos = Arrays.copyOf(_inici, nNodes);
+        for (int a = 0; a < nArcs; a++) {
+            arc[a] = pos[cua[a]]++;
+        }
+
+        _cap = new int[nArcs];
+        _residual = new double[nArcs];
+        _invers = new int[nArcs];
+        for (int a = 0; a < nArcs; a++) {
+            _cap[arc[a]] = cap[a];
+            _residual[arc[a]] = capacitat[a];
+            _invers[arc[a]] = arc[a ^ 1];
+        }
+        return arc;
+    }
+
+    /** @brief Nodes accessibles
+     @pre ---
+     @post Retorna quins nodes són accessibles des de la font pels arcs amb capacitat residual
+     */
+    private boolean[] nodesAccessibles() {
+        boolean[] accessible = new boolean[_nNodes];
+        int[] cua = new int[_nNodes];
+        int fi = 0;
+        cua[fi++] = _font;
+        accessible[_font] = true;
+        for (int inici = 0; inici < fi; inici++) {
+            int v = cua[inici];
+            for (int a = _inici[v]; a < _inici[v + 1]; a++) {
+                int w = _cap[a];
+                if (_residual[a] > 0 && !accessible[w]) {
+                    accessible[w] = true;
+                    cua[fi++] = w;
+                }
+            }
+        }
+        return accessible;
+    }
+
+    /** @brief Calcular flux
+     @pre El graf residual té nNodes nodes i no hi circula cap flux
+     @post El graf residual correspon a un flux màxim de la font al pou, i se'n retorna el valor
+     */
+    private double calcularFlux(int nNodes) {
+        _nNodes = nNodes;
+        _altura = new int[nNodes];
+        _exces = new double[nNodes];
+        _actual = new int[nNodes];
+        _primerActiu = new int[2 * nNodes + 1];
+        _seguentActiu = new int[nNodes];
+        _primerAltura = new int[nNodes];
+        _seguentAltura = new int[nNodes];
+        _anteriorAltura = new int[nNodes];
+
+        //la font envia als orígens tota l'aigua que poden fer sortir les seves canonades
+        for (int a = _inici[_font]; a < _inici[_font + 1]; a++) {
+            int origen = _cap[a];
+            double sortida = 0;
+            for (int b = _inici[origen]; b < _inici[origen + 1]; b++) {
+                if (_cap[b] != _font) {
+                    sortida += _residual[b];
+                }
+            }
+            _residual[a] -= sortida;
+            _residual[_invers[a]] += sortida;
+            _exces[origen] += sortida;
+        }
+
+        //fase 1: cap al pou; fase 2: l'excés que queda torna a la font
+        long limitFeina = 6L * nNodes + _cap.length;
+        for (int fase = 1; fase <= 2; fase++) {
+            _limitAltura = (fase == 1) ? nNodes : 2 * nNodes;
+            reetiquetatgeGlobal();
+            long feina = 0;
+            while (true) {
+                while (_alturaMaxima >= 0 && _primerActiu[_alturaMaxima] < 0) {
+                    _alturaMaxima--;
+                }
+                if (_alturaMaxima < 0) {
+                    break;
+                }
+
+                int v = _primerActiu[_alturaMaxima];
+                _primerActiu[_alturaMaxima] = _seguentActiu[v];
+                if (_altura[v] == _alturaMaxima) { //si no, un buit l'ha deixat fora de la fase
+                    feina += descarregar(v);
+                }
+
+                //cada cert temps es corregeixen les altures, que els reetiquetatges locals fan créixer a poc a poc
+                if (feina > limitFeina) {
+                    reetiquetatgeGlobal();
+                    feina = 0;
+                }
+            }
+        }
+
+        return _exces[_pou];
+    }
+
+    /** @brief Descarregar
+     @pre v és un node actiu que no és a cap llista d'actius
+     @post Ha enviat tot l'excés de v cap a nodes més baixos, pujant-lo quan ha calgut, o l'ha deixat sense excés
+     però fora de la fase actual; es retorna la feina feta
+     */
+    private long descarregar(int v) {
+        long feina = 0;
+        int fi = _inici[v + 1];
+        while (_exces[v] > 0) {
+            if (_actual[v] == fi) {
+                feina += reetiquetar(v);
+                if (_altura[v] >= _limitAltura) {
+                    break;
+                }
+                continue;
+            }
+
+            int a = _actual[v];
+            int w = _cap[a];
+            if (_residual[a] > 0 && _altura[v] == _altura[w] + 1) {
+                double enviat = Math.min(_exces[v], _residual[a]);
+                _residual[a] -= enviat;
+                _residual[_invers[a]] += enviat;
+                _exces[v] -= enviat;
+                if (_exces[w] == 0 && w != _font && w != _pou) {
+                    activar(w);
+                }
+                _exces[w] += enviat;
+            }
+            else {
+                _actual[v]++;
+            }
+        }
+        return feina;
+    }
+
+    /** @brief Reetiquetar
+     @pre v no té cap arc amb capacitat residual cap a un node una altura més baix
+     @post v és una altura per sobre del node més baix al qual pot enviar aigua o, si en treure'l de la seva altura
+     queda un buit, v i tots els nodes de sobre el buit ja no arriben al pou; es retorna la feina feta
+     */
+    private int reetiquetar(int v) {
+        int alturaAnterior = _altura[v];
+        int alturaMinima = 2 * _nNodes - 1;
+        for (int a = _inici[v]; a < _inici[v + 1]; a++) {
+            if (_residual[a] > 0 && _altura[_cap[a]] < alturaMinima) {
+                alturaMinima = _altura[_cap[a]];
+            }
+        }
+        int altura = alturaMinima + 1;
+
+        if (alturaAnterior < _nNodes) {
+            treureAltura(v);
+            if (_primerAltura[alturaAnterior] < 0) {
+                //heurística del buit: per sobre d'alturaAnterior ningú pot arribar al pou
+                for (int h = alturaAnterior + 1; h <= _alturaMaximaNodes; h++) {
+                    for (int u = _primerAltura[h]; u >= 0; u = _seguentAltura[u]) {
+                        _altura[u] = _nNodes;
+                    }
+                    _primerAltura[h] = -1;
+                }
+                _alturaMaximaNodes = alturaAnterior - 1;
+                altura = Math.max(altura, _nNodes);
+            }
+        }
+
+        _altura[v] = altura;
+        _actual[v] = _inici[v];
+        if (altura < _nNodes) {
+            afegirAltura(v);
+        }
+        return _inici[v + 1] - _inici[v] + 12;
+    }
+
+    /** @brief Reetiquetatge global
+     @pre ---
+     @post L'altura de cada node és la seva distància fins al pou pels arcs amb capacitat residual o, si no hi arriba,
+     el nombre de nodes més la distància fins a la font; els nodes actius de la fase són a les llistes de la seva altura
+     */
+    private void reetiquetatgeGlobal() {
+        Arrays.fill(_altura, 2 * _nNodes);
+        int[] cua = new int[_nNodes];
+        _altura[_pou] = 0;
+        _altura[_font] = _nNodes;
+        mesurarDistancies(_pou, cua);
+        mesurarDistancies(_font, cua);
+
+        Arrays.fill(_primerActiu, -1);
+        Arrays.fill(_primerAltura, -1);
+        _alturaMaxima = -1;
+        _alturaMaximaNodes = 0;
+        for (int v = 0; v < _nNodes; v++) {
+            _actual[v] = _inici[v];
+            if (v != _font && v != _pou && _altura[v] < _nNodes) {
+                afegirAltura(v);
+            }
+            if (_exces[v] > 0 && v != _font && v != _pou && _altura[v] < _limitAltura) {
+                activar(v);
+            }
+        }
+    }
+
+    /** @brief Mesurar distàncies
+     @pre L'altura d'arrel ja està fixada
+     @post Els nodes sense altura (2 * nombre de nodes) que arriben a arrel pels arcs amb capacitat residual tenen
+     l'altura d'arrel més la seva distància fins a arrel
+     */
+    private void mesurarDistancies(int arrel, int[] cua) {
+        int fi = 0;
+        cua[fi++] = arrel;
+        for (int inici = 0; inici < fi; inici++) {
+            int w = cua[inici];
+            //l'arc a surt de w; el seu invers va de _cap[a] a w
+            for (int a = _inici[w]; a < _inici[w + 1]; a++) {
+                int v = _cap[a];
+                if (_altura[v] == 2 * _nNodes && _residual[_invers[a]] > 0) {
+                    _altura[v] = _altura[w] + 1;
+                    cua[fi++] = v;
+                }
+            }
+        }
+    }
+
+    /** @brief Afegir a la seva altura
+     @pre _altura[v] < nombre de nodes i v no és a cap llista d'altura
+     @post v és a la llista de nodes de la seva altura
+     */
+    private void afegirAltura(int v) {
+        int h = _altura[v];
+        _anteriorAltura[v] = -1;
+        _seguentAltura[v] = _primerAltura[h];
+        if (_primerAltura[h] >= 0) {
+            _anteriorAltura[_primerAltura[h]] = v;
+        }
+        _primerAltura[h] = v;
+        if (h > _alturaMaximaNodes) {
+            _alturaMaximaNodes = h;
+        }
+    }
+
+    /** @brief Treure de la seva altura
+     @pre v és a la llista de nodes de la seva altura
+     @post v ja no és a cap llista d'altura
+     */
+    private void treureAltura(int v) {
+        if (_anteriorAltura[v] >= 0) {
+            _seguentAltura[_anteriorAltura[v]] = _seguentAltura[v];
+        }
+        else {
+            _primerAltura[_altura[v]] = _seguentAltura[v];
+        }
+        if (_seguentAltura[v] >= 0) {
+            _anteriorAltura[_seguentAltura[v]] = _anteriorAltura[v];
+        }
+    }
+
+    /** @brief Activar
+     @pre v té excés i no és a cap llista d'actius
+     @post v és a la llista d'actius de la seva altura
+     */
+    private void activar(int v) {
+        int h = _altura[v];
+        _seguentActiu[v] = _primerActiu[h];
+        _primerActiu[h] = v;
+        if (h > _alturaMaxima) {
+            _alturaMaxima = h;
+        }
+    }
+}
@@ -3,8 +3,6 @@
  */
 
 import java.util.*;
-import org.graphstream.graph.*;
-import org.graphstream.graph.implementations.SingleGraph;
 
 
 /** @class GestorXarxes
@@ -18,54 +16,16 @@ public abstract class GestorXarxes {
      @post Diu si la component connexa de la xarxa x que conté nodeOrigen té cicles
      */
     public static boolean teCicles(Xarxa x, Origen nodeOrigen) {
-        // subGraf a mirar si té cicles
-        Graph subGraf = x.crearSubGraf(nodeOrigen);
-        // conjunt per saber els nodes visitats
-        Set<Node> visitat = new HashSet<>();
-
-        // Recorre tots els nodes
-        for (Node node : subGraf) {
-            // Per cada node netejar la llista
-            visitat.clear();
-
-            // Si es troba cicles retornar true
-            if (recorregutCicle(node, visitat)) {
-                return true;
-            }
-        }
-
-        return false;
+        return x.consultar(() -> teCicles(x.index(), nodeOrigen));
     }
 
-
-    /** @brief Algoritme cicles
-     @pre ---
-     @post Retorna true si el graf conté un cicle a partir d'un algoritme que recorre cada node adjacent, false altrament
+    /** @brief Té cicles, sense bloquejar
+     @pre nodeOrigen pertany a la xarxa d'index, i s'està dins Xarxa.consultar
+     @post Diu si la component connexa que conté nodeOrigen té cicles
      */
-    private static boolean recorregutCicle(Node node, Set<Node> visitats) {
-        // Si el node actual ja s'ha visitat retorna true, hi ha un cicle
-        if (visitats.contains(node)) {
-            return true;
-        }
-
-        // S'afegeix node actual al conjunt de visitats
-        visitats.add(node);
-
-        // Es recorre per totes les arestes que surten del node
-        Iterator<Edge> iterator = node.leavingEdges().iterator();
-        while (iterator.hasNext()) {
-            // S'obté el node adjacent a l'actual
-            Node adjacent = iterator.next().getTargetNode();
-
-            // Si hi ha cicles retorna true
-            if (recorregutCicle(adjacent, visitats)) {
-                return true;
-            }
-        }
-
-        // Es treu el node actual del conjunt de nodes visitats
-        visitats.remove(node);
-        return false;
+    private static boolean teCicles(IndexXarxa index, Origen nodeOrigen) {
+        // La xarxa manté si cada component té cicles a mesura que s'hi afegeixen canonades
+        return index.teCicles(index.id(nodeOrigen.id()));
     }
 
 
@@ -75,37 +35,41 @@ public abstract class GestorXarxes {
      */
     public static boolean esArbre(Xarxa x, Origen nodeOrigen)
     {
-        return !teCicles(x, nodeOrigen) && esConnex(x, nodeOrigen);
+        //les dues comprovacions sobre el mateix estat de la xarxa
+        return x.consultar(() -> !teCicles(x.index(), nodeOrigen) && esConnex(x, nodeOrigen));
     }
 
 
     /** @brief Es Connex
-     @pre ---
+     @pre S'està dins Xarxa.consultar
      @post retorna true si el graf es connex a partir d'un algoritme dfs
      */
     private static boolean esConnex(Xarxa x, Origen nodeOrigen) {
-        Graph subGraf = x.crearSubGraf(nodeOrigen);
+        IndexXarxa index = x.index();
+        int origen = index.id(nodeOrigen.id());
+        ComponentXarxa component = index.component(origen);
 
-        Set<Node> visitats = new HashSet<>();
-        dfsConnex(subGraf, subGraf.nodes().iterator().next(), visitats);
-        return visitats.size() == subGraf.getNodeCount();
+        return dfsConnex(x.recorregut(), origen) == component.mida();
     }
 
 
     /** @brief Algoritme DFS connex
      @pre ---
-     @post actualitza el Set visitats per dir si hi ha una component connexa
+     @post Retorna a quants nodes arriba aigua des de node (node inclòs)
      */
-    private static void dfsConnex(Graph graf, Node node, Set<Node> visitats)
+    private static int dfsConnex(RecorregutXarxa recorregut, int node)
     {
-        visitats.add(node);
-        Iterator<Edge> iterator = node.leavingEdges().iterator();
-        while (iterator.hasNext()) {
-            Node adjacent = iterator.next().getOpposite(node);
-            if (!visitats.contains(adjacent)) {
-                dfsConnex(graf, adjacent, visitats);
+        recorregut.recorrerSortides(node);
+        while (!recorregut.buit()) {
+            int canonada = recorregut.seguentCanonada();
+            if (canonada < 0) {
+                recorregut.pujar();
+            }
+            else if (!recorregut.visitat(recorregut.extrem(canonada))) {
+                recorregut.baixar(recorregut.extrem(canonada));
             }
         }
+        return recorregut.nombreVisitats();
     }
 
 
@@ -116,15 +80,31 @@ public abstract class GestorXarxes {
      @post Retorna el cabal mínim del sub graf creat a partir del nodeOrigen
      */
     public static float cabalMinim(Xarxa x, Origen nodeOrigen, float percentatgeDemandaSatisfet)
+    {
+        return cabalMinim(x.avaluarCabals(nodeOrigen), percentatgeDemandaSatisfet);
+    }
+
+    /** @brief Retorna el cabal mínim de la component connexa que conté nodeOrigen a la instantània x
+     @pre nodeOrigen pertanyia a la xarxa de x, la seva component connexa no té cicles, i percentatgeDemandaSatisfet > 0
+     @post Retorna el cabal mínim del sub graf creat a partir del nodeOrigen en el moment de la instantània
+     */
+    public static float cabalMinim(InstantaniaXarxa x, Origen nodeOrigen, float percentatgeDemandaSatisfet)
+    {
+        return cabalMinim(x.avaluarCabals(nodeOrigen), percentatgeDemandaSatisfet);
+    }
+
+    /** @brief Cabal mínim a partir de l'avaluació d'una component
+     @pre percentatgeDemandaSatisfet > 0
+     @post Retorna el cabal mínim de la component avaluada a cabals
+     */
+    private static float cabalMinim(AvaluacioCabals cabals, float percentatgeDemandaSatisfet)
     {
         float cabalMin = 0;
 
-        Graph subGraf = x.crearSubGraf(nodeOrigen);
-        for(Node node : subGraf.nodes().toList()){
-            NodeAixeta nodeAixeta = x.node(node.getId());
+        for(NodeAixeta nodeAixeta : cabals.nodes()){
             //si terminal oberta i li arriba cabal(no hi ha aixetes tancades per sobre)
-            if(nodeAixeta.aixetaOberta() && x.cabal(nodeAixeta)>0 && nodeAixeta instanceof Terminal) {
-                cabalMin += x.demanda(nodeAixeta) * (percentatgeDemandaSatisfet/100);
+            if(cabals.aixetaOberta(nodeAixeta) && cabals.cabal(nodeAixeta)>0 && nodeAixeta instanceof Terminal) {
+                cabalMin += cabals.demanda(nodeAixeta) * (percentatgeDemandaSatisfet/100);
             }
         }
 
@@ -140,33 +120,78 @@ public abstract class GestorXarxes {
      */
     public static Set<Canonada> excesCabal(Xarxa x, Origen nodeOrigen, Set<Canonada> cjtCanonades)
     {
-        Set<Canonada> cjtCanonadesCabal = new HashSet<>(); //guardar canonades amb excés
-        Set<NodeAixeta> nodeAixetaVisitar = new HashSet<>(); //nodes a visitar
-        nodeAixetaVisitar.add(nodeOrigen);
+        Set<Canonada> cjtCanonadesCabal = canonadesAmbExces(x, nodeOrigen);
+        cjtCanonadesCabal.retainAll(cjtCanonades); //només les canonades demanades
 
-        while(!cjtCanonades.isEmpty() && !nodeAixetaVisitar.isEmpty()){//Mentre quedin nodes a visitar i no s'hagin trobat les canonades
-            Iterator<Canonada> sortides = x.sortides(nodeAixetaVisitar.stream().findFirst().get());//agafem el primer node
-            nodeAixetaVisitar.remove(nodeAixetaVisitar.stream().findFirst().get());
+        return cjtCanonadesCabal;
+    }
 
-            while(sortides.hasNext() && !cjtCanonades.isEmpty()){//per totes les canonades d'un node
-                Canonada canonada = sortides.next();
+    /** @brief Retorna el subconjunt de canonades de cjtCanonades amb una demanda més gran que la seva capacitat màxima
+     *            a la instantània x
+     @pre nodeOrigen pertanyia a la xarxa de x, la seva component connexa no té cicles i les canonades de cjtCanonades
+      *       pertanyen a aquesta component
+     @post Retorna el subconjunt de canonades de cjtCanonades que, en el moment de la instantània, sobrepassarien la
+      *       seva capacitat si es satisfés la demanda de tots els nodes terminals de la component
+     */
+    public static Set<Canonada> excesCabal(InstantaniaXarxa x, Origen nodeOrigen, Set<Canonada> cjtCanonades)
+    {
+        Set<Canonada> cjtCanonadesCabal = canonadesAmbExces(x, nodeOrigen);
+        cjtCanonadesCabal.retainAll(cjtCanonades); //només les canonades demanades
 
-                if(cjtCanonades.contains(canonada)){//si trobem la canonada
-                    cjtCanonades.remove(canonada); //ja no l'hem de buscar més
+        return cjtCanonadesCabal;
+    }
 
-                    if(canonada.capacitat() < x.demanda(canonada.node2())){//guardem si té excés
-                        cjtCanonadesCabal.add(canonada);
-                    }
-                }
-                if(!(canonada.node2() instanceof Terminal)) {//afegim node a visitar si no és terminal
-                    nodeAixetaVisitar.add(canonada.node2());
-                }
+    /** @brief Retorna un set amb totes les canonades de la component connexa de la xarxa x que conté nodeOrigen les
+     *            quals tenen una demanda més gran que la seva capacitat màxima
+     @pre nodeOrigen pertany a la xarxa x i la component connexa de la xarxa x que conté nodeOrigen no té cicles
+     @post Retorna les canonades de la component tals que, si es satisfés la demanda de tots els nodes terminals de la
+      *       component, es sobrepassaria la seva capacitat. Es calcula amb una sola passada per la component
+     */
+    public static Set<Canonada> canonadesAmbExces(Xarxa x, Origen nodeOrigen)
+    {
+        return canonadesAmbExces(x.avaluarCabals(nodeOrigen));
+    }
+
+    /** @brief Retorna un set amb totes les canonades de la component connexa que conté nodeOrigen a la instantània x
+     *            les quals tenen una demanda més gran que la seva capacitat màxima
+     @pre nodeOrigen pertanyia a la xarxa de x i la seva component connexa no té cicles
+     @post Retorna les canonades de la component que, en el moment de la instantània, sobrepassarien la seva capacitat
+      *       si es satisfés la demanda de tots els nodes terminals de la component
+     */
+    public static Set<Canonada> canonadesAmbExces(InstantaniaXarxa x, Origen nodeOrigen)
+    {
+        return canonadesAmbExces(x.avaluarCabals(nodeOrigen));
+    }
+
+    /** @brief Canonades amb excés a partir de l'avaluació d'una component
+     @pre ---
+     @post Retorna les canonades de la component avaluada a cabals amb una demanda més gran que la seva capacitat
+     */
+    private static Set<Canonada> canonadesAmbExces(AvaluacioCabals cabals)
+    {
+        Set<Canonada> cjtCanonadesCabal = new HashSet<>(); //guardar canonades amb excés
+
+        for(Canonada canonada : cabals.canonades()){
+            if(canonada.capacitat() < cabals.demanda(canonada.node2())){//guardem si té excés
+                cjtCanonadesCabal.add(canonada);
             }
         }
         return cjtCanonadesCabal;
     }
 
 
+    /** @brief Analitza què passaria si es tanqués cada connexió de la component connexa de la xarxa x que conté nodeOrigen
+     @pre nodeOrigen pertany a la xarxa x i la component connexa de la xarxa x que conté nodeOrigen no té cicles
+     @post Retorna, per a cada connexió oberta de la component, els terminals que es quedarien sense aigua i la demanda
+      *       no servida si només es tanqués aquella aixeta, de la que més afecta a la que menys. Les aixetes s'analitzen
+      *       en paral·lel sobre una instantània de la xarxa
+     */
+    public static AnalisiContingencies analisiContingencies(Xarxa x, Origen nodeOrigen)
+    {
+        return new AnalisiContingencies(x.instantania(), nodeOrigen);
+    }
+
+
     /** @brief Retorna un set amb tots els nodes aixetes els quals estàn trencats o embossats (no passa aigua)
      @pre Tots els terminals de aiguaArriba pertanyen a la xarxa x, aiguaArriba.get(t) indica si arriba aigua a t i la xarxa x té forma d'arbre
      @post Retorna el conjunt de nodes n de la xarxa x més propers (seguint la topologia) als terminals t de
@@ -174,27 +199,38 @@ public abstract class GestorXarxes {
      */
     public static Set<NodeAixeta> aixetesTancar(Xarxa x, Map<Terminal, Boolean> aiguaArriba)
     {
+        return x.consultar(() -> aixetesTancarSenseBloquejar(x, aiguaArriba));
+    }
 
+    /** @brief Aixetes a tancar, sense bloquejar
+     @pre Les de aixetesTancar(x, aiguaArriba), i s'està dins Xarxa.consultar
+     @post Retorna el mateix que aixetesTancar(x, aiguaArriba)
+     */
+    private static Set<NodeAixeta> aixetesTancarSenseBloquejar(Xarxa x, Map<Terminal, Boolean> aiguaArriba)
+    {
         Set<NodeAixeta> tancarAixetes = new HashSet<>();
+        IndexXarxa index = x.index();
+        CursorCanonades entradesT = x.cursor(); //es reutilitza per a tots els terminals
         //Buscar aixetes trencades
         for (Map.Entry<Terminal, Boolean> ItAiguaArriba : aiguaArriba.entrySet()) {
             Terminal terminal = ItAiguaArriba.getKey();
             Boolean aiguaArribaValor = ItAiguaArriba.getValue();
 
             if(!aiguaArribaValor && terminal.aixetaOberta()) {//si no arriba aigua
-                Iterator<Canonada> entradesT = x.entrades(terminal);
+                entradesT.entrades(terminal);
                 while (entradesT.hasNext()) { //mirem aixetes superiors
-                    tancarAixetes.add(entradesT.next().node1()); //guardem aixeta trencada
+                    tancarAixetes.add(index.node(index.origens()[entradesT.seguentIndex()])); //guardem aixeta trencada
                 }
             }
 
         }
         //buscar nodes fills que no estan trencats
         Set<NodeAixeta> tancarAixetesFills = new HashSet<>();//set que serveix per saber els nodes fills
+        RecorregutXarxa recorregut = x.recorregut(); //es reutilitza per a totes les aixetes
         Iterator<NodeAixeta> iterator = tancarAixetes.iterator();
         while (iterator.hasNext()) {
             NodeAixeta aixeta = iterator.next();
-            eliminarFills(tancarAixetes, aixeta, x,tancarAixetesFills);
+            eliminarFills(tancarAixetes, index.id(aixeta.id()), recorregut, index, tancarAixetesFills);
         }
         //treiem els nodes fills
         tancarAixetes.removeAll(tancarAixetesFills);
@@ -205,21 +241,22 @@ public abstract class GestorXarxes {
      @pre --
      @post Omple tancarAixetesFills amb tots els nodes connexió inferiors al nodeAixeta aixeta
      */
-    private static void eliminarFills(Set<NodeAixeta> tancarAixetes, NodeAixeta aixeta, Xarxa x, Set<NodeAixeta> tancarAixetesFills) {
-        if(aixeta instanceof Connexio) {
-            Iterator<Canonada> sortides = x.sortides(aixeta);
-            boolean acabar = false;
-            while (sortides.hasNext() && !acabar) { //mirem aixetes inferiors
-                Canonada canonada = sortides.next();
-                NodeAixeta nodoNext = canonada.node2();
-                if(nodoNext instanceof Connexio) {
-                    if (tancarAixetes.contains(nodoNext)) {
-                        tancarAixetesFills.add(nodoNext);
-                    }
-                    if (!tancarAixetes.isEmpty()) {
-                        eliminarFills(tancarAixetes, nodoNext, x,tancarAixetesFills);
-                    } else {
-                        acabar = true;
+    private static void eliminarFills(Set<NodeAixeta> tancarAixetes, int aixeta, RecorregutXarxa recorregut, IndexXarxa index, Set<NodeAixeta> tancarAixetesFills) {
+        if(index.tipus(aixeta) == IndexXarxa.CONNEXIO) {
+            recorregut.recorrerSortides(aixeta);
+            while (!recorregut.buit()) { //mirem aixetes inferiors
+                int canonada = recorregut.seguentCanonada();
+                if (canonada < 0) {
+                    recorregut.pujar();
+                }
+                else {
+                    int seguent = recorregut.extrem(canonada);
+                    if(index.tipus(seguent) == IndexXarxa.CONNEXIO && !recorregut.visitat(seguent)) {
+                        NodeAixeta nodoNext = index.node(seguent);
+                        if (tancarAixetes.contains(nodoNext)) {
+                            tancarAixetesFills.add(nodoNext);
+                        }
+                        recorregut.baixar(seguent);
                     }
                 }
             }
@@ -233,227 +270,92 @@ public abstract class GestorXarxes {
      */
     public static List<NodeAixeta> nodesOrdenats(Coordenades c, Set<NodeAixeta> cjtNodes)
     {
-        List<NodeAixeta> llistaOrdenats = new LinkedList<NodeAixeta>();
-        for (NodeAixeta nodeSet : cjtNodes) { //per cada node del set introduir-lo a la llista creada
-            double distancia = c.distancia(nodeSet.coordenades());
-            boolean trobat = false;
-
-            // Itera sobre la llista ordenada per trobar posició pel nou node
-            ListIterator<NodeAixeta> iterador = llistaOrdenats.listIterator();
-            while (iterador.hasNext() && !trobat) {
-                NodeAixeta node = iterador.next();
-                if ((distancia < c.distancia(node.coordenades())) || (distancia == c.distancia(node.coordenades()) && nodeSet.idPetit(node))) {
-                    //Afegir el node
-                    iterador.previous();
-                    iterador.add(nodeSet);
-                    trobat = true; //Sortir del while
-                }
+        NodeAixeta[] nodes = cjtNodes.toArray(new NodeAixeta[0]);
 
-            }
-            if (!trobat) {
-                llistaOrdenats.add(nodeSet);
-            }
+        //cada distància es calcula un sol cop, totes de cop
+        double[] empaquetades = new double[Coordenades.MIDA_EMPAQUETADA * nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].coordenades().empaquetar(empaquetades, i);
         }
-        return llistaOrdenats;
+        double[] distancies = new double[nodes.length];
+        c.distancies(empaquetades, nodes.length, distancies);
 
+        Integer[] ordre = new Integer[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            ordre[i] = i;
+        }
+        Arrays.sort(ordre, (i, j) -> {
+            int comparacio = Double.compare(distancies[i], distancies[j]);
+            return (comparacio != 0) ? comparacio : nodes[i].id().compareTo(nodes[j].id());
+        });
+
+        List<NodeAixeta> llistaOrdenats = new ArrayList<>(nodes.length);
+        for (int i : ordre) {
+            llistaOrdenats.add(nodes[i]);
+        }
+        return llistaOrdenats;
     }
 
-
     /** @brief Dibuixa la xarxa x amb tots els cabals i capacitats de cada canonada i node juntament amb l'estat del node aixeta (obert/tancat)
      @pre nodeOrigen pertany a la xarxa x
      @post Dibuixa el flux màxim que pot circular per la xarxa x, tenint en compte la capacitat de les canonades
      */
     public static void fluxMaxim(Xarxa x, Origen nodeOrigen) {
-
-        Graph subGraf = x.crearSubGraf(nodeOrigen);
-        Graph subGrafMaxFlow = crearMaxFlow(subGraf,nodeOrigen.id());
-
-        float cabalTotal = 0; //cabal maxim al qual es pot arribar en una línia
-        float cabalPossible = 0 ;
-        float fluxMaxim = 0; //flux màxim
-        //Per cada camí del node Origen
-        Node node = subGrafMaxFlow.getNode(nodeOrigen.id());
-        for(Edge edge : node.edges().toList()){
-            Canonada canonada = (Canonada) edge.getAttribute("canonada");
-
-            cabalPossible = canonada.capacitat();
-            cabalTotal = buscarCabalMaxim(canonada.node2(), cabalPossible, subGrafMaxFlow);
-            fluxMaxim += cabalTotal;
-            edge.setAttribute("ui.label",cabalTotal + "/" + canonada.capacitat());
-        }
-        //dibuixar subgraf
-        subGrafMaxFlow.setAttribute("ui.quality");
-        subGrafMaxFlow.setAttribute("ui.antialias");
-        subGrafMaxFlow.setAttribute("ui.stylesheet", "url('file:src/estil.css')");
-        subGrafMaxFlow.display();
-        System.out.println("Flux màxim\n" + fluxMaxim);
+        //no es tanca, perquè tancaria System.out; només es buida
+        SortidaResultats sortida = new SortidaResultats(System.out, SortidaResultats.CADA_LINIA);
+        fluxMaxim(x, nodeOrigen, sortida);
+        sortida.buidar();
     }
 
-    /** @brief Crea un nou graf amb un sol node origen i un sol node terminal a partir del graf graph.
-     @pre --
-     @post Retorna el graf graph, però amb només un origen i un terminal.
+    /** @brief Dibuixa la xarxa x amb tots els cabals i capacitats de cada canonada i node juntament amb l'estat del node aixeta (obert/tancat)
+     @pre nodeOrigen pertany a la xarxa x
+     @post Dibuixa el flux màxim que pot circular per la xarxa x, com fluxMaxim(x, nodeOrigen), però escriu el flux
+     màxim a sortida en lloc de System.out
      */
-    private static Graph crearMaxFlow(Graph graph,String idOrigen) {
-        //inicialitzacions
-        Graph maxFlow = new SingleGraph("MaxFlow");
-        float cabalOrigen = 0;
-        Coordenades cordOrigen = null;
-        float demandaActualTerminal = 0;
-        float demandaPuntaTerminal = 0;
-        String idTerminal = "";
-        Coordenades cordTerminal = null;
-
-        //Recorregut per juntar nodes Origens i Terminals
-        for(Node node : graph.nodes().toList()) {
-            NodeAixeta nodeAixeta = (NodeAixeta) graph.getNode(node.getId()).getAttribute("aixeta");
-
-            if(nodeAixeta instanceof Origen origen){
-                cabalOrigen += origen.cabal();
-                cordOrigen = origen.coordenades();
-            }
-            else if(nodeAixeta instanceof Terminal terminal){
-                demandaActualTerminal += terminal.demandaActual();
-                demandaPuntaTerminal += terminal.demandaPunta();
-                idTerminal = terminal.id();
-                cordTerminal = terminal.coordenades();
-            }
-            else{
-                Node n = maxFlow.addNode(nodeAixeta.id());
-                n.setAttribute("aixeta", nodeAixeta);
-                n.setAttribute("ui.class", "connexio");
-            }
-        }
-
-        //Crear nova xarxa MaxFlow
-        //Crear Origen general
-        Origen unioOrigen= new Origen(idOrigen,cordOrigen);
-        unioOrigen.establirCabal(cabalOrigen);
-        Node nodeOrigenGeneral = maxFlow.addNode(unioOrigen.id());
-        nodeOrigenGeneral.setAttribute("aixeta", unioOrigen);
-        nodeOrigenGeneral.setAttribute("ui.class", "origen");
-
-        //Crear Terminal general
-        Terminal unioTerminal = new Terminal(idTerminal,cordTerminal,demandaPuntaTerminal);
-        unioTerminal.establirDemandaActual(demandaActualTerminal);
-        Node nodeTerminalGeneral = maxFlow.addNode(unioTerminal.id());
-        nodeTerminalGeneral.setAttribute("aixeta", unioTerminal);
-        nodeTerminalGeneral.setAttribute("ui.class", "terminal");
-
-        Set<String> SetIdOrigens = new HashSet<>(); //set de connexions amb nodes origens fets (per no repetir)
-        //enllaçar nodes
-        for(Node node : maxFlow.nodes().toList()) {
-            Node nodeGraph = graph.getNode(node.getId());
-
-            for(Edge edge : nodeGraph.edges().toList()) {
-                Canonada canonada = (Canonada) edge.getAttribute("canonada");
-
-                Node node2Graph = graph.getNode(canonada.node2().id());
-                Node node1Graph = graph.getNode(canonada.node1().id());
-                Node node2Max = maxFlow.getNode(canonada.node2().id());
-                Node node1Max = maxFlow.getNode(canonada.node1().id());
-                String idCanonada;
-                Edge e = null;
-                Canonada pipe;
-
-                if (node1Graph.getAttribute("ui.class").toString().contains("origen")) { //si està connectat amb origen
-                    if(node2Graph.getAttribute("ui.class").toString().contains("terminal")){ //si hi ha connexió origen i terminal
-                        if(!nodeOrigenGeneral.hasEdgeBetween(nodeTerminalGeneral)) {//no s'ha fet la connexió
-                            SetIdOrigens.add(canonada.node2().id()); //afegim al set de ja connectats
-                            pipe = new Canonada(unioOrigen, unioTerminal, canonada.capacitat());
-
-                            crearPipe(maxFlow,unioOrigen,unioTerminal,pipe);
-                        }
-                        else if(!(SetIdOrigens.contains(canonada.node2().id()))){
-                            SetIdOrigens.add(canonada.node2().id()); //afegim al set de ja connectats
-
-                            Edge edgeEliminar = nodeOrigenGeneral.getEdgeBetween(nodeTerminalGeneral);
-                            Canonada canonadaEliminar = (Canonada) edgeEliminar.getAttribute("canonada");
-                            pipe = new Canonada(unioOrigen,unioTerminal,canonada.capacitat()+canonadaEliminar.capacitat());
-                            maxFlow.removeEdge(edgeEliminar);//eliminem antiga connexió
-
-                            crearPipe(maxFlow,unioOrigen,unioTerminal,pipe);//creem nova connexió general
-                        }
-                    }
-                    else {//no son origen + terminal
-                        if (!node2Max.hasEdgeBetween(nodeOrigenGeneral)) { //no s'ha fet connexió
-                            SetIdOrigens.add(canonada.node2().id()); //afegim al set de ja connectats
-
-                            pipe = new Canonada(unioOrigen, canonada.node2(), canonada.capacitat());
-                            crearPipe(maxFlow,unioOrigen,canonada.node2(),pipe);//creem nova connexió general
-                        }
-                        else if(!(SetIdOrigens.contains(canonada.node2().id()))){
-                            SetIdOrigens.add(canonada.node2().id()); //afegim al set de ja connectats
-
-                            Edge edgeEliminar = node2Max.getEdgeBetween(nodeOrigenGeneral);
-                            Canonada canonadaEliminar = (Canonada) edgeEliminar.getAttribute("canonada");
-                            pipe = new Canonada(unioOrigen,canonada.node2(),canonada.capacitat()+canonadaEliminar.capacitat());
-                            maxFlow.removeEdge(edgeEliminar);//eliminem antiga connexió
-
-                            crearPipe(maxFlow,unioOrigen,canonada.node2(),pipe);//creem nova connexió general
-                        }
-                    }
-                }
-                else if(node2Graph.getAttribute("ui.class").toString().contains("terminal")){//si està connectat amb terminal
-                    //no cal mirar si node1 és origen perquè ja hagués entrat al primer if
-                    if(!node1Max.hasEdgeBetween(nodeTerminalGeneral)) {
-                        pipe = new Canonada(canonada.node1(), unioTerminal, canonada.capacitat());
-                        crearPipe(maxFlow,canonada.node1(),unioTerminal,pipe);//creem pipe
-                    }
+    public static void fluxMaxim(Xarxa x, Origen nodeOrigen, SortidaResultats sortida) {
+        DibuixXarxa dibuix = dibuixFluxMaxim(x, nodeOrigen);
+        VisorGrafic.mostrar(dibuix);
+        sortida.escriure("Flux màxim\n").escriure(dibuix.total()).linia();
+    }
 
-                }
-                else{//si son dos connexions
-                    if(!(node1Max.hasEdgeBetween(node2Max))) {
-                        pipe = new Canonada(canonada.node1(), canonada.node2(), canonada.capacitat());
-                        crearPipe(maxFlow,canonada.node1(),canonada.node2(),pipe);//creem pipe
-                    }
-                }
+    /** @brief Dibuix del flux màxim de la xarxa x
+     @pre nodeOrigen pertany a la xarxa x
+     @post Retorna, sense mostrar-lo, el dibuix de la component connexa on pertany nodeOrigen amb flux/capacitat a cada
+     canonada, les canonades del tall mínim de classe tall i el flux màxim com a total
+     */
+    public static DibuixXarxa dibuixFluxMaxim(Xarxa x, Origen nodeOrigen) {
+        DibuixXarxa dibuix = new DibuixXarxa("Flux màxim");
+        //els nodes i el flux, del mateix estat de la xarxa; el flux ja no canvia encara que es modifiqui la xarxa
+        FluxMaxim flux = x.consultar(() -> {
+            IndexXarxa index = x.index();
+            ComponentXarxa component = index.component(index.id(nodeOrigen.id()));
+            for (int v : component.nodes()) {
+                dibuix.afegirNode(index.node(v), Xarxa.classeNode(index.tipus(v)), null);
             }
-
+            return new FluxMaxim(index, component);
+        });
+
+        //marquem les canonades del tall mínim
+        List<Canonada> canonades = flux.canonades();
+        for (int i = 0; i < canonades.size(); i++) {
+            Canonada canonada = canonades.get(i);
+            dibuix.afegirCanonada(canonada, flux.flux(i) + "/" + canonada.capacitat(),
+                    flux.esTallMinim(i) ? "tall" : null);
         }
-        return maxFlow;
-    }
+        dibuix.establirTotal(flux.valor());
 
-    /** @brief Crea una pipe en el graph maxFlow
-     @pre nodesAixeta pertanyen al graph
-     @post Crea una pipe amb el nom dels ids dels nodes i es guarda al graph maxFlow
-     */
-    private static void crearPipe(Graph maxFlow, NodeAixeta node1, NodeAixeta node2, Canonada pipe){
-        String idCanonada = node1.id() + "-" + node2.id();
-        Edge e = maxFlow.addEdge(idCanonada, node1.id(), node2.id(), true);
-        e.setAttribute("canonada", pipe);
+        return dibuix;
     }
 
-    /** @brief Retorna el flux màxim que pot donar el nodeAixeta. Com a màxim serà cabalPossible.
-     @pre nodeAixeta pertany al graph
-     @post Gràcies a la recursivitat, va baixant per les arestes fins trobar la canonada més petita (capacitat) i acaba
-     * tornant la capacitat mínim de la línia del nodeAixeta.
+    /** @brief Calcula el flux màxim que pot circular per la component connexa de la xarxa x que conté nodeOrigen
+     @pre nodeOrigen pertany a la xarxa x
+     @post Retorna el flux màxim que pot anar de tots els orígens a tots els terminals de la component, limitat només
+     per la capacitat de les canonades, amb el flux de cada canonada i el tall mínim
      */
-    private static float buscarCabalMaxim(NodeAixeta nodeAixeta,float cabalPossible, Graph graph) {
-        float cabalTotal = 0;
-        if(nodeAixeta instanceof Terminal terminal){
-            cabalTotal = cabalPossible;
-        }
-        else{
-            //per tots els edges sortida del node
-            Node nodeIterador = graph.getNode(nodeAixeta.id());
-            Iterator<Edge> edgeIterator = nodeIterador.leavingEdges().iterator();
-            while (edgeIterator.hasNext()) {
-                Edge aresta = edgeIterator.next();
-                Canonada canonada = (Canonada) aresta.getAttribute("canonada");
-                //comprovar si cabalPossible és més petit i cridar funció recursiva
-                float cabalCanonada = 0;
-                if (cabalPossible > canonada.capacitat()) {
-                    cabalCanonada = buscarCabalMaxim(canonada.node2(), canonada.capacitat(), graph);
-                }
-                else cabalCanonada = buscarCabalMaxim(canonada.node2(), cabalPossible, graph);
-
-                cabalTotal += cabalCanonada;
-                cabalPossible -= cabalCanonada;
-                //guardar cabal a dibuix
-                aresta.setAttribute("ui.label",cabalCanonada + "/" + canonada.capacitat());
-
-            }
-        }
-        return cabalTotal;
+    public static FluxMaxim calcularFluxMaxim(Xarxa x, Origen nodeOrigen) {
+        return x.consultar(() -> {
+            IndexXarxa index = x.index();
+            return new FluxMaxim(index, index.component(index.id(nodeOrigen.id())));
+        });
     }
 }
@@ -0,0 +1,335 @@
+import java.util.*;
+
+/** @file IndexEspacial.java
+ @brief Classe IndexEspacial
+ */
+
+/** @class IndexEspacial
+ @brief Índex espacial de les coordenades dels nodes d'una Xarxa per a consultes de proximitat
+
+ Cada punt es guarda com a vector unitari 3D (x, y, z) sobre l'esfera, on la distància en línia recta creix amb la
+ distància sobre la superfície. Els punts es reparteixen en arbres k-d estàtics de 1, 2, 4, 8... punts (mètode
+ logarítmic de Bentley i Saxe): afegir un punt fusiona els arbres plens més petits en un de nou, de manera que els
+ arbres sempre estan equilibrats sigui quin sigui l'ordre en què arriben els punts. Els arbres no es construeixen en
+ afegir cada punt sinó a la consulta següent, amb tots els punts pendents de cop: carregar molts punts seguits no
+ construeix cap arbre intermedi.
+
+ Les consultes recorren els arbres en ordre de distància (primer el més proper) amb una cua de prioritat de caixes i
+ punts. Les caixes tenen com a clau una fita inferior de la distància, una mica rebaixada perquè els errors d'arrodoniment
+ no facin sortir un punt abans d'hora; els punts tenen com a clau Coordenades.distancia i, en cas d'empat, surten en
+ ordre alfabètic dels seus identificadors.
+ */
+
+public class IndexEspacial {
+
+    private static final int MIDA_INICIAL = 16;
+    private static final int MAX_NIVELLS = 32;
+    private static final double MARGE = 1e-6; //km que es rebaixen les fites de les caixes
+
+    //Atributs
+    private Coordenades[] _coordenades;
+    private String[] _ids;
+    private double[] _x; //vector unitari de cada punt
+    private double[] _y;
+    private double[] _z;
+    private int _nPunts;
+    private int _nConstruits; //punts [0, _nConstruits) que ja són als arbres
+
+    private final int[][] _arbres; //arbre de 2^i punts de cada nivell, o null; el node de [lo, hi) és a (lo + hi) / 2
+    private final double[][] _minims; //caixa de cada node dels arbres: mínims de x, y i z a 3 * posició del node
+    private final double[][] _maxims;
+
+    /** @brief Crea un IndexEspacial
+     @pre ---
+     @post Crea un índex sense cap punt
+     */
+    public IndexEspacial() {
+        _coordenades = new Coordenades[MIDA_INICIAL];
+        _ids = new String[MIDA_INICIAL];
+        _x = new double[MIDA_INICIAL];
+        _y = new double[MIDA_INICIAL];
+        _z = new double[MIDA_INICIAL];
+        _arbres = new int[MAX_NIVELLS][];
+        _minims = new double[MAX_NIVELLS][];
+        _maxims = new double[MAX_NIVELLS][];
+    }
+
+    /** @brief Afegir punt
+     @pre ---
+     @post S'ha afegit el punt de coordenades c i identificador id, i es retorna el seu número (0, 1, 2...)
+     */
+    public int afegir(String id, Coordenades c) {
+        if (_nPunts == _ids.length) {
+            int mida = _nPunts * 2;
+            _coordenades = Arrays.copyOf(_coordenades, mida);
+            _ids = Arrays.copyOf(_ids, mida);
+            _x = Arrays.copyOf(_x, mida);
+            _y = Arrays.copyOf(_y, mida);
+            _z = Arrays.copyOf(_z, mida);
+        }
+
+        int p = _nPunts++;
+        _coordenades[p] = c;
+        _ids[p] = id;
+        _x[p] = c.getX();
+        _y[p] = c.getY();
+        _z[p] = c.getZ();
+        return p;
+    }
+
+    /** @brief Nombre de punts
+     @pre ---
+     @post Retorna el nombre de punts de l'índex
+     */
+    public int nombrePunts() {
+        return _nPunts;
+    }
+
+    /** @brief Per distància
+     @pre ---
+     @post Retorna els números de tots els punts ordenats segons la seva distància a c i, en cas d'empat, en ordre
+     alfabètic dels seus identificadors. Cada punt es calcula quan es demana
+     */
+    public PrimitiveIterator.OfInt perDistancia(Coordenades c) {
+        actualitzar();
+        return new Cerca(c);
+    }
+
+    /** @brief Més propers
+     @pre k >= 0
+     @post Retorna els números dels k punts més propers a c (o de tots, si n'hi ha menys), en l'ordre de perDistancia(c)
+     */
+    public int[] mesPropers(Coordenades c, int k) {
+        int[] propers = new int[Math.min(k, _nPunts)];
+        PrimitiveIterator.OfInt cerca = perDistancia(c);
+        for (int i = 0; i < propers.length; i++) {
+            propers[i] = cerca.nextInt();
+        }
+        return propers;
+    }
+
+    /** @brief Actualitzar arbres
+     @pre ---
+     @post Tots els punts són als arbres: hi ha un arbre de 2^i punts a cada nivell i on _nPunts té el bit i a 1
+     */
+    private void actualitzar() {
+        if (_nConstruits == _nPunts) {
+            return;
+        }
+
+        //com en una suma binària, els nivells per sobre del bit més alt que canvia es queden igual; els arbres de
+        //sota s'ajunten amb els punts pendents i es tornen a repartir
+        int alt = 31 - Integer.numberOfLeadingZeros(_nConstruits ^ _nPunts);
+        int[] punts = new int[_nPunts & ((2 << alt) - 1)];
+        int n = 0;
+        for (int nivell = 0; nivell <= alt; nivell++) {
+            if (_arbres[nivell] != null) {
+                System.arraycopy(_arbres[nivell], 0, punts, n, _arbres[nivell].length);
+                n += _arbres[nivell].length;
+                _arbres[nivell] = null;
+                _minims[nivell] = null;
+                _maxims[nivell] = null;
+            }
+        }
+        for (int p = _nConstruits; p < _nPunts; p++) {
+            punts[n++] = p;
+        }
+
+        int inici = 0;
+        for (int nivell = 0; nivell <= alt; nivell++) {
+            if ((_nPunts & (1 << nivell)) != 0) {
+                int[] arbre = Arrays.copyOfRange(punts, inici, inici + (1 << nivell));
+                inici += arbre.length;
+                _minims[nivell] = new double[3 * arbre.length];
+                _maxims[nivell] = new double[3 * arbre.length];
+                construir(nivell, arbre, 0, arbre.length);
+                _arbres[nivell] = arbre;
+            }
+        }
+        _nConstruits = _nPunts;
+    }
+
+    /** @brief Construir
+     @pre punts[lo..hi) són punts de l'índex
+     @post punts[lo..hi) formen un arbre k-d del nivell nivell: el node és a (lo + hi) / 2, els punts de [lo, node) no
+     són més grans que ell en l'eix de la caixa més llarg, i els de (node, hi) no són més petits
+     */
+    private void construir(int nivell, int[] punts, int lo, int hi) {
+        int node = (lo + hi) >>> 1;
+        double[] minims = _minims[nivell];
+        double[] maxims = _maxims[nivell];
+        double[][] eixos = {_x, _y, _z};
+        for (int d = 0; d < 3; d++) {
+            double minim = Double.POSITIVE_INFINITY;
+            double maxim = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                minim = Math.min(minim, eixos[d][punts[i]]);
+                maxim = Math.max(maxim, eixos[d][punts[i]]);
+            }
+            minims[3 * node + d] = minim;
+            maxims[3 * node + d] = maxim;
+        }
+
+        if (hi - lo > 1) {
+            int eix = 0;
+            for (int d = 1; d < 3; d++) {
+                if (maxims[3 * node + d] - minims[3 * node + d] > maxims[3 * node + eix] - minims[3 * node + eix]) {
+                    eix = d;
+                }
+            }
+            seleccionar(eixos[eix], punts, lo, hi, node);
+            construir(nivell, punts, lo, node);
+            if (node + 1 < hi) {
+                construir(nivell, punts, node + 1, hi);
+            }
+        }
+    }
+
+    /** @brief Seleccionar
+     @pre lo <= k < hi
+     @post punts[k] és el punt que aniria a la posició k si punts[lo..hi) s'ordenés per valors; els de davant no tenen
+     un valor més gran i els de darrere no el tenen més petit
+     */
+    private static void seleccionar(double[] valors, int[] punts, int lo, int hi, int k) {
+        hi--;
+        while (lo < hi) {
+            double pivot = valors[punts[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (valors[punts[i]] < pivot) {
+                    i++;
+                }
+                while (valors[punts[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int p = punts[i];
+                    punts[i] = punts[j];
+                    punts[j] = p;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            }
+            else if (k >= i) {
+                lo = i;
+            }
+            else {
+                return;
+            }
+        }
+    }
+
+    /** @class Cerca
+     @brief Recorregut dels punts de l'índex per distància a unes coordenades
+     */
+    private class Cerca implements PrimitiveIterator.OfInt {
+
+        private final Coordenades _c;
+        private final double _qx, _qy, _qz; //vector unitari de _c
+        private final PriorityQueue<Candidat> _cua;
+
+        /** @brief Crea una Cerca
+         @pre ---
+         @post Crea un recorregut des de c amb l'arrel de cada arbre a la cua
+         */
+        Cerca(Coordenades c) {
+            _c = c;
+            _qx = c.getX();
+            _qy = c.getY();
+            _qz = c.getZ();
+            _cua = new PriorityQueue<>();
+            for (int nivell = 0; nivell < MAX_NIVELLS; nivell++) {
+                if (_arbres[nivell] != null) {
+                    afegirCaixa(nivell, 0, _arbres[nivell].length);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            obrirCaixes();
+            return !_cua.isEmpty();
+        }
+
+        @Override
+        public int nextInt() {
+            obrirCaixes();
+            if (_cua.isEmpty()) {
+                throw new NoSuchElementException("No queden punts");
+            }
+            return _cua.poll()._punt;
+        }
+
+        /** @brief Obrir caixes
+         @pre ---
+         @post La cua és buida o el seu primer candidat és un punt
+         */
+        private void obrirCaixes() {
+            while (!_cua.isEmpty() && _cua.peek()._punt < 0) {
+                Candidat caixa = _cua.poll();
+                int node = (caixa._lo + caixa._hi) >>> 1;
+                int p = _arbres[caixa._nivell][node];
+                _cua.add(new Candidat(_c.distancia(_coordenades[p]), p, 0, 0, 0));
+                if (caixa._lo < node) {
+                    afegirCaixa(caixa._nivell, caixa._lo, node);
+                }
+                if (node + 1 < caixa._hi) {
+                    afegirCaixa(caixa._nivell, node + 1, caixa._hi);
+                }
+            }
+        }
+
+        /** @brief Afegir caixa
+         @pre lo < hi
+         @post El subarbre [lo, hi) del nivell nivell és a la cua, amb una fita inferior de la distància dels seus punts
+         */
+        private void afegirCaixa(int nivell, int lo, int hi) {
+            int node = (lo + hi) >>> 1;
+            double[] minims = _minims[nivell];
+            double[] maxims = _maxims[nivell];
+            double dx = Math.max(0, Math.max(minims[3 * node] - _qx, _qx - maxims[3 * node]));
+            double dy = Math.max(0, Math.max(minims[3 * node + 1] - _qy, _qy - maxims[3 * node + 1]));
+            double dz = Math.max(0, Math.max(minims[3 * node + 2] - _qz, _qz - maxims[3 * node + 2]));
+            double corda = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double fita = 2 * Coordenades.RADI_TERRA * Math.asin(Math.min(1, corda / 2)) - MARGE;
+            _cua.add(new Candidat(fita, -1, nivell, lo, hi));
+        }
+    }
+
+    /** @class Candidat
+     @brief Punt o caixa pendent d'una Cerca
+     */
+    private class Candidat implements Comparable<Candidat> {
+
+        private final double _clau; //distància del punt, o fita inferior de la caixa
+        private final int _punt; //número del punt, o -1 si és una caixa
+        private final int _nivell;
+        private final int _lo;
+        private final int _hi;
+
+        Candidat(double clau, int punt, int nivell, int lo, int hi) {
+            _clau = clau;
+            _punt = punt;
+            _nivell = nivell;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        public int compareTo(Candidat altre) {
+            int comparacio = Double.compare(_clau, altre._clau);
+            if (comparacio != 0) {
+                return comparacio;
+            }
+            //amb la mateixa clau, les caixes s'obren abans de treure cap punt
+            if (_punt < 0 || altre._punt < 0) {
+                return Integer.compare(_punt, altre._punt);
+            }
+            return _ids[_punt].compareTo(_ids[altre._punt]);
+        }
+    }
+}
@@ -0,0 +1,593 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/** @file IndexXarxa.java
+ @brief Classe IndexXarxa
+ */
+
+/** @class IndexXarxa
+ @brief Índex compacte (CSR) dels nodes i canonades d'una Xarxa
+
+ Cada node té un identificador enter dens (0, 1, 2...) en l'ordre en què s'afegeix, i cada canonada també.
+ Les canonades que surten i entren de cada node es guarden en format CSR: les canonades que surten del node v
+ són sortides()[iniciSortides()[v]] ... sortides()[iniciSortides()[v+1] - 1], en l'ordre en què s'han connectat.
+ Les taules CSR es reconstrueixen, en temps lineal, la primera vegada que es consulten després d'afegir canonades.
+ Les canonades que surten i entren de cada node també formen llistes encadenades, en el mateix ordre, que s'allarguen
+ en temps constant en afegir cada canonada: la memòria de cabals i els recorreguts les fan servir, de manera que
+ connectar una canonada i tornar a calcular els cabals no obliga a reconstruir les taules CSR de tota la xarxa.
+ La canonada que va d'un node a un altre es troba en temps constant amb una taula de dispersió d'adreçament obert.
+ Les components connexes, si tenen cicles i els orígens que alimenten cada node es mantenen a mesura que s'afegeixen
+ canonades.
+ Els nodes i les canonades només s'afegeixen al final de les taules, i les taules CSR es tornen a crear de nou en
+ reconstruir-les: una InstantaniaXarxa pot continuar llegint les que tenia encara que l'índex creixi.
+ */
+
+public class IndexXarxa {
+
+    public static final byte ORIGEN = 0;
+    public static final byte CONNEXIO = 1;
+    public static final byte TERMINAL = 2;
+
+    private static final int MIDA_INICIAL = 16;
+    private static final long BUIDA = -1L;
+    private static final int LIMIT_REORDENAR = 1024; //nodes que sempre es poden recórrer per refer l'ordre topològic
+    private static final int FRACCIO_REORDENAR = 4; //a partir d'aquí, fracció de la component que es pot recórrer
+
+    //Atributs
+    private final Map<String, Integer> _ids; //identificador de node --> enter dens (es pot consultar des d'altres fils)
+    private NodeAixeta[] _nodes;
+    private byte[] _tipus;
+    private int _nNodes;
+
+    private Canonada[] _canonades;
+    private int[] _origen; //node d'on surt cada canonada
+    private int[] _desti; //node on arriba cada canonada
+    private float[] _capacitat;
+    private int _nCanonades;
+
+    private int[] _iniciSortides;
+    private int[] _sortides;
+    private int[] _iniciEntrades;
+    private int[] _entrades;
+    private boolean _csrValid;
+
+    private int[] _primeraSortida; //primera canonada que surt de cada node, o -1
+    private int[] _darreraSortida; //darrera canonada que surt de cada node, o -1
+    private int[] _seguentSortida; //següent canonada que surt del mateix node, o -1
+    private int[] _primeraEntrada; //primera canonada que entra a cada node, o -1
+    private int[] _darreraEntrada; //darrera canonada que entra a cada node, o -1
+    private int[] _seguentEntrada; //següent canonada que entra al mateix node, o -1
+
+    private long[] _clausCanonada; //parells (node d'origen, node de destí) de la taula de dispersió, o BUIDA
+    private int[] _idsCanonada; //canonada de cada parell de la taula de dispersió
+
+    private final ComponentsConnexes _components;
+    private ComponentXarxa[] _vistes; //vista de cada component ja creada, guardada al seu representant
+    private final OrdreTopologic _ordre; //ordre topològic de les components sense cicles
+    private final OrigensAlimentadors _alimentadors; //orígens que alimenten cada node
+
+    /** @brief Crea un IndexXarxa
+     @pre ---
+     @post Crea un índex sense nodes ni canonades
+     */
+    public IndexXarxa() {
+        this(MIDA_INICIAL, MIDA_INICIAL);
+    }
+
+    /** @brief Crea un IndexXarxa amb espai reservat
+     @pre nNodes, nCanonades >= 0
+     @post Crea un índex sense nodes ni canonades, on es poden afegir nNodes nodes i nCanonades canonades sense que
+     hagi de créixer cap taula, ni la dels identificadors
+     */
+    public IndexXarxa(int nNodes, int nCanonades) {
+        int midaNodes = Math.max(nNodes, MIDA_INICIAL);
+        int midaCanonades = Math.max(nCanonades, MIDA_INICIAL);
+        _ids = new ConcurrentHashMap<>(midaNodes);
+        _nodes = new NodeAixeta[midaNodes];
+        _tipus = new byte[midaNodes];
+        _canonades = new Canonada[midaCanonades];
+        _origen = new int[midaCanonades];
+        _desti = new int[midaCanonades];
+        _capacitat = new float[midaCanonades];
+        _csrValid = false;
+        _primeraSortida = new int[midaNodes];
+        _darreraSortida = new int[midaNodes];
+        _primeraEntrada = new int[midaNodes];
+        _darreraEntrada = new int[midaNodes];
+        _seguentSortida = new int[midaCanonades];
+        _seguentEntrada = new int[midaCanonades];
+        //la mida de la taula de dispersió ha de ser una potència de 2
+        _clausCanonada = new long[Integer.highestOneBit(2 * midaCanonades - 1) << 1];
+        Arrays.fill(_clausCanonada, BUIDA);
+        _idsCanonada = new int[_clausCanonada.length];
+        _components = new ComponentsConnexes();
+        _vistes = new ComponentXarxa[midaNodes];
+        _ordre = new OrdreTopologic();
+        _alimentadors = new OrigensAlimentadors();
+    }
+
+    /** @brief Tipus d'un node
+     @pre ---
+     @post Retorna ORIGEN, CONNEXIO o TERMINAL segons la classe de node
+     */
+    public static byte tipus(NodeAixeta node) {
+        if (node instanceof Origen) {
+            return ORIGEN;
+        }
+        else if (node instanceof Terminal) {
+            return TERMINAL;
+        }
+        return CONNEXIO;
+    }
+
+    /** @brief Afegir node
+     @pre No hi ha cap node amb el mateix identificador que node
+     @post S'ha afegit node a l'índex i es retorna el seu identificador enter
+     */
+    public int afegirNode(NodeAixeta node) {
+        if (_nNodes == _nodes.length) {
+            creixerNodes(_nNodes * 2);
+        }
+
+        int v = _nNodes++;
+        _nodes[v] = node;
+        _tipus[v] = tipus(node);
+        _primeraSortida[v] = -1;
+        _darreraSortida[v] = -1;
+        _primeraEntrada[v] = -1;
+        _darreraEntrada[v] = -1;
+        _ids.put(node.id(), v);
+        _components.afegirNode();
+        _ordre.afegirNode();
+        _alimentadors.afegirNode(_tipus[v] == ORIGEN);
+        _csrValid = false;
+
+        return v;
+    }
+
+    /** @brief Reservar
+     @pre nNodes, nCanonades >= 0
+     @post Les taules tenen espai per nNodes nodes i nCanonades canonades més sense haver de créixer
+     */
+    public void reservar(int nNodes, int nCanonades) {
+        int midaNodes = _nNodes + nNodes;
+        if (midaNodes > _nodes.length) {
+            creixerNodes(midaNodes);
+        }
+
+        int midaCanonades = _nCanonades + nCanonades;
+        if (midaCanonades > _canonades.length) {
+            creixerCanonades(midaCanonades);
+        }
+        if (2 * (long) midaCanonades > _clausCanonada.length) {
+            //la mida de la taula de dispersió ha de ser una potència de 2
+            _clausCanonada = new long[Integer.highestOneBit(2 * midaCanonades - 1) << 1];
+            Arrays.fill(_clausCanonada, BUIDA);
+            _idsCanonada = new int[_clausCanonada.length];
+            for (int e = 0; e < _nCanonades; e++) {
+                guardarCanonada(e);
+            }
+        }
+    }
+
+    /** @brief Substituir node
+     @pre v pertany a l'índex i node té el mateix identificador que el node v
+     @post El node v passa a ser node (per exemple, quan un origen passa a ser una connexió)
+     */
+    public void substituirNode(int v, NodeAixeta node) {
+        _nodes[v] = node;
+        _tipus[v] = tipus(node);
+        if (_tipus[v] != ORIGEN) {
+            _alimentadors.deixarDeSerOrigen(v);
+        }
+    }
+
+    /** @brief Afegir canonada
+     @pre v1 i v2 pertanyen a l'índex
+     @post S'ha afegit la canonada de v1 a v2 i es retorna el seu identificador enter
+     */
+    public int afegirCanonada(int v1, int v2, Canonada canonada) {
+        if (_nCanonades == _canonades.length) {
+            creixerCanonades(_nCanonades * 2);
+        }
+
+        int e = _nCanonades++;
+        _canonades[e] = canonada;
+        _origen[e] = v1;
+        _desti[e] = v2;
+        _capacitat[e] = canonada.capacitat();
+        _csrValid = false;
+        enllaçar(e, v1, v2);
+        if (2 * _nCanonades > _clausCanonada.length) {
+            redimensionarDispersio();
+        }
+        else {
+            guardarCanonada(e);
+        }
+
+        //les vistes de les components que s'uneixen (o de la component que guanya una canonada) deixen de ser vàlides
+        _vistes[_components.representant(v1)] = null;
+        _vistes[_components.representant(v2)] = null;
+        boolean ambCicles = _components.teCicles(v1) || _components.teCicles(v2);
+        boolean ordrePendent = _components.ordrePendent(v1) || _components.ordrePendent(v2);
+        _components.unir(v1, v2);
+        //un cop una component té cicles ja no cal mantenir-ne l'ordre, i si està pendent ja s'ordenarà tota de cop
+        if (ordrePendent && !ambCicles) {
+            _ordre.afegirCanonadaSenseOrdenar(v1, v2);
+        }
+        else if (!ambCicles) {
+            int limit = Math.max(LIMIT_REORDENAR, _components.mida(v1) / FRACCIO_REORDENAR);
+            int resultat = _ordre.afegirCanonada(v1, v2, limit);
+            if (resultat == OrdreTopologic.CICLE) {
+                _components.marcarCicle(v1);
+            }
+            else if (resultat == OrdreTopologic.PENDENT) {
+                _components.marcarOrdrePendent(v1, true);
+            }
+        }
+        _alimentadors.afegirCanonada(v1, v2);
+
+        return e;
+    }
+
+    /** @brief Identificador enter
+     @pre ---
+     @post Retorna l'identificador enter del node amb identificador id, o -1 si no hi és
+     */
+    public int id(String id) {
+        Integer v = _ids.get(id);
+        return (v != null) ? v : -1;
+    }
+
+    /** @brief Identificador enter d'una canonada
+     @pre ---
+     @post Retorna l'identificador enter de la canonada que va del node v1 al node v2, o -1 si no n'hi ha cap
+     */
+    public int idCanonada(int v1, int v2) {
+        //es fa sobre les taules agafades al principi, i com a molt una volta, perquè es pot cridar dins d'una lectura
+        //optimista mentre un altre fil redimensiona la taula de dispersió
+        long[] claus = _clausCanonada;
+        int[] ids = _idsCanonada;
+        long clau = clau(v1, v2);
+        int mascara = claus.length - 1;
+        int i = dispersio(clau) & mascara;
+        for (int n = 0; n < claus.length && claus[i] != BUIDA; n++) {
+            if (claus[i] == clau) {
+                return (i < ids.length) ? ids[i] : -1;
+            }
+            i = (i + 1) & mascara;
+        }
+        return -1;
+    }
+
+    /** @brief Nombre de nodes
+     @pre ---
+     @post Retorna el nombre de nodes de l'índex
+     */
+    public int nombreNodes() {
+        return _nNodes;
+    }
+
+    /** @brief Nombre de canonades
+     @pre ---
+     @post Retorna el nombre de canonades de l'índex
+     */
+    public int nombreCanonades() {
+        return _nCanonades;
+    }
+
+    /** @brief Node
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el node v
+     */
+    public NodeAixeta node(int v) {
+        return _nodes[v];
+    }
+
+    /** @brief Tipus
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el tipus del node v (ORIGEN, CONNEXIO o TERMINAL)
+     */
+    public byte tipus(int v) {
+        return _tipus[v];
+    }
+
+    /** @brief Canonada
+     @pre 0 <= e < nombreCanonades()
+     @post Retorna la canonada e
+     */
+    public Canonada canonada(int e) {
+        return _canonades[e];
+    }
+
+    /** @brief Canonades
+     @pre ---
+     @post Retorna la taula amb cada canonada (no s'ha de modificar)
+     */
+    public Canonada[] canonades() {
+        return _canonades;
+    }
+
+    /** @brief Origens de les canonades
+     @pre ---
+     @post Retorna la taula amb el node d'on surt cada canonada (no s'ha de modificar)
+     */
+    public int[] origens() {
+        return _origen;
+    }
+
+    /** @brief Destins de les canonades
+     @pre ---
+     @post Retorna la taula amb el node on arriba cada canonada (no s'ha de modificar)
+     */
+    public int[] destins() {
+        return _desti;
+    }
+
+    /** @brief Capacitats de les canonades
+     @pre ---
+     @post Retorna la taula amb la capacitat de cada canonada (no s'ha de modificar)
+     */
+    public float[] capacitats() {
+        return _capacitat;
+    }
+
+    /** @brief Primeres sortides
+     @pre ---
+     @post Retorna la taula amb la primera canonada que surt de cada node, o -1 (no s'ha de modificar)
+     */
+    public int[] primeresSortides() {
+        return _primeraSortida;
+    }
+
+    /** @brief Següents sortides
+     @pre ---
+     @post Retorna la taula amb la canonada que surt del mateix node després de cada canonada, en l'ordre en què s'han
+     connectat, o -1 (no s'ha de modificar)
+     */
+    public int[] seguentsSortides() {
+        return _seguentSortida;
+    }
+
+    /** @brief Primeres entrades
+     @pre ---
+     @post Retorna la taula amb la primera canonada que entra a cada node, o -1 (no s'ha de modificar)
+     */
+    public int[] primeresEntrades() {
+        return _primeraEntrada;
+    }
+
+    /** @brief Següents entrades
+     @pre ---
+     @post Retorna la taula amb la canonada que entra al mateix node després de cada canonada, en l'ordre en què s'han
+     connectat, o -1 (no s'ha de modificar)
+     */
+    public int[] seguentsEntrades() {
+        return _seguentEntrada;
+    }
+
+    /** @brief Inici de les sortides
+     @pre ---
+     @post Retorna la taula CSR de posicions on comencen les sortides de cada node (no s'ha de modificar)
+     */
+    public int[] iniciSortides() {
+        construirCSR();
+        return _iniciSortides;
+    }
+
+    /** @brief Sortides
+     @pre ---
+     @post Retorna la taula CSR amb les canonades que surten de cada node (no s'ha de modificar)
+     */
+    public int[] sortides() {
+        construirCSR();
+        return _sortides;
+    }
+
+    /** @brief Inici de les entrades
+     @pre ---
+     @post Retorna la taula CSR de posicions on comencen les entrades de cada node (no s'ha de modificar)
+     */
+    public int[] iniciEntrades() {
+        construirCSR();
+        return _iniciEntrades;
+    }
+
+    /** @brief Entrades
+     @pre ---
+     @post Retorna la taula CSR amb les canonades que entren a cada node (no s'ha de modificar)
+     */
+    public int[] entrades() {
+        construirCSR();
+        return _entrades;
+    }
+
+    /** @brief Component connexa
+     @pre 0 <= v < nombreNodes()
+     @post Retorna la vista de la component connexa de v (seguint les canonades en els dos sentits)
+     */
+    public ComponentXarxa component(int v) {
+        int r = _components.representant(v);
+        if (_vistes[r] == null) {
+            _vistes[r] = new ComponentXarxa(this, _components.membres(r));
+        }
+        return _vistes[r];
+    }
+
+    /** @brief Següents membres de les components
+     @pre ---
+     @post Retorna la taula amb el següent membre de la component connexa de cada node, o -1, en l'ordre de
+     component() (no s'ha de modificar)
+     */
+    public int[] seguentsMembres() {
+        return _components.seguents();
+    }
+
+    /** @brief Mateixa component
+     @pre 0 <= v1, v2 < nombreNodes()
+     @post Diu si v1 i v2 pertanyen a la mateixa component connexa
+     */
+    public boolean mateixaComponent(int v1, int v2) {
+        return _components.representant(v1) == _components.representant(v2);
+    }
+
+    /** @brief Té cicles
+     @pre 0 <= v < nombreNodes()
+     @post Diu si la component connexa de v té cicles. Si el seu ordre topològic estava pendent, abans s'ordena tota
+     la component
+     */
+    public boolean teCicles(int v) {
+        if (!_components.teCicles(v) && _components.ordrePendent(v)) {
+            if (!_ordre.ordenarComponent(_components.membres(v))) {
+                _components.marcarCicle(v);
+            }
+            _components.marcarOrdrePendent(v, false);
+        }
+        return _components.teCicles(v);
+    }
+
+    /** @brief Nombre d'alimentadors
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el nombre d'orígens que alimenten v
+     */
+    public int nombreAlimentadors(int v) {
+        return _alimentadors.nombre(v);
+    }
+
+    /** @brief Alimentador
+     @pre 0 <= i < nombreAlimentadors(v)
+     @post Retorna l'i-èsim origen que alimenta v, en l'ordre en què hi ha arribat
+     */
+    public int alimentador(int v, int i) {
+        return _alimentadors.alimentador(v, i);
+    }
+
+    /** @brief Clau d'una canonada
+     @pre v1, v2 >= 0
+     @post Retorna la clau de la taula de dispersió de la canonada que va de v1 a v2
+     */
+    private static long clau(int v1, int v2) {
+        return ((long) v1 << 32) | v2;
+    }
+
+    /** @brief Dispersió
+     @pre ---
+     @post Retorna el valor de dispersió de clau
+     */
+    private static int dispersio(long clau) {
+        long h = clau * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** @brief Créixer les taules dels nodes
+     @pre mida >= nombreNodes()
+     @post Les taules dels nodes tenen mida caselles
+     */
+    private void creixerNodes(int mida) {
+        _nodes = Arrays.copyOf(_nodes, mida);
+        _tipus = Arrays.copyOf(_tipus, mida);
+        _vistes = Arrays.copyOf(_vistes, mida);
+        _primeraSortida = Arrays.copyOf(_primeraSortida, mida);
+        _darreraSortida = Arrays.copyOf(_darreraSortida, mida);
+        _primeraEntrada = Arrays.copyOf(_primeraEntrada, mida);
+        _darreraEntrada = Arrays.copyOf(_darreraEntrada, mida);
+    }
+
+    /** @brief Créixer les taules de les canonades
+     @pre mida >= nombreCanonades()
+     @post Les taules de les canonades tenen mida caselles
+     */
+    private void creixerCanonades(int mida) {
+        _canonades = Arrays.copyOf(_canonades, mida);
+        _origen = Arrays.copyOf(_origen, mida);
+        _desti = Arrays.copyOf(_desti, mida);
+        _capacitat = Arrays.copyOf(_capacitat, mida);
+        _seguentSortida = Arrays.copyOf(_seguentSortida, mida);
+        _seguentEntrada = Arrays.copyOf(_seguentEntrada, mida);
+    }
+
+    /** @brief Enllaçar canonada
+     @pre e és la darrera canonada afegida, de v1 a v2
+     @post e és al final de la llista de sortides de v1 i de la d'entrades de v2
+     */
+    private void enllaçar(int e, int v1, int v2) {
+        _seguentSortida[e] = -1;
+        if (_darreraSortida[v1] < 0) {
+            _primeraSortida[v1] = e;
+        }
+        else {
+            _seguentSortida[_darreraSortida[v1]] = e;
+        }
+        _darreraSortida[v1] = e;
+
+        _seguentEntrada[e] = -1;
+        if (_darreraEntrada[v2] < 0) {
+            _primeraEntrada[v2] = e;
+        }
+        else {
+            _seguentEntrada[_darreraEntrada[v2]] = e;
+        }
+        _darreraEntrada[v2] = e;
+    }
+
+    /** @brief Guardar canonada
+     @pre La taula de dispersió té alguna casella buida i no hi ha cap altra canonada entre els mateixos nodes
+     @post La canonada e és a la taula de dispersió
+     */
+    private void guardarCanonada(int e) {
+        long clau = clau(_origen[e], _desti[e]);
+        int mascara = _clausCanonada.length - 1;
+        int i = dispersio(clau) & mascara;
+        while (_clausCanonada[i] != BUIDA) {
+            i = (i + 1) & mascara;
+        }
+        _clausCanonada[i] = clau;
+        _idsCanonada[i] = e;
+    }
+
+    /** @brief Redimensionar dispersió
+     @pre ---
+     @post La taula de dispersió té el doble de caselles i hi són totes les canonades
+     */
+    private void redimensionarDispersio() {
+        _clausCanonada = new long[_clausCanonada.length * 2];
+        Arrays.fill(_clausCanonada, BUIDA);
+        _idsCanonada = new int[_clausCanonada.length];
+        for (int e = 0; e < _nCanonades; e++) {
+            guardarCanonada(e);
+        }
+    }
+
+    /** @brief Construir CSR
+     @pre ---
+     @post Les taules CSR corresponen als nodes i canonades actuals
+     */
+    private void construirCSR() {
+        if (_csrValid) {
+            return;
+        }
+
+        _iniciSortides = new int[_nNodes + 1];
+        _iniciEntrades = new int[_nNodes + 1];
+        for (int e = 0; e < _nCanonades; e++) {
+            _iniciSortides[_origen[e] + 1]++;
+            _iniciEntrades[_desti[e] + 1]++;
+        }
+        for (int v = 0; v < _nNodes; v++) {
+            _iniciSortides[v + 1] += _iniciSortides[v];
+            _iniciEntrades[v + 1] += _iniciEntrades[v];
+        }
+
+        //ordenació per recompte: dins de cada node les canonades queden en l'ordre en què s'han afegit
+        _sortides = new int[_nCanonades];
+        _entrades = new int[_nCanonades];
+        int[] posSortida = Arrays.copyOf(_iniciSortides, _nNodes);
+        int[] posEntrada = Arrays.copyOf(_iniciEntrades, _nNodes);
+        for (int e = 0; e < _nCanonades; e++) {
+            _sortides[posSortida[_origen[e]]++] = e;
+            _entrades[posEntrada[_desti[e]]++] = e;
+        }
+
+        _csrValid = true;
+    }
+}
@@ -0,0 +1,294 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/** @file InstantaniaXarxa.java
+ @brief Classe InstantaniaXarxa
+ */
+
+/** @class InstantaniaXarxa
+ @brief Estat d'una Xarxa en un moment donat (nodes, canonades, aixetes, demandes i cabals), de només lectura
+
+ No copia la xarxa: es queda les taules de l'IndexXarxa i una instantània de l'EstatNodes, que comparteixen les dades
+ amb la xarxa mentre no canvien. Els nodes i canonades que s'afegeixin després a la xarxa no hi són, i els canvis
+ d'aixetes, demandes i cabals no l'afecten. Les consultes no modifiquen res i es poden fer des de qualsevol fil,
+ també mentre es continua modificant la xarxa. L'avaluació de cada component es calcula el primer cop que es demana
+ i es reutilitza a les consultes següents.
+ */
+
+public class InstantaniaXarxa {
+
+    private static final int MIDA_INICIAL = 16;
+
+    //Atributs
+    private final IndexXarxa _index; //només per trobar els identificadors enters dels nodes
+    private final EstatNodes _estat;
+    private final int _nNodes;
+    private final int _nCanonades;
+    private final Canonada[] _canonades;
+    private final int[] _origens;
+    private final int[] _destins;
+    private final float[] _capacitats;
+    private final int[] _iniciSortides;
+    private final int[] _sortides;
+    private final int[] _iniciEntrades;
+    private final int[] _entrades;
+    private final int[] _seguentsMembres;
+    private final Map<Integer, AvaluacioCabals> _avaluacions; //avaluació de la component de cada node ja avaluat
+
+    /** @brief Crea una InstantaniaXarxa
+     @pre estat és una instantània de l'estat dels nodes de index
+     @post Crea la instantània dels nodes i canonades actuals de index amb l'estat estat
+     */
+    public InstantaniaXarxa(IndexXarxa index, EstatNodes estat) {
+        _index = index;
+        _estat = estat;
+        _nNodes = estat.nombreNodes();
+        _nCanonades = index.nombreCanonades();
+        _canonades = index.canonades();
+        _origens = index.origens();
+        _destins = index.destins();
+        _capacitats = index.capacitats();
+        _iniciSortides = index.iniciSortides();
+        _sortides = index.sortides();
+        _iniciEntrades = index.iniciEntrades();
+        _entrades = index.entrades();
+        _seguentsMembres = index.seguentsMembres();
+        _avaluacions = new ConcurrentHashMap<>();
+    }
+
+    /** @brief Identificador enter
+     @pre ---
+     @post Retorna l'identificador enter de node, o -1 si no pertanyia a la xarxa en el moment de la instantània
+     */
+    public int id(NodeAixeta node) {
+        int v = _index.id(node.id());
+        return (v < _nNodes) ? v : -1;
+    }
+
+    /** @brief Nombre de nodes
+     @pre ---
+     @post Retorna el nombre de nodes
+     */
+    public int nombreNodes() {
+        return _nNodes;
+    }
+
+    /** @brief Nombre de canonades
+     @pre ---
+     @post Retorna el nombre de canonades
+     */
+    public int nombreCanonades() {
+        return _nCanonades;
+    }
+
+    /** @brief Node
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el node v
+     */
+    public NodeAixeta node(int v) {
+        return _estat.node(v);
+    }
+
+    /** @brief Tipus
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el tipus del node v (IndexXarxa.ORIGEN, IndexXarxa.CONNEXIO o IndexXarxa.TERMINAL)
+     */
+    public byte tipus(int v) {
+        return _estat.tipus(v);
+    }
+
+    /** @brief Aixeta oberta
+     @pre 0 <= v < nombreNodes()
+     @post Diu si l'aixeta del node v estava oberta
+     */
+    public boolean aixetaOberta(int v) {
+        return _estat.aixetaOberta(v);
+    }
+
+    /** @brief Demanda actual
+     @pre 0 <= v < nombreNodes()
+     @post Retorna la demanda actual del node v si és un terminal, o 0 altrament
+     */
+    public float demandaActual(int v) {
+        return _estat.demanda(v);
+    }
+
+    /** @brief Cabal d'origen
+     @pre 0 <= v < nombreNodes()
+     @post Retorna el cabal que surt del node v si és un origen, o 0 altrament
+     */
+    public float cabalOrigen(int v) {
+        return _estat.cabal(v);
+    }
+
+    /** @brief Canonada
+     @pre 0 <= e < nombreCanonades()
+     @post Retorna la canonada e
+     */
+    public Canonada canonada(int e) {
+        return _canonades[e];
+    }
+
+    /** @brief Destins de les canonades
+     @pre ---
+     @post Retorna la taula amb el node on arriba cada canonada (no s'ha de modificar)
+     */
+    public int[] destins() {
+        return _destins;
+    }
+
+    /** @brief Capacitats de les canonades
+     @pre ---
+     @post Retorna la taula amb la capacitat de cada canonada (no s'ha de modificar)
+     */
+    public float[] capacitats() {
+        return _capacitats;
+    }
+
+    /** @brief Inici de les sortides
+     @pre ---
+     @post Retorna la taula CSR de posicions on comencen les sortides de cada node (no s'ha de modificar)
+     */
+    public int[] iniciSortides() {
+        return _iniciSortides;
+    }
+
+    /** @brief Sortides
+     @pre ---
+     @post Retorna la taula CSR amb les canonades que surten de cada node (no s'ha de modificar)
+     */
+    public int[] sortides() {
+        return _sortides;
+    }
+
+    /** @brief Inici de les entrades
+     @pre ---
+     @post Retorna la taula CSR de posicions on comencen les entrades de cada node (no s'ha de modificar)
+     */
+    public int[] iniciEntrades() {
+        return _iniciEntrades;
+    }
+
+    /** @brief Entrades
+     @pre ---
+     @post Retorna la taula CSR amb les canonades que entren a cada node (no s'ha de modificar)
+     */
+    public int[] entrades() {
+        return _entrades;
+    }
+
+    /** @brief Membres de la component
+     @pre 0 <= v < nombreNodes()
+     @post Retorna els nodes de la component connexa de v, en el mateix ordre que IndexXarxa.component() en el
+     moment de la instantània
+     */
+    public int[] membres(int v) {
+        //nodes de la component, seguint les canonades en els dos sentits; la posició de cada node a membres és la de
+        //visitats, amb taules de la mida de la component i no de tota la xarxa
+        NumeracioLocal visitats = new NumeracioLocal(MIDA_INICIAL);
+        int[] membres = new int[MIDA_INICIAL];
+        int nMembres = 0;
+        membres[nMembres++] = v;
+        visitats.afegir(v);
+        for (int i = 0; i < nMembres; i++) {
+            int m = membres[i];
+            for (int k = _iniciSortides[m]; k < _iniciSortides[m + 1]; k++) {
+                int w = _destins[_sortides[k]];
+                if (visitats.posicio(w) < 0) {
+                    visitats.afegir(w);
+                    membres = afegir(membres, nMembres++, w);
+                }
+            }
+            for (int k = _iniciEntrades[m]; k < _iniciEntrades[m + 1]; k++) {
+                int w = _origens[_entrades[k]];
+                if (visitats.posicio(w) < 0) {
+                    visitats.afegir(w);
+                    membres = afegir(membres, nMembres++, w);
+                }
+            }
+        }
+
+        //a la llista de membres de ComponentsConnexes els d'aquesta component són consecutius i els enllaços entre
+        //ells ja no canvien: el primer és l'únic que no és el següent de cap altre
+        boolean[] esSeguent = new boolean[nMembres];
+        for (int i = 0; i < nMembres; i++) {
+            int seguent = _seguentsMembres[membres[i]];
+            if (seguent >= 0 && seguent < _nNodes) {
+                int p = visitats.posicio(seguent);
+                if (p >= 0) {
+                    esSeguent[p] = true;
+                }
+            }
+        }
+        int primer = v;
+        for (int i = 0; i < nMembres; i++) {
+            if (!esSeguent[i]) {
+                primer = membres[i];
+            }
+        }
+
+        int[] ordenats = new int[nMembres];
+        ordenats[0] = primer;
+        for (int i = 1; i < nMembres; i++) {
+            ordenats[i] = _seguentsMembres[ordenats[i - 1]];
+        }
+        return ordenats;
+    }
+
+    /** @brief Avaluar cabals
+     @pre node pertanyia a la xarxa i la seva component connexa no té cicles
+     @post Retorna la demanda i el cabal teòrics de tots els nodes i canonades de la component connexa que conté node
+     en el moment de la instantània
+     @exception "NoSuchElementException" si node no pertanyia a la xarxa
+     IllegalArgumentException si la component té cicles
+     */
+    public AvaluacioCabals avaluarCabals(NodeAixeta node) {
+        int v = id(node);
+        if (v < 0) {
+            throw new NoSuchElementException("Aquest node no pertany a la xarxa");
+        }
+
+        AvaluacioCabals avaluacio = _avaluacions.get(v);
+        if (avaluacio == null) {
+            //si dos fils l'avaluen alhora es calcula dos cops, però totes dues avaluacions són iguals
+            int[] component = membres(v);
+            avaluacio = new AvaluacioCabals(this, component);
+            for (int m : component) {
+                _avaluacions.putIfAbsent(m, avaluacio);
+            }
+        }
+        return avaluacio;
+    }
+
+    /** @brief Cabal teòric
+     @pre node pertanyia a la xarxa i la seva component connexa no té cicles
+     @post Retorna el cabal teòric al node en el moment de la instantània
+     @exception "NoSuchElementException" si node no pertanyia a la xarxa
+     IllegalArgumentException si la component té cicles
+     */
+    public float cabal(NodeAixeta node) {
+        return avaluarCabals(node).cabal(node);
+    }
+
+    /** @brief Demanda teòrica
+     @pre node pertanyia a la xarxa i la seva component connexa no té cicles
+     @post Retorna la demanda teòrica al node en el moment de la instantània
+     @exception "NoSuchElementException" si node no pertanyia a la xarxa
+     IllegalArgumentException si la component té cicles
+     */
+    public float demanda(NodeAixeta node) {
+        return avaluarCabals(node).demanda(node);
+    }
+
+    /** @brief Afegir
+     @pre 0 <= n <= taula.length
+     @post Retorna taula, o una còpia més gran si no hi cabia, amb valor a la posició n
+     */
+    private static int[] afegir(int[] taula, int n, int valor) {
+        if (n == taula.length) {
+            taula = Arrays.copyOf(taula, n * 2);
+        }
+        taula[n] = valor;
+        return taula;
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/** @file LectorOrdres.java
+ @brief Classe LectorOrdres
+ */
+
+/** @class LectorOrdres
+ @brief Lector de línies d'un fitxer d'ordres, pensat per a fitxers molt grans
+
+ Llegeix el fitxer per blocs grans d'un FileChannel (o d'un altre canal, com el sòcol d'un client) i talla les
+ línies directament sobre els bytes, sense passar per un Reader. Les línies només d'ASCII (gairebé totes) es
+ converteixen a String sense descodificar; les altres es descodifiquen amb el joc de caràcters per defecte, com
+ FileReader. Les línies s'acaben igual que a BufferedReader.readLine(): amb \n, \r o \r\n.
+
+ També té la lectura dels números de les ordres sobre un tros d'una línia, sense crear cap String quan el número té
+ la forma habitual. Si no la té, es llegeix amb Float.parseFloat() o Integer.parseInt(), de manera que el resultat i
+ els errors són sempre els mateixos.
+ */
+
+public class LectorOrdres implements Closeable {
+
+    private static final int MIDA_BUFFER = 1 << 20;
+    private static final int MIDA_LINIA = 128;
+    private static final int MAX_MANTISSA = 1 << 24; //els enters fins aquí són exactes en float
+    private static final float[] POTENCIES_10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    //Atributs
+    private final ReadableByteChannel _canal;
+    private final ByteBuffer _buffer;
+    private final byte[] _bytes; //contingut de _buffer
+    private int _posicio; //primer byte de _bytes per llegir
+    private int _limit; //bytes vàlids de _bytes
+    private boolean _final; //s'ha arribat al final del fitxer
+    private boolean _saltarLF; //la línia anterior acabava en \r: si el següent és \n, és del mateix salt
+    private byte[] _linia; //tros de línia que continua al bloc següent
+    private int _nLinia;
+    private final Charset _charset;
+
+    /** @brief Crea un LectorOrdres
+     @pre ---
+     @post Crea un lector de les línies del fitxer fitxer
+     @exception "IOException" si no es pot obrir el fitxer
+     */
+    public LectorOrdres(String fitxer) throws IOException {
+        this(new FileInputStream(fitxer).getChannel()); //els mateixos errors que FileReader
+    }
+
+    /** @brief Crea un LectorOrdres d'un canal
+     @pre canal és bloquejant
+     @post Crea un lector de les línies que arriben per canal (un fitxer, un sòcol...), que es tanca amb el lector
+     */
+    public LectorOrdres(ReadableByteChannel canal) {
+        _canal = canal;
+        _buffer = ByteBuffer.allocate(MIDA_BUFFER);
+        _bytes = _buffer.array();
+        _linia = new byte[MIDA_LINIA];
+        _charset = Charset.defaultCharset();
+    }
+
+    /** @brief Llegir línia
+     @pre ---
+     @post Retorna la línia següent, sense el salt de línia, o null si ja no n'hi ha cap
+     @exception "IOException" si no es pot llegir el fitxer
+     */
+    public String llegirLinia() throws IOException {
+        _nLinia = 0;
+        boolean comencada = false;
+        while (true) {
+            if (_posicio == _limit && !omplir()) {
+                return comencada ? text(_linia, 0, _nLinia) : null;
+            }
+            if (_saltarLF) {
+                _saltarLF = false;
+                if (_bytes[_posicio] == '\n') {
+                    _posicio++;
+                    continue;
+                }
+            }
+
+            int inici = _posicio;
+            int i = inici;
+            while (i < _limit && _bytes[i] != '\n' && _bytes[i] != '\r') {
+                i++;
+            }
+            if (i < _limit) {
+                String linia;
+                if (!comencada) {
+                    linia = text(_bytes, inici, i - inici);
+                }
+                else {
+                    acumular(inici, i);
+                    linia = text(_linia, 0, _nLinia);
+                }
+                _saltarLF = _bytes[i] == '\r';
+                _posicio = i + 1;
+                return linia;
+            }
+
+            //la línia continua al bloc següent
+            acumular(inici, i);
+            comencada = comencada || i > inici;
+            _posicio = i;
+        }
+    }
+
+    /** @brief Tancar
+     @pre ---
+     @post S'ha tancat el fitxer
+     */
+    @Override
+    public void close() throws IOException {
+        _canal.close();
+    }
+
+    /** @brief Real
+     @pre ---
+     @post Retorna el mateix que Float.parseFloat(text)
+     @exception "NumberFormatException" si text no és un real
+     */
+    public static float real(String text) {
+        return (text == null) ? Float.parseFloat(text) : real(text, 0, text.length());
+    }
+
+    /** @brief Real d'un tros
+     @pre 0 <= inici <= fi <= text.length()
+     @post Retorna el mateix que Float.parseFloat(text.substring(inici, fi))
+     @exception "NumberFormatException" si el tros no és un real
+     */
+    public static float real(String text, int inici, int fi) {
+        //forma habitual: [signe] xifres [. xifres], amb com a molt 24 bits de mantissa i 10 decimals. La mantissa i
+        //la potència de 10 són exactes en float i la divisió arrodoneix correctament, com Float.parseFloat()
+        int i = inici;
+        boolean negatiu = false;
+        if (i < fi && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negatiu = text.charAt(i) == '-';
+            i++;
+        }
+        int mantissa = 0;
+        int xifres = 0;
+        int decimals = -1; //-1 fins que es troba el punt
+        for (; i < fi; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                xifres++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+                if (mantissa > MAX_MANTISSA || decimals >= POTENCIES_10.length) {
+                    break;
+                }
+            }
+            else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            }
+            else {
+                break;
+            }
+        }
+        if (i < fi || xifres == 0) {
+            return Float.parseFloat(text.substring(inici, fi));
+        }
+
+        float valor = (decimals > 0) ? mantissa / POTENCIES_10[decimals] : mantissa;
+        return negatiu ? -valor : valor;
+    }
+
+    /** @brief Enter d'un tros
+     @pre 0 <= inici <= fi <= text.length()
+     @post Retorna el mateix que Integer.parseInt(text.substring(inici, fi))
+     @exception "NumberFormatException" si el tros no és un enter
+     */
+    public static int enter(String text, int inici, int fi) {
+        //forma habitual: [-] fins a 9 xifres, que no es poden desbordar
+        int i = inici;
+        boolean negatiu = i < fi && text.charAt(i) == '-';
+        if (negatiu) {
+            i++;
+        }
+        if (i == fi || fi - i > 9) {
+            return Integer.parseInt(text.substring(inici, fi));
+        }
+        int valor = 0;
+        for (; i < fi; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Integer.parseInt(text.substring(inici, fi));
+            }
+            valor = valor * 10 + (c - '0');
+        }
+        return negatiu ? -valor : valor;
+    }
+
+    /** @brief Omplir
+     @pre Ja s'han llegit tots els bytes de _bytes
+     @post Es llegeix el bloc següent del fitxer i es retorna cert, o fals si ja no en queda cap
+     */
+    private boolean omplir() throws IOException {
+        if (_final) {
+            return false;
+        }
+        _buffer.clear();
+        int n;
+        do {
+            n = _canal.read(_buffer);
+        } while (n == 0);
+        if (n < 0) {
+            _final = true;
+            return false;
+        }
+        _posicio = 0;
+        _limit = n;
+        return true;
+    }
+
+    /** @brief Acumular
+     @pre _posicio <= inici <= fi <= _limit
+     @post Els bytes [inici, fi) de _bytes s'han afegit al tros de línia
+     */
+    private void acumular(int inici, int fi) {
+        int n = fi - inici;
+        if (_nLinia + n > _linia.length) {
+            _linia = Arrays.copyOf(_linia, Math.max(_linia.length * 2, _nLinia + n));
+        }
+        System.arraycopy(_bytes, inici, _linia, _nLinia, n);
+        _nLinia += n;
+    }
+
+    /** @brief Text
+     @pre 0 <= inici, 0 <= n, inici + n <= bytes.length
+     @post Retorna els n bytes de bytes a partir de inici com a String
+     */
+    private String text(byte[] bytes, int inici, int n) {
+        for (int i = inici; i < inici + n; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, inici, n, _charset);
+            }
+        }
+        return new String(bytes, inici, n, StandardCharsets.ISO_8859_1); //ASCII: cada byte és un caràcter
+    }
+}
@@ -0,0 +1,326 @@
+import java.util.*;
+import java.lang.invoke.*;
+
+/** @file MemoriaCabals.java
+ @brief Classe MemoriaCabals
+ */
+
+/** @class MemoriaCabals
+ @brief Memòria cau de les demandes i cabals teòrics de cada node d'una Xarxa
+
+ Guarda, per a cada node (indexat amb el seu identificador enter de l'IndexXarxa), la demanda teòrica, la suma de demandes de les
+ canonades que en surten, la suma de capacitats de les canonades que hi entren i el cabal teòric.
+ Per poder invalidar només els camins afectats per un canvi es mantenen aquestes invariants (i les invalidacions
+ segueixen les llistes de canonades de cada node de l'IndexXarxa, de manera que només recorren els nodes afectats,
+ sense reconstruir les taules CSR):
+ - Si la demanda d'un node no és vàlida, tampoc ho és la de cap dels seus ascendents.
+ - Si el cabal d'un node no és vàlid, tampoc ho és el de cap dels seus descendents.
+ - Si la demanda d'un node no és vàlida, tampoc ho és el seu cabal.
+
+ Els valors es guarden abans de marcar-los com a vàlids, i la marca es publica amb semàntica de llançament, de manera
+ que demandaGuardada(), cabalGuardat() i cabalCanonadaGuardat() es poden cridar des d'altres fils sense bloqueig
+ mentre un sol fil omple la memòria. Aquestes tres agafen les taules abans de llegir-les i no llencen cap excepció
+ encara que creixin mentrestant: retornen NaN si el valor no hi és o no s'ha pogut llegir.
+ */
+
+public class MemoriaCabals {
+
+    private static final int MIDA_INICIAL = 16;
+    private static final VarHandle VALID = MethodHandles.arrayElementVarHandle(boolean[].class);
+
+    //Atributs
+    private final IndexXarxa _index; //nodes i canonades de la xarxa
+    private float[] _demanda; //demanda teòrica de cada node
+    private float[] _demandaSortides; //suma de les demandes de les canonades que surten de cada node
+    private float[] _capacitatEntrades; //suma de les capacitats de les canonades que entren a cada node
+    private float[] _cabal; //cabal teòric de cada node
+    private boolean[] _demandaValida;
+    private boolean[] _cabalValid;
+    private int[] _pendentsDemanda; //pila de les invalidacions de demandes, que es reutilitza
+    private int[] _pendentsCabal; //pila de les invalidacions de cabals, que es reutilitza
+
+    /** @brief Crea una MemoriaCabals
+     @pre ---
+     @post Crea una memòria, sense cap valor guardat, pels nodes de index
+     */
+    public MemoriaCabals(IndexXarxa index) {
+        _index = index;
+        _demanda = new float[MIDA_INICIAL];
+        _demandaSortides = new float[MIDA_INICIAL];
+        _capacitatEntrades = new float[MIDA_INICIAL];
+        _cabal = new float[MIDA_INICIAL];
+        _demandaValida = new boolean[MIDA_INICIAL];
+        _cabalValid = new boolean[MIDA_INICIAL];
+        _pendentsDemanda = new int[MIDA_INICIAL];
+        _pendentsCabal = new int[MIDA_INICIAL];
+    }
+
+    /** @brief Afegir node
+     @pre index és l'identificador d'un node nou de l'índex
+     @post La memòria té espai pel node index, sense cap valor vàlid
+     */
+    public void afegirNode(int index) {
+        if (index >= _demanda.length) {
+            int mida = Math.max(_demanda.length * 2, index + 1);
+            _demanda = Arrays.copyOf(_demanda, mida);
+            _demandaSortides = Arrays.copyOf(_demandaSortides, mida);
+            _capacitatEntrades = Arrays.copyOf(_capacitatEntrades, mida);
+            _cabal = Arrays.copyOf(_cabal, mida);
+            _demandaValida = Arrays.copyOf(_demandaValida, mida);
+            _cabalValid = Arrays.copyOf(_cabalValid, mida);
+        }
+        _capacitatEntrades[index] = 0;
+        _demandaValida[index] = false;
+        _cabalValid[index] = false;
+    }
+
+    /** @brief Demanda vàlida
+     @pre index pertany a la memòria
+     @post Diu si la demanda del node index està guardada i és vàlida
+     */
+    public boolean demandaValida(int index) {
+        return _demandaValida[index];
+    }
+
+    /** @brief Demanda
+     @pre demandaValida(index)
+     @post Retorna la demanda teòrica del node index
+     */
+    public float demanda(int index) {
+        return _demanda[index];
+    }
+
+    /** @brief Demanda de les sortides
+     @pre demandaValida(index)
+     @post Retorna la suma de les demandes de les canonades que surten del node index
+     */
+    public float demandaSortides(int index) {
+        return _demandaSortides[index];
+    }
+
+    /** @brief Guardar demanda
+     @pre Les demandes de tots els descendents del node index són vàlides
+     @post La demanda del node index és demanda i la de les seves sortides és demandaSortides
+     */
+    public void guardarDemanda(int index, float demanda, float demandaSortides) {
+        _demanda[index] = demanda;
+        _demandaSortides[index] = demandaSortides;
+        VALID.setRelease(_demandaValida, index, true);
+    }
+
+    /** @brief Demanda guardada
+     @pre ---
+     @post Retorna la demanda teòrica del node index si està guardada i és vàlida, o NaN si no. Es pot cridar sense
+     bloqueig, dins d'una lectura optimista
+     */
+    public float demandaGuardada(int index) {
+        boolean[] valida = _demandaValida;
+        float[] demanda = _demanda;
+        if (index < 0 || index >= valida.length || index >= demanda.length
+                || !(boolean) VALID.getAcquire(valida, index)) {
+            return Float.NaN;
+        }
+        return demanda[index];
+    }
+
+    /** @brief Cabal vàlid
+     @pre index pertany a la memòria
+     @post Diu si el cabal del node index està guardat i és vàlid
+     */
+    public boolean cabalValid(int index) {
+        return _cabalValid[index];
+    }
+
+    /** @brief Cabal
+     @pre cabalValid(index)
+     @post Retorna el cabal teòric del node index
+     */
+    public float cabal(int index) {
+        return _cabal[index];
+    }
+
+    /** @brief Guardar cabal
+     @pre La demanda del node index i els cabals de tots els seus ascendents són vàlids
+     @post El cabal del node index és cabal
+     */
+    public void guardarCabal(int index, float cabal) {
+        _cabal[index] = cabal;
+        VALID.setRelease(_cabalValid, index, true);
+    }
+
+    /** @brief Cabal guardat
+     @pre ---
+     @post Retorna el cabal teòric del node index si està guardat i és vàlid, o NaN si no. Es pot cridar sense
+     bloqueig, dins d'una lectura optimista
+     */
+    public float cabalGuardat(int index) {
+        boolean[] valid = _cabalValid;
+        float[] cabal = _cabal;
+        if (index < 0 || index >= valid.length || index >= cabal.length || !(boolean) VALID.getAcquire(valid, index)) {
+            return Float.NaN;
+        }
+        return cabal[index];
+    }
+
+    /** @brief Cabal guardat d'una canonada
+     @pre ---
+     @post Retorna el cabal que circula per la canonada e si el cabal del node d'on surt està guardat i és vàlid, o NaN
+     si no. Es pot cridar sense bloqueig, dins d'una lectura optimista
+     */
+    public float cabalCanonadaGuardat(int e) {
+        int[] origens = _index.origens();
+        int[] destins = _index.destins();
+        float[] capacitats = _index.capacitats();
+        if (e < 0 || e >= origens.length || e >= destins.length || e >= capacitats.length) {
+            return Float.NaN;
+        }
+        int v1 = origens[e];
+        int v2 = destins[e];
+        //amb el cabal de v1 vàlid, també ho són la seva demanda i la de v2
+        float cabal = cabalGuardat(v1);
+        float[] demandaSortides = _demandaSortides;
+        float[] capacitatEntrades = _capacitatEntrades;
+        float[] demanda = _demanda;
+        if (Float.isNaN(cabal) || v1 >= demandaSortides.length || v2 < 0 || v2 >= capacitatEntrades.length
+                || v2 >= demanda.length) {
+            return Float.NaN;
+        }
+        return repartirCabal(repartirDemanda(capacitats[e], capacitatEntrades[v2], demanda[v2]),
+                demandaSortides[v1], cabal);
+    }
+
+    /** @brief Repartició de la demanda
+     @pre ---
+     @post Retorna la part de la demanda d'un node que ha de passar per una canonada de capacitat capacitat que hi
+     entra, si la suma de capacitats de les que hi entren és capacitatEntrades
+     */
+    public static float repartirDemanda(float capacitat, float capacitatEntrades, float demanda) {
+        float demandaCanonada = (capacitat / capacitatEntrades) * demanda;
+
+        return (demandaCanonada > capacitat) ? capacitat : demandaCanonada;
+    }
+
+    /** @brief Repartició del cabal
+     @pre ---
+     @post Retorna la part del cabal d'un node que circula per una canonada que en surt amb demanda demandaCanonada, si
+     la suma de demandes de les que en surten és demandaSortides
+     */
+    public static float repartirCabal(float demandaCanonada, float demandaSortides, float cabal) {
+        return (demandaCanonada / demandaSortides) * cabal;
+    }
+
+    /** @brief Demanda d'un node
+     @pre demandaSortides és la suma de les demandes de les canonades que surten del node
+     @post Retorna la demanda teòrica d'un node de tipus tipus (de l'IndexXarxa) amb demanda actual demandaActual, si
+     té l'aixeta oberta (oberta)
+     */
+    public static float demandaNode(boolean oberta, byte tipus, float demandaActual, float demandaSortides) {
+        if (!oberta) {
+            return 0;
+        }
+        else if (tipus == IndexXarxa.TERMINAL) {
+            return demandaActual;
+        }
+        return demandaSortides;
+    }
+
+    /** @brief Cabal d'un origen
+     @pre ---
+     @post Retorna el cabal teòric d'un origen que pot donar cabalOrigen i té demanda demanda
+     */
+    public static float cabalOrigen(float cabalOrigen, float demanda) {
+        return (cabalOrigen <= demanda) ? cabalOrigen : demanda;
+    }
+
+    /** @brief Capacitat de les entrades
+     @pre index pertany a la memòria
+     @post Retorna la suma de les capacitats de les canonades que entren al node index
+     */
+    public float capacitatEntrades(int index) {
+        return _capacitatEntrades[index];
+    }
+
+    /** @brief Canonada afegida
+     @pre e és una canonada nova de l'índex
+     @post S'han invalidat les demandes i cabals que depenen de la nova canonada
+     */
+    public void canonadaAfegida(int e) {
+        int desti = _index.destins()[e];
+        _capacitatEntrades[desti] += _index.capacitats()[e];
+
+        //La repartició de la demanda de desti canvia per a totes les canonades que hi entren. Si la demanda de desti
+        //no és vàlida, la dels nodes d'on surten aquestes canonades tampoc ho és.
+        if (_demandaValida[desti]) {
+            int[] seguents = _index.seguentsEntrades();
+            int[] origens = _index.origens();
+            for (int k = _index.primeresEntrades()[desti]; k >= 0; k = seguents[k]) {
+                invalidarDemanda(origens[k]);
+            }
+        }
+        invalidarDemanda(_index.origens()[e]);
+        invalidarCabal(desti);
+    }
+
+    /** @brief Invalidar demanda
+     @pre v pertany a l'índex
+     @post La demanda de v i la dels seus ascendents, i el cabal dels seus descendents, deixen de ser vàlids
+     */
+    public void invalidarDemanda(int v) {
+        // Si ja no era vàlida, els ascendents tampoc ho són
+        if (!_demandaValida[v]) {
+            return;
+        }
+
+        int[] primeres = _index.primeresEntrades();
+        int[] seguents = _index.seguentsEntrades();
+        int[] origens = _index.origens();
+        int cim = 0;
+        _pendentsDemanda[cim++] = v;
+        _demandaValida[v] = false;
+        while (cim > 0) {
+            int n = _pendentsDemanda[--cim];
+            invalidarCabal(n);
+            for (int e = primeres[n]; e >= 0; e = seguents[e]) {
+                int pare = origens[e];
+                if (_demandaValida[pare]) {
+                    _demandaValida[pare] = false;
+                    if (cim == _pendentsDemanda.length) {
+                        _pendentsDemanda = Arrays.copyOf(_pendentsDemanda, cim * 2);
+                    }
+                    _pendentsDemanda[cim++] = pare;
+                }
+            }
+        }
+    }
+
+    /** @brief Invalidar cabal
+     @pre v pertany a l'índex
+     @post El cabal de v i el dels seus descendents deixen de ser vàlids
+     */
+    public void invalidarCabal(int v) {
+        // Si ja no era vàlid, els descendents tampoc ho són
+        if (!_cabalValid[v]) {
+            return;
+        }
+
+        int[] primeres = _index.primeresSortides();
+        int[] seguents = _index.seguentsSortides();
+        int[] destins = _index.destins();
+        int cim = 0;
+        _pendentsCabal[cim++] = v;
+        _cabalValid[v] = false;
+        while (cim > 0) {
+            int n = _pendentsCabal[--cim];
+            for (int e = primeres[n]; e >= 0; e = seguents[e]) {
+                int fill = destins[e];
+                if (_cabalValid[fill]) {
+                    _cabalValid[fill] = false;
+                    if (cim == _pendentsCabal.length) {
+                        _pendentsCabal = Arrays.copyOf(_pendentsCabal, cim * 2);
+                    }
+                    _pendentsCabal[cim++] = fill;
+                }
+            }
+        }
+    }
+}
@@ -78,6 +78,6 @@ public class NodeAixeta {
      @post True si el node actual és més petit que el node passat per paràmetre  */
     public boolean idPetit(NodeAixeta node)
     {
-        return _id.compareTo(node.id()) == -1;
+        return _id.compareTo(node.id()) < 0;
     }
 }
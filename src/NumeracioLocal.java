@@ -0,0 +1,122 @@
+import java.util.*;
+
+/** @file NumeracioLocal.java
+ @brief Classe NumeracioLocal
+ */
+
+/** @class NumeracioLocal
+ @brief Numeració local (0, 1, 2...) d'una part dels identificadors enters de nodes o canonades d'una Xarxa
+
+ Cada identificador que s'hi afegeix rep la posició següent. Es guarda en una taula de dispersió d'adreçament obert de
+ mida proporcional als identificadors numerats, i no a tota la xarxa: numerar els nodes o les canonades d'una component
+ petita costa el mateix encara que la xarxa sigui molt gran. Si s'hi afegeixen més identificadors que la capacitat
+ inicial, la taula es dobla.
+ */
+
+public class NumeracioLocal {
+
+    private static final int BUIDA = -1;
+
+    //Atributs
+    private int[] _claus; //identificador de cada casella, o BUIDA
+    private int[] _posicions; //posició de l'identificador de cada casella
+    private int _mida;
+
+    /** @brief Crea una NumeracioLocal
+     @pre capacitat >= 0
+     @post Crea una numeració buida on es poden afegir capacitat identificadors sense ampliar-la
+     */
+    public NumeracioLocal(int capacitat) {
+        //la mida de la taula de dispersió ha de ser una potència de 2, com a mínim el doble de la capacitat
+        int mida = Integer.highestOneBit(Math.max(2 * capacitat - 1, 1)) << 1;
+        _claus = new int[mida];
+        Arrays.fill(_claus, BUIDA);
+        _posicions = new int[mida];
+        _mida = 0;
+    }
+
+    /** @brief Crea una NumeracioLocal a partir d'una taula
+     @pre ids[0..n) són identificadors no negatius diferents
+     @post Crea una numeració on ids[p] té la posició p, per p < n
+     */
+    public NumeracioLocal(int[] ids, int n) {
+        this(n);
+        for (int p = 0; p < n; p++) {
+            afegir(ids[p]);
+        }
+    }
+
+    /** @brief Afegir
+     @pre id >= 0 i no hi és
+     @post id té la posició mida() d'abans d'afegir-lo, que es retorna
+     */
+    public int afegir(int id) {
+        if (2 * (_mida + 1) > _claus.length) {
+            ampliar();
+        }
+        int mascara = _claus.length - 1;
+        int i = dispersio(id) & mascara;
+        while (_claus[i] != BUIDA) {
+            i = (i + 1) & mascara;
+        }
+        _claus[i] = id;
+        _posicions[i] = _mida;
+        return _mida++;
+    }
+
+    /** @brief Posició
+     @pre ---
+     @post Retorna la posició de id, o -1 si no s'hi ha afegit
+     */
+    public int posicio(int id) {
+        int mascara = _claus.length - 1;
+        int i = dispersio(id) & mascara;
+        while (_claus[i] != BUIDA) {
+            if (_claus[i] == id) {
+                return _posicions[i];
+            }
+            i = (i + 1) & mascara;
+        }
+        return -1;
+    }
+
+    /** @brief Mida
+     @pre ---
+     @post Retorna el nombre d'identificadors numerats
+     */
+    public int mida() {
+        return _mida;
+    }
+
+    /** @brief Ampliar
+     @pre ---
+     @post La taula de dispersió és el doble de gran i els identificadors conserven la seva posició
+     */
+    private void ampliar() {
+        int[] claus = _claus;
+        int[] posicions = _posicions;
+        _claus = new int[claus.length * 2];
+        Arrays.fill(_claus, BUIDA);
+        _posicions = new int[claus.length * 2];
+        int mascara = _claus.length - 1;
+        for (int j = 0; j < claus.length; j++) {
+            if (claus[j] != BUIDA) {
+                int i = dispersio(claus[j]) & mascara;
+                while (_claus[i] != BUIDA) {
+                    i = (i + 1) & mascara;
+                }
+                _claus[i] = claus[j];
+                _posicions[i] = posicions[j];
+            }
+        }
+    }
+
+    /** @brief Dispersió
+     @pre ---
+     @post Retorna el valor de dispersió de id
+     */
+    private static int dispersio(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.*;
+
+/** @file OrdreTopologic.java
+ @brief Classe OrdreTopologic
+ */
+
+/** @class OrdreTopologic
+ @brief Ordre topològic dels nodes d'una Xarxa mantingut a mesura que s'hi afegeixen canonades
+
+ Cada node té una posició i, mentre no es tanqui cap cicle, tota canonada va d'una posició més petita a una de més gran.
+ Quan una canonada nova trenca l'ordre només es recorren i es reordenen els nodes que hi ha entre les posicions dels
+ seus dos extrems (algorisme de Pearce i Kelly). Les canonades es guarden en llistes encadenades per identificador, de
+ manera que afegir-ne una és O(1) i no cal reconstruir les taules CSR de l'IndexXarxa.
+
+ Si la xarxa es construeix d'aigües avall cap amunt, cada canonada nova trenca l'ordre de tots els nodes que ja hi ha
+ i reordenar-los cada vegada seria quadràtic. Per això les cerques tenen un límit: quan el superen, la canonada
+ s'afegeix sense refer l'ordre i la component queda pendent d'ordenar. Una component pendent s'ordena de cop amb
+ l'algorisme de Kahn, en temps lineal, quan cal saber si té cicles.
+ */
+
+public class OrdreTopologic {
+
+    private static final int MIDA_INICIAL = 16;
+
+    public static final int ORDENADA = 0; //la canonada no tanca cap cicle i l'ordre s'ha refet
+    public static final int CICLE = 1; //la canonada tanca un cicle
+    public static final int PENDENT = 2; //l'ordre no s'ha refet perquè calia recórrer massa nodes
+
+    //Atributs
+    private int[] _posicio; //posició de cada node en l'ordre
+    private int[] _marca; //darrera cerca que ha visitat cada node
+    private int[] _grauEntrada; //canonades d'entrada encara no tractades de cada node, en ordenar una component
+    private int[] _primeraSortida; //primera canonada de la llista de sortides de cada node, o -1
+    private int[] _primeraEntrada; //primera canonada de la llista d'entrades de cada node, o -1
+    private int _nNodes;
+
+    private int[] _origen;
+    private int[] _desti;
+    private int[] _seguentSortida; //següent canonada de la llista de sortides del mateix node, o -1
+    private int[] _seguentEntrada; //següent canonada de la llista d'entrades del mateix node, o -1
+    private int _nCanonades;
+
+    private int _cerca; //número de la cerca actual
+    private int[] _pendents;
+    private long[] _avancats; //nodes accessibles des del destí de la canonada nova (posició, node)
+    private long[] _endarrerits; //nodes des dels quals s'arriba a l'origen de la canonada nova (posició, node)
+
+    /** @brief Crea un OrdreTopologic
+     @pre ---
+     @post Crea un ordre sense nodes ni canonades
+     */
+    public OrdreTopologic() {
+        _posicio = new int[MIDA_INICIAL];
+        _marca = new int[MIDA_INICIAL];
+        _grauEntrada = new int[MIDA_INICIAL];
+        _primeraSortida = new int[MIDA_INICIAL];
+        _primeraEntrada = new int[MIDA_INICIAL];
+        _origen = new int[MIDA_INICIAL];
+        _desti = new int[MIDA_INICIAL];
+        _seguentSortida = new int[MIDA_INICIAL];
+        _seguentEntrada = new int[MIDA_INICIAL];
+        _cerca = 0;
+        _pendents = new int[MIDA_INICIAL];
+        _avancats = new long[MIDA_INICIAL];
+        _endarrerits = new long[MIDA_INICIAL];
+    }
+
+    /** @brief Afegir node
+     @pre ---
+     @post S'ha afegit un node nou al final de l'ordre i es retorna el seu identificador
+     */
+    public int afegirNode() {
+        if (_nNodes == _posicio.length) {
+            int mida = _nNodes * 2;
+            _posicio = Arrays.copyOf(_posicio, mida);
+            _marca = Arrays.copyOf(_marca, mida);
+            _grauEntrada = Arrays.copyOf(_grauEntrada, mida);
+            _primeraSortida = Arrays.copyOf(_primeraSortida, mida);
+            _primeraEntrada = Arrays.copyOf(_primeraEntrada, mida);
+        }
+
+        int v = _nNodes++;
+        _posicio[v] = v;
+        _marca[v] = 0;
+        _primeraSortida[v] = -1;
+        _primeraEntrada[v] = -1;
+
+        return v;
+    }
+
+    /** @brief Posició
+     @pre 0 <= v < nombre de nodes
+     @post Retorna la posició del node v en l'ordre
+     */
+    public int posicio(int v) {
+        return _posicio[v];
+    }
+
+    /** @brief Afegir canonada
+     @pre 0 <= v1, v2 < nombre de nodes, limit >= 0 i, si v1 i v2 són de la mateixa component, aquesta no té cicles
+     ni està pendent d'ordenar
+     @post S'ha afegit la canonada de v1 a v2. Si tanca un cicle l'ordre no canvia i es retorna CICLE. Si per refer
+     l'ordre cal recórrer més de limit nodes, l'ordre tampoc no canvia i es retorna PENDENT. Altrament l'ordre s'ha
+     refet perquè v1 quedi abans de v2 i es retorna ORDENADA
+     */
+    public int afegirCanonada(int v1, int v2, int limit) {
+        enllaçar(v1, v2);
+
+        if (v1 == v2) {
+            return CICLE;
+        }
+
+        int limitInferior = _posicio[v2];
+        int limitSuperior = _posicio[v1];
+        if (limitSuperior < limitInferior) {
+            return ORDENADA; //l'ordre ja és correcte
+        }
+
+        _cerca++;
+        int nAvancats = cercaEndavant(v2, v1, limitSuperior, limit);
+        if (nAvancats == -1) {
+            return CICLE;
+        }
+        if (nAvancats < 0) {
+            return PENDENT;
+        }
+        int nEndarrerits = cercaEnrere(v1, limitInferior, limit - nAvancats);
+        if (nEndarrerits < 0) {
+            return PENDENT;
+        }
+
+        reordenar(nAvancats, nEndarrerits);
+
+        return ORDENADA;
+    }
+
+    /** @brief Afegir canonada sense ordenar
+     @pre 0 <= v1, v2 < nombre de nodes
+     @post S'ha afegit la canonada de v1 a v2 sense refer l'ordre
+     */
+    public void afegirCanonadaSenseOrdenar(int v1, int v2) {
+        enllaçar(v1, v2);
+    }
+
+    /** @brief Ordenar component
+     @pre membres són tots els nodes d'una component i totes les canonades de la component s'hi han afegit
+     @post Si la component no té cicles, les posicions que ocupaven els seus nodes s'han repartit en ordre topològic
+     (algorisme de Kahn) i es retorna true. Altrament l'ordre no canvia i es retorna false
+     */
+    public boolean ordenarComponent(int[] membres) {
+        int n = membres.length;
+        int[] posicions = new int[n];
+        int[] ordre = new int[n];
+        int fi = 0;
+
+        for (int i = 0; i < n; i++) {
+            int v = membres[i];
+            posicions[i] = _posicio[v];
+            int grau = 0;
+            for (int e = _primeraEntrada[v]; e != -1; e = _seguentEntrada[e]) {
+                grau++;
+            }
+            _grauEntrada[v] = grau;
+            if (grau == 0) {
+                ordre[fi++] = v;
+            }
+        }
+
+        for (int inici = 0; inici < fi; inici++) {
+            for (int e = _primeraSortida[ordre[inici]]; e != -1; e = _seguentSortida[e]) {
+                int w = _desti[e];
+                if (--_grauEntrada[w] == 0) {
+                    ordre[fi++] = w;
+                }
+            }
+        }
+
+        if (fi < n) {
+            return false;
+        }
+
+        Arrays.sort(posicions);
+        for (int i = 0; i < n; i++) {
+            _posicio[ordre[i]] = posicions[i];
+        }
+        return true;
+    }
+
+    /** @brief Enllaçar canonada
+     @pre 0 <= v1, v2 < nombre de nodes
+     @post La canonada de v1 a v2 és a les llistes de sortides de v1 i d'entrades de v2
+     */
+    private void enllaçar(int v1, int v2) {
+        if (_nCanonades == _origen.length) {
+            int mida = _nCanonades * 2;
+            _origen = Arrays.copyOf(_origen, mida);
+            _desti = Arrays.copyOf(_desti, mida);
+            _seguentSortida = Arrays.copyOf(_seguentSortida, mida);
+            _seguentEntrada = Arrays.copyOf(_seguentEntrada, mida);
+        }
+
+        int e = _nCanonades++;
+        _origen[e] = v1;
+        _desti[e] = v2;
+        _seguentSortida[e] = _primeraSortida[v1];
+        _primeraSortida[v1] = e;
+        _seguentEntrada[e] = _primeraEntrada[v2];
+        _primeraEntrada[v2] = e;
+    }
+
+    /** @brief Cerca endavant
+     @pre limitSuperior és la posició de final
+     @post Guarda a _avancats els nodes accessibles des d'inici amb posició menor que limitSuperior i en retorna el
+     nombre, o retorna -1 si des d'inici s'arriba a final, o -2 si n'hi ha més de limit
+     */
+    private int cercaEndavant(int inici, int fi, int limitSuperior, int limit) {
+        int n = 0;
+        int cim = 0;
+        _pendents[cim++] = inici;
+        _marca[inici] = _cerca;
+        while (cim > 0) {
+            int v = _pendents[--cim];
+            if (n == limit) {
+                return -2;
+            }
+            _avancats = afegir(_avancats, n++, v);
+            for (int e = _primeraSortida[v]; e != -1; e = _seguentSortida[e]) {
+                int w = _desti[e];
+                if (w == fi) {
+                    return -1;
+                }
+                if (_marca[w] != _cerca && _posicio[w] < limitSuperior) {
+                    _marca[w] = _cerca;
+                    cim = apilar(cim, w);
+                }
+            }
+        }
+        return n;
+    }
+
+    /** @brief Cerca enrere
+     @pre ---
+     @post Guarda a _endarrerits els nodes des dels quals s'arriba a inici amb posició major que limitInferior i en
+     retorna el nombre, o retorna -1 si n'hi ha més de limit
+     */
+    private int cercaEnrere(int inici, int limitInferior, int limit) {
+        int n = 0;
+        int cim = 0;
+        _pendents[cim++] = inici;
+        _marca[inici] = _cerca;
+        while (cim > 0) {
+            int v = _pendents[--cim];
+            if (n == limit) {
+                return -1;
+            }
+            _endarrerits = afegir(_endarrerits, n++, v);
+            for (int e = _primeraEntrada[v]; e != -1; e = _seguentEntrada[e]) {
+                int w = _origen[e];
+                if (_marca[w] != _cerca && _posicio[w] > limitInferior) {
+                    _marca[w] = _cerca;
+                    cim = apilar(cim, w);
+                }
+            }
+        }
+        return n;
+    }
+
+    /** @brief Reordenar
+     @pre _avancats i _endarrerits contenen els nodes trobats per les dues cerques
+     @post Les posicions que ocupaven aquests nodes s'han repartit posant primer els endarrerits i després els avançats,
+     cada grup en el seu ordre relatiu d'abans
+     */
+    private void reordenar(int nAvancats, int nEndarrerits) {
+        Arrays.sort(_avancats, 0, nAvancats);
+        Arrays.sort(_endarrerits, 0, nEndarrerits);
+
+        int total = nAvancats + nEndarrerits;
+        int[] posicions = new int[total];
+        for (int i = 0; i < nEndarrerits; i++) {
+            posicions[i] = (int) (_endarrerits[i] >>> 32);
+        }
+        for (int i = 0; i < nAvancats; i++) {
+            posicions[nEndarrerits + i] = (int) (_avancats[i] >>> 32);
+        }
+        Arrays.sort(posicions);
+
+        for (int i = 0; i < nEndarrerits; i++) {
+            _posicio[(int) _endarrerits[i]] = posicions[i];
+        }
+        for (int i = 0; i < nAvancats; i++) {
+            _posicio[(int) _avancats[i]] = posicions[nEndarrerits + i];
+        }
+    }
+
+    /** @brief Afegir node trobat
+     @pre 0 <= i
+     @post Guarda el node v, amb la seva posició, a la casella i de trobats i retorna la taula (ampliada si cal)
+     */
+    private long[] afegir(long[] trobats, int i, int v) {
+        if (i == trobats.length) {
+            trobats = Arrays.copyOf(trobats, i * 2);
+        }
+        trobats[i] = ((long) _posicio[v] << 32) | v;
+        return trobats;
+    }
+
+    /** @brief Apilar
+     @pre cim és el nombre de nodes pendents
+     @post Afegeix v als nodes pendents i retorna el nou cim
+     */
+    private int apilar(int cim, int v) {
+        if (cim == _pendents.length) {
+            _pendents = Arrays.copyOf(_pendents, cim * 2);
+        }
+        _pendents[cim] = v;
+        return cim + 1;
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.*;
+
+/** @file OrigensAlimentadors.java
+ @brief Classe OrigensAlimentadors
+ */
+
+/** @class OrigensAlimentadors
+ @brief Orígens que alimenten cada node d'una Xarxa, mantinguts a mesura que s'hi afegeixen canonades
+
+ Un origen alimenta un node si hi ha un camí de canonades, seguint el sentit de l'aigua, de l'origen al node. Quan
+ s'afegeix una canonada només es recorren els nodes que guanyen algun origen alimentador, i quan un origen passa a ser
+ una connexió només els que l'havien de perdre, de manera que consultar els alimentadors d'un node és O(1). Les
+ canonades es guarden en llistes encadenades per identificador, com a OrdreTopologic.
+ */
+
+public class OrigensAlimentadors {
+
+    private static final int MIDA_INICIAL = 16;
+    private static final int[] CAP = new int[0];
+
+    //Atributs
+    private boolean[] _esOrigen;
+    private int[][] _alimentadors; //orígens que alimenten cada node (les primeres _nAlimentadors[v] caselles)
+    private int[] _nAlimentadors;
+    private int[] _primeraSortida; //primera canonada de la llista de sortides de cada node, o -1
+    private int _nNodes;
+
+    private int[] _desti;
+    private int[] _seguentSortida; //següent canonada de la llista de sortides del mateix node, o -1
+    private int _nCanonades;
+
+    private int[] _pendents;
+
+    /** @brief Crea uns OrigensAlimentadors
+     @pre ---
+     @post Crea una taula sense nodes ni canonades
+     */
+    public OrigensAlimentadors() {
+        _esOrigen = new boolean[MIDA_INICIAL];
+        _alimentadors = new int[MIDA_INICIAL][];
+        _nAlimentadors = new int[MIDA_INICIAL];
+        _primeraSortida = new int[MIDA_INICIAL];
+        _desti = new int[MIDA_INICIAL];
+        _seguentSortida = new int[MIDA_INICIAL];
+        _pendents = new int[MIDA_INICIAL];
+    }
+
+    /** @brief Afegir node
+     @pre ---
+     @post S'ha afegit un node nou, sense cap alimentador, i es retorna el seu identificador
+     */
+    public int afegirNode(boolean esOrigen) {
+        if (_nNodes == _esOrigen.length) {
+            int mida = _nNodes * 2;
+            _esOrigen = Arrays.copyOf(_esOrigen, mida);
+            _alimentadors = Arrays.copyOf(_alimentadors, mida);
+            _nAlimentadors = Arrays.copyOf(_nAlimentadors, mida);
+            _primeraSortida = Arrays.copyOf(_primeraSortida, mida);
+        }
+
+        int v = _nNodes++;
+        _esOrigen[v] = esOrigen;
+        _alimentadors[v] = CAP;
+        _nAlimentadors[v] = 0;
+        _primeraSortida[v] = -1;
+
+        return v;
+    }
+
+    /** @brief Nombre d'alimentadors
+     @pre 0 <= v < nombre de nodes
+     @post Retorna el nombre d'orígens que alimenten v
+     */
+    public int nombre(int v) {
+        return _nAlimentadors[v];
+    }
+
+    /** @brief Alimentador
+     @pre 0 <= i < nombre(v)
+     @post Retorna l'i-èsim origen que alimenta v
+     */
+    public int alimentador(int v, int i) {
+        return _alimentadors[v][i];
+    }
+
+    /** @brief Deixar de ser origen
+     @pre 0 <= v < nombre de nodes
+     @post v ja no és un origen i ha deixat d'alimentar els nodes on arribava
+     */
+    public void deixarDeSerOrigen(int v) {
+        if (!_esOrigen[v]) {
+            return;
+        }
+        _esOrigen[v] = false;
+
+        //tots els nodes on arriba un origen el tenen com a alimentador: els que no el tenen ja s'han tractat
+        int cim = 0;
+        for (int e = _primeraSortida[v]; e != -1; e = _seguentSortida[e]) {
+            cim = apilar(cim, _desti[e]);
+        }
+        while (cim > 0) {
+            int w = _pendents[--cim];
+            if (treure(w, v)) {
+                for (int e = _primeraSortida[w]; e != -1; e = _seguentSortida[e]) {
+                    cim = apilar(cim, _desti[e]);
+                }
+            }
+        }
+    }
+
+    /** @brief Afegir canonada
+     @pre 0 <= v1, v2 < nombre de nodes
+     @post S'ha afegit la canonada de v1 a v2: els orígens que alimenten v1, i v1 si és un origen, alimenten v2 i tots
+     els nodes on arriba v2
+     */
+    public void afegirCanonada(int v1, int v2) {
+        if (_nCanonades == _desti.length) {
+            int mida = _nCanonades * 2;
+            _desti = Arrays.copyOf(_desti, mida);
+            _seguentSortida = Arrays.copyOf(_seguentSortida, mida);
+        }
+
+        int e = _nCanonades++;
+        _desti[e] = v2;
+        _seguentSortida[e] = _primeraSortida[v1];
+        _primeraSortida[v1] = e;
+
+        int[] nous = Arrays.copyOf(_alimentadors[v1], _nAlimentadors[v1] + 1);
+        int nNous = _nAlimentadors[v1];
+        if (_esOrigen[v1]) {
+            nous[nNous++] = v1;
+        }
+        for (int i = 0; i < nNous; i++) {
+            propagar(nous[i], v2);
+        }
+    }
+
+    /** @brief Propagar
+     @pre origen és un origen
+     @post origen alimenta v i tots els nodes on arriba v; només s'han recorregut els nodes que no el tenien
+     */
+    private void propagar(int origen, int v) {
+        int cim = apilar(0, v);
+        while (cim > 0) {
+            int w = _pendents[--cim];
+            if (afegir(w, origen)) {
+                for (int e = _primeraSortida[w]; e != -1; e = _seguentSortida[e]) {
+                    cim = apilar(cim, _desti[e]);
+                }
+            }
+        }
+    }
+
+    /** @brief Afegir alimentador
+     @pre ---
+     @post origen alimenta v, i es retorna si abans no l'alimentava
+     */
+    private boolean afegir(int v, int origen) {
+        int n = _nAlimentadors[v];
+        int[] alimentadors = _alimentadors[v];
+        for (int i = 0; i < n; i++) {
+            if (alimentadors[i] == origen) {
+                return false;
+            }
+        }
+        if (n == alimentadors.length) {
+            alimentadors = _alimentadors[v] = Arrays.copyOf(alimentadors, Math.max(1, n * 2));
+        }
+        alimentadors[n] = origen;
+        _nAlimentadors[v] = n + 1;
+        return true;
+    }
+
+    /** @brief Treure alimentador
+     @pre ---
+     @post origen no alimenta v, i es retorna si abans l'alimentava
+     */
+    private boolean treure(int v, int origen) {
+        int n = _nAlimentadors[v];
+        int[] alimentadors = _alimentadors[v];
+        for (int i = 0; i < n; i++) {
+            if (alimentadors[i] == origen) {
+                //es manté l'ordre en què s'han afegit els altres
+                System.arraycopy(alimentadors, i + 1, alimentadors, i, n - i - 1);
+                _nAlimentadors[v] = n - 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @brief Apilar
+     @pre cim és el nombre de nodes pendents
+     @post Afegeix v als nodes pendents i retorna el nou cim
+     */
+    private int apilar(int cim, int v) {
+        if (cim == _pendents.length) {
+            _pendents = Arrays.copyOf(_pendents, cim * 2);
+        }
+        _pendents[cim] = v;
+        return cim + 1;
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.*;
+
+/** @file RecorregutXarxa.java
+ @brief Classe RecorregutXarxa
+ */
+
+/** @class RecorregutXarxa
+ @brief Recorregut en profunditat, amb pila explícita, de les canonades d'una Xarxa
+
+ La pila guarda, per a cada node del camí actual, la següent canonada de la seva llista per recórrer, de manera que
+ la profunditat només queda limitada per la memòria. Segueix les llistes encadenades de l'IndexXarxa (en l'ordre en
+ què s'han connectat les canonades), i no les taules CSR, perquè un recorregut després de connectar una canonada no
+ les hagi de reconstruir. Les taules (pila i marques de visitat) es reutilitzen d'un recorregut a l'altre. Ús típic:
+
+     recorregut.recorrerSortides(v);
+     while (!recorregut.buit()) {
+         int e = recorregut.seguentCanonada();
+         if (e < 0) { ...tractar recorregut.actual()...; recorregut.pujar(); }
+         else if (!recorregut.visitat(recorregut.extrem(e))) recorregut.baixar(recorregut.extrem(e));
+     }
+
+ Un mateix recorregut no es pot fer servir per a dos recorreguts niats.
+ */
+
+public class RecorregutXarxa {
+
+    private static final int MIDA_INICIAL = 16;
+
+    //Atributs
+    private final IndexXarxa _index;
+    private int[] _marca; //darrer recorregut que ha visitat cada node
+    private int _recorregut; //número del recorregut actual
+    private int _nVisitats;
+
+    private int[] _pila; //nodes del camí actual
+    private int[] _seguent; //següent canonada per recórrer de cada node de la pila, o -1
+    private int _cim;
+
+    private int[] _primeres; //llistes que es recorren (sortides o entrades): primera canonada de cada node
+    private int[] _seguents; //i següent canonada de la llista de cada canonada
+    private int[] _extrems; //node de l'altre extrem de cada canonada (destins o origens)
+
+    /** @brief Crea un RecorregutXarxa
+     @pre ---
+     @post Crea un recorregut buit sobre les canonades de index
+     */
+    public RecorregutXarxa(IndexXarxa index) {
+        _index = index;
+        _marca = new int[MIDA_INICIAL];
+        _recorregut = 0;
+        _pila = new int[MIDA_INICIAL];
+        _seguent = new int[MIDA_INICIAL];
+        _cim = 0;
+    }
+
+    /** @brief Recórrer sortides
+     @pre 0 <= v < nombreNodes() de l'índex
+     @post Comença un recorregut nou des de v que segueix les canonades en el seu sentit; v queda visitat i a la pila
+     */
+    public void recorrerSortides(int v) {
+        _primeres = _index.primeresSortides();
+        _seguents = _index.seguentsSortides();
+        _extrems = _index.destins();
+        iniciar(v);
+    }
+
+    /** @brief Recórrer entrades
+     @pre 0 <= v < nombreNodes() de l'índex
+     @post Comença un recorregut nou des de v que segueix les canonades en sentit contrari; v queda visitat i a la pila
+     */
+    public void recorrerEntrades(int v) {
+        _primeres = _index.primeresEntrades();
+        _seguents = _index.seguentsEntrades();
+        _extrems = _index.origens();
+        iniciar(v);
+    }
+
+    /** @brief Buit
+     @pre ---
+     @post Diu si la pila del recorregut és buida
+     */
+    public boolean buit() {
+        return _cim == 0;
+    }
+
+    /** @brief Node actual
+     @pre !buit()
+     @post Retorna el node del cim de la pila
+     */
+    public int actual() {
+        return _pila[_cim - 1];
+    }
+
+    /** @brief Profunditat
+     @pre ---
+     @post Retorna el nombre de nodes de la pila
+     */
+    public int profunditat() {
+        return _cim;
+    }
+
+    /** @brief Següent canonada
+     @pre !buit()
+     @post Retorna la següent canonada per recórrer del node actual(), o -1 si ja les ha recorregudes totes
+     */
+    public int seguentCanonada() {
+        int e = _seguent[_cim - 1];
+        if (e >= 0) {
+            _seguent[_cim - 1] = _seguents[e];
+        }
+        return e;
+    }
+
+    /** @brief Extrem
+     @pre e és una canonada retornada per seguentCanonada()
+     @post Retorna el node de l'altre extrem de e respecte del node actual()
+     */
+    public int extrem(int e) {
+        return _extrems[e];
+    }
+
+    /** @brief Visitat
+     @pre 0 <= v < nombreNodes() de l'índex
+     @post Diu si v ja s'ha visitat en aquest recorregut
+     */
+    public boolean visitat(int v) {
+        return _marca[v] == _recorregut;
+    }
+
+    /** @brief Nombre de visitats
+     @pre ---
+     @post Retorna el nombre de nodes visitats en aquest recorregut
+     */
+    public int nombreVisitats() {
+        return _nVisitats;
+    }
+
+    /** @brief Baixar
+     @pre !visitat(v)
+     @post v queda visitat i al cim de la pila, amb totes les seves canonades per recórrer
+     */
+    public void baixar(int v) {
+        if (_cim == _pila.length) {
+            _pila = Arrays.copyOf(_pila, _cim * 2);
+            _seguent = Arrays.copyOf(_seguent, _cim * 2);
+        }
+        _marca[v] = _recorregut;
+        _nVisitats++;
+        _pila[_cim] = v;
+        _seguent[_cim] = _primeres[v];
+        _cim++;
+    }
+
+    /** @brief Pujar
+     @pre !buit()
+     @post Treu el node actual() de la pila
+     */
+    public void pujar() {
+        _cim--;
+    }
+
+    /** @brief Iniciar
+     @pre Les llistes a recórrer ja estan escollides
+     @post Comença un recorregut nou des de v
+     */
+    private void iniciar(int v) {
+        int nNodes = _index.nombreNodes();
+        if (_marca.length < nNodes) {
+            _marca = Arrays.copyOf(_marca, Math.max(_marca.length * 2, nNodes));
+        }
+        if (_recorregut == Integer.MAX_VALUE) {
+            Arrays.fill(_marca, 0);
+            _recorregut = 0;
+        }
+        _recorregut++;
+        _nVisitats = 0;
+        _cim = 0;
+        baixar(v);
+    }
+}
@@ -0,0 +1,285 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/** @file ServidorXarxes.java
+ @brief Classe ServidorXarxes
+ */
+
+/** @class ServidorXarxes
+ @brief Servidor de consultes sobre xarxes carregades una sola vegada, per un sòcol local
+
+ Carrega les xarxes amb un nom (d'una xarxa guardada amb FitxerXarxa o d'un fitxer d'ordres) i escolta en un sòcol
+ Unix (si l'adreça és un camí) o en un port TCP de l'adreça local (si és un número). Cada client envia primer el nom
+ de la xarxa en una línia i després ordres amb el mateix llenguatge que els fitxers d'ordres; els resultats se li
+ tornen ordre a ordre a mesura que s'executen. Quan el client tanca la seva sortida (o hi ha un error, com en una
+ simulació), es tanca la connexió.
+
+ Cada connexió té el seu fil i el seu SimuladorModeText sobre la xarxa compartida. Cada ordre, un cop llegida sencera,
+ s'executa amb el bloqueig de la seva xarxa: les que la modifiquen d'una en una, i les consultes alhora entre elles.
+ El resultat s'envia al client després de deixar el bloqueig, de manera que un client que no llegeix no atura els
+ altres. Les ordres de xarxes diferents s'executen alhora. Els canvis que fa un client (aixetes, demandes...) els
+ veuen tots els altres. Els clients no poden fer les ordres guardar i carregar: les xarxes només es carreguen amb
+ carregar(), en engegar el servidor.
+
+ Com a molt hi ha maxClients connexions alhora (per defecte MAX_CLIENTS): a les altres se'ls diu que hi ha massa
+ clients i es tanquen. Una connexió que fa més de segonsInactiu segons (per defecte SEGONS_INACTIU) que espera una
+ línia del client es tanca.
+ */
+
+public class ServidorXarxes implements Closeable {
+
+    public static final int MAX_CLIENTS = 64;
+    public static final long SEGONS_INACTIU = 300;
+
+    //Atributs
+    private final Map<String, Xarxa> _xarxes;
+    private final Map<String, ReadWriteLock> _bloqueigs; //bloqueig de les ordres de cada xarxa
+    private final ServerSocketChannel _servidor;
+    private final Path _socolUnix; //camí del sòcol Unix, o null si és TCP
+    private final ExecutorService _fils;
+    private final ScheduledExecutorService _vigilant; //tanca les connexions inactives
+    private final Set<EntradaClient> _obertes; //entrades de les connexions obertes
+    private final long _nanosInactiu;
+    private final AtomicInteger _nClients;
+
+    /** @brief Crea un ServidorXarxes
+     @pre ---
+     @post Crea un servidor sense xarxes que escolta a adreca: un sòcol Unix si és un camí, o un port de l'adreça
+     local si és un número. Admet MAX_CLIENTS connexions alhora i les tanca si fa SEGONS_INACTIU que esperen
+     @exception "IOException" si no es pot obrir el sòcol
+     */
+    public ServidorXarxes(String adreca) throws IOException {
+        this(adreca, MAX_CLIENTS, SEGONS_INACTIU);
+    }
+
+    /** @brief Crea un ServidorXarxes
+     @pre maxClients > 0 i segonsInactiu > 0
+     @post Crea un servidor com ServidorXarxes(adreca), que admet maxClients connexions alhora i tanca les que fa més
+     de segonsInactiu segons que esperen una línia
+     @exception "IOException" si no es pot obrir el sòcol
+     */
+    public ServidorXarxes(String adreca, int maxClients, long segonsInactiu) throws IOException {
+        _xarxes = new ConcurrentHashMap<>();
+        _bloqueigs = new ConcurrentHashMap<>();
+        if (adreca.matches("[0-9]+")) {
+            _socolUnix = null;
+            _servidor = ServerSocketChannel.open();
+            _servidor.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(adreca)));
+        }
+        else {
+            _socolUnix = Paths.get(adreca);
+            //un sòcol que ha quedat d'una execució anterior s'esborra, però no un fitxer o directori
+            if (Files.exists(_socolUnix) && !Files.isRegularFile(_socolUnix) && !Files.isDirectory(_socolUnix)) {
+                Files.delete(_socolUnix);
+            }
+            _servidor = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            _servidor.bind(UnixDomainSocketAddress.of(_socolUnix));
+        }
+        //Java 17 no té fils virtuals: un fil de plataforma per connexió, que es reaprofita quan acaba, fins a maxClients
+        _fils = new ThreadPoolExecutor(0, maxClients, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+        _obertes = ConcurrentHashMap.newKeySet();
+        _nanosInactiu = TimeUnit.SECONDS.toNanos(segonsInactiu);
+        _vigilant = Executors.newSingleThreadScheduledExecutor(tasca -> {
+            Thread fil = new Thread(tasca, "BeWater-vigilant");
+            fil.setDaemon(true);
+            return fil;
+        });
+        long periode = Math.max(_nanosInactiu / 10, TimeUnit.MILLISECONDS.toNanos(100));
+        _vigilant.scheduleWithFixedDelay(this::vigilar, periode, periode, TimeUnit.NANOSECONDS);
+        _nClients = new AtomicInteger();
+    }
+
+    /** @brief Carregar xarxa
+     @pre ---
+     @post La xarxa del fitxer fitxer (guardada amb FitxerXarxa, o construïda amb les ordres del fitxer) té el nom nom.
+     Els resultats i els errors de les ordres del fitxer s'escriuen per System.out
+     @exception "IOException" si no es pot llegir el fitxer, si no és una xarxa guardada vàlida o si alguna de les
+     seves ordres ha fallat
+     */
+    public void carregar(String nom, String fitxer) throws IOException {
+        Xarxa xarxa;
+        if (FitxerXarxa.esXarxaGuardada(fitxer)) {
+            xarxa = FitxerXarxa.carregar(fitxer);
+        }
+        else {
+            SimuladorModeText simulador = new SimuladorModeText(true);
+            //no es tanca, perquè tancaria System.out
+            SortidaResultats sortida = new SortidaResultats(System.out, SortidaResultats.CADA_LINIA);
+            boolean correcte = simulador.simular(new LectorOrdres(fitxer), sortida);
+            sortida.buidar();
+            if (!correcte) {
+                throw new IOException("El fitxer d'ordres " + fitxer + " de la xarxa " + nom + " té errors");
+            }
+            xarxa = simulador.xarxa();
+        }
+        _bloqueigs.put(nom, new ReentrantReadWriteLock());
+        _xarxes.put(nom, xarxa);
+    }
+
+    /** @brief Adreça
+     @pre ---
+     @post Retorna l'adreça on escolta el servidor
+     @exception "IOException" si el sòcol està tancat
+     */
+    public SocketAddress adreca() throws IOException {
+        return _servidor.getLocalAddress();
+    }
+
+    /** @brief Servir
+     @pre ---
+     @post Accepta connexions i atén cadascuna al seu fil fins que es tanca el servidor
+     */
+    public void servir() {
+        try {
+            while (true) {
+                SocketChannel client = _servidor.accept();
+                try {
+                    _fils.execute(() -> atendre(client));
+                }
+                catch (RejectedExecutionException e) {
+                    rebutjar(client);
+                }
+            }
+        }
+        catch (ClosedChannelException e) {
+            //s'ha tancat el servidor
+        }
+        catch (IOException e) {
+            System.out.println("Error!!!: " + e.getMessage());
+        }
+    }
+
+    /** @brief Tancar
+     @pre ---
+     @post El servidor ja no accepta connexions, se n'ha esborrat el sòcol Unix i les connexions obertes acaben
+     quan els seus clients les tanquen o quan fa massa que esperen
+     */
+    @Override
+    public void close() throws IOException {
+        _servidor.close();
+        _fils.shutdown();
+        if (_socolUnix != null) {
+            Files.deleteIfExists(_socolUnix);
+        }
+    }
+
+    /** @brief Atendre
+     @pre ---
+     @post S'han executat les ordres que ha enviat client, s'hi han escrit els resultats i s'ha tancat la connexió
+     */
+    private void atendre(SocketChannel client) {
+        Thread.currentThread().setName("BeWater-client-" + _nClients.incrementAndGet());
+        EntradaClient entrada = new EntradaClient(client);
+        _obertes.add(entrada);
+        LectorOrdres reader = new LectorOrdres(entrada);
+        try (SortidaResultats sortida = new SortidaResultats(Channels.newOutputStream(client),
+                SortidaResultats.CADA_LINIA)) {
+            String nom = reader.llegirLinia();
+            Xarxa xarxa = (nom != null) ? _xarxes.get(nom) : null;
+            if (xarxa == null) {
+                sortida.linia("Xarxa inexistent: " + nom);
+                reader.close();
+            }
+            else {
+                new SimuladorModeText(xarxa, _bloqueigs.get(nom), true).simular(reader, sortida);
+            }
+        }
+        catch (IOException e) {
+            //el client ha tancat la connexió
+        }
+        finally {
+            _obertes.remove(entrada);
+        }
+    }
+
+    /** @brief Rebutjar
+     @pre ---
+     @post S'ha dit a client que hi ha massa clients i s'ha tancat la connexió
+     */
+    private void rebutjar(SocketChannel client) {
+        try (SortidaResultats sortida = new SortidaResultats(Channels.newOutputStream(client),
+                SortidaResultats.CADA_LINIA)) {
+            sortida.linia("Massa clients: torna-ho a provar més tard");
+        }
+    }
+
+    /** @brief Vigilar
+     @pre ---
+     @post S'han tancat les connexions que fa massa que esperen una línia; si el servidor està tancat i ja no en queda
+     cap d'oberta, s'ha aturat la vigilància
+     */
+    private void vigilar() {
+        long ara = System.nanoTime();
+        for (EntradaClient entrada : _obertes) {
+            entrada.tancarSiInactiva(ara, _nanosInactiu);
+        }
+        if (!_servidor.isOpen() && _obertes.isEmpty()) {
+            _vigilant.shutdown();
+        }
+    }
+
+    /** @class EntradaClient
+     @brief Canal d'entrada d'un client: en tancar-lo només es tanca l'entrada, perquè la sortida encara s'ha de buidar
+     */
+    private static class EntradaClient implements ReadableByteChannel {
+
+        private final SocketChannel _client;
+        private volatile long _esperaDes; //quan ha començat a esperar una lectura, o 0 si no n'espera cap
+
+        /** @brief Crea una EntradaClient
+         @pre ---
+         @post Crea el canal d'entrada de client
+         */
+        private EntradaClient(SocketChannel client) {
+            _client = client;
+            _esperaDes = 0;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            _esperaDes = Math.max(System.nanoTime(), 1);
+            try {
+                return _client.read(buffer);
+            }
+            finally {
+                _esperaDes = 0;
+            }
+        }
+
+        /** @brief Tancar si és inactiva
+         @pre ara és el System.nanoTime() actual
+         @post Si fa més de nanos que s'espera una lectura, s'ha tancat la connexió (i la lectura acaba amb una
+         IOException)
+         */
+        private void tancarSiInactiva(long ara, long nanos) {
+            long esperaDes = _esperaDes;
+            if (esperaDes != 0 && ara - esperaDes > nanos) {
+                try {
+                    _client.close();
+                }
+                catch (IOException e) {
+                    //ja estava tancada
+                }
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _client.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_client.isOpen()) {
+                _client.shutdownInput();
+            }
+        }
+    }
+}
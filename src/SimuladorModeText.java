@@ -2,10 +2,8 @@
  @brief Classe SimuladorModeText
  */
 
-import org.graphstream.graph.Edge;
-import org.graphstream.graph.Graph;
-import org.graphstream.graph.Node;
 import java.util.*;
+import java.util.concurrent.locks.*;
 import java.io.*;
 
 /** @class SimuladorModeText
@@ -15,9 +13,64 @@ import java.io.*;
 
 public class SimuladorModeText {
 
+    private static final Set<String> OPCIONS = new HashSet<>(Arrays.asList("terminal", "connexio", "origen", "connectar",
+            "abonar", "tancar", "obrir", "backtrack", "cabal", "demanda", "cicles", "arbre", "cabal minim", "exces cabal",
+            "situacio", "cabal abonat", "proximitat", "dibuix", "max-flow", "contingencies", "guardar", "carregar", "desfer",
+            "refer", "marcar", "tornar")); //opcions del programa
+    private static final Set<String> MODIFICACIONS = new HashSet<>(Arrays.asList("terminal", "connexio", "origen",
+            "connectar", "abonar", "tancar", "obrir", "backtrack", "cabal", "demanda", "desfer", "refer", "marcar",
+            "tornar", "carregar")); //opcions que canvien la xarxa; les altres només la consulten
+
     private int comptadorLinies = 0; //comptador de línies
     //Atributs
-    private final Xarxa _xarxa = new Xarxa(); //Xarxa on es van implementant les modificacions que indica l'usuari
+    private Xarxa _xarxa; //Xarxa on es van implementant les modificacions que indica l'usuari
+    private final ReadWriteLock _bloqueig; //es té mentre s'executa cada ordre, si la xarxa és compartida
+    private final boolean _compartida; //si cert, la xarxa és d'un servidor i no es pot guardar ni substituir
+    private final boolean _senseFinestres; //si cert, dibuix i max-flow escriuen el resultat en lloc de mostrar-lo
+    private SortidaResultats _sortida; //on s'escriuen els resultats de la simulació actual
+    private boolean _ambErrors; //si alguna ordre de la simulació actual ha fallat
+
+
+    /** @brief Crea un SimuladorModeText
+     @pre ---
+     @post Crea un simulador que mostra els dibuixos en finestres
+     */
+    public SimuladorModeText() {
+        this(false);
+    }
+
+    /** @brief Crea un SimuladorModeText
+     @pre ---
+     @post Crea un simulador; si senseFinestres, les ordres dibuix i max-flow escriuen el resultat per la sortida sense
+     carregar cap classe gràfica
+     */
+    public SimuladorModeText(boolean senseFinestres) {
+        this(new Xarxa(), new ReentrantReadWriteLock(), false, senseFinestres);
+    }
+
+    /** @brief Crea un SimuladorModeText sobre una xarxa compartida
+     @pre Tots els simuladors que comparteixen xarxa tenen el mateix bloqueig
+     @post Crea un simulador que fa les operacions sobre xarxa i executa cada ordre amb bloqueig agafat, de manera
+     que les ordres de diversos simuladors (cadascun al seu fil) no es barregen: les que modifiquen la xarxa amb el
+     d'escriptura, d'una en una, i les consultes amb el de lectura, alhora. Cada ordre es llegeix sencera abans
+     d'agafar el bloqueig, i el resultat s'escriu a la sortida després de deixar-lo. Les ordres guardar i carregar no
+     es fan, perquè no poden tocar fitxers ni substituir una xarxa que és de tots; si senseFinestres, com
+     SimuladorModeText(boolean)
+     */
+    public SimuladorModeText(Xarxa xarxa, ReadWriteLock bloqueig, boolean senseFinestres) {
+        this(xarxa, bloqueig, true, senseFinestres);
+    }
+
+    /** @brief Crea un SimuladorModeText
+     @pre ---
+     @post Crea un simulador sobre xarxa amb bloqueig; si compartida, no fa les ordres guardar i carregar
+     */
+    private SimuladorModeText(Xarxa xarxa, ReadWriteLock bloqueig, boolean compartida, boolean senseFinestres) {
+        _xarxa = xarxa;
+        _bloqueig = bloqueig;
+        _compartida = compartida;
+        _senseFinestres = senseFinestres;
+    }
 
 
     /** @brief Processarà el fitxer de text, localitzant els nodes corresponents a la xarxa a partir dels seus identificadors,
@@ -28,181 +81,372 @@ public class SimuladorModeText {
      */
     public void simular(String fitxerEntrada, String fitxerSortida)
     {
-
         try {
             //Lectura i escriptura fitxer
-            BufferedReader reader = new BufferedReader(new FileReader(fitxerEntrada));
-            PrintStream fileOut = new PrintStream(fitxerSortida);
-            System.setOut(fileOut); //Redirigeix la sortida cap el fitxer
+            LectorOrdres reader = new LectorOrdres(fitxerEntrada);
+            SortidaResultats sortida;
+            try {
+                sortida = new SortidaResultats(fitxerSortida);
+            }
+            catch (IOException e) {
+                reader.close();
+                throw e;
+            }
+            try (sortida) {
+                simular(reader, sortida);
+            }
+        }
+        catch (IOException e)
+        {
+            //encara no hi ha cap sortida de la simulació
+            System.out.println("Error!!!: " + e.getMessage());
+        }
+    }
 
-            String linea= reader.readLine();
-            String nextCase="";
+
+    /** @brief Processarà les operacions que es llegeixen de reader com simular(String, String), però escrivint els
+                resultats i els errors a sortida, sense tocar System.out. Cada simulació pot tenir la seva sortida.
+     @pre reader llegeix una seqüència d'operacions a realitzar sobre una xarxa de distribució d'aigua
+     @post S'han realitzat les operacions llegides sobre la xarxa de distribució d'aigua i s'ha tancat reader. Retorna
+     cert si totes les ordres s'han pogut fer, i fals si n'hi ha hagut alguna d'errònia
+     */
+    public boolean simular(LectorOrdres reader, SortidaResultats sortida)
+    {
+        _sortida = sortida;
+        _ambErrors = false;
+        try {
+            String linea= reader.llegirLinia();
             while (linea != null) {
                 comptadorLinies++;
-                switch (linea) {
-                    case "terminal":
-                        lecturaTerminal(reader);
-                        break;
-
-                    case "connexio":
-                        lecturaConnexio(reader);
-                        break;
-
-                    case "origen":
-                        lecturaOrigen(reader);
-                        break;
-
-                    case "connectar":
-                        lecturaConnectar(reader);
-                        break;
-
-                    case "abonar":
-                        //lectura entrada
-                        comptadorLinies++;
-                        String idClient = reader.readLine();
-                        Terminal terminal = llegirNodeTerminal(reader);
-                        //abonar
-                        _xarxa.abonar(idClient, terminal);
-                        break;
-
-                    case "tancar":
-                        NodeAixeta AixetaT = llegirNodeAixeta(reader);
-                        _xarxa.tancarAixeta(AixetaT);
-                        break;
-
-                    case "obrir":
-                        NodeAixeta AixetaO = llegirNodeAixeta(reader);
-                        _xarxa.obrirAixeta(AixetaO);
-                        break;
-
-                    case "backtrack":
-                        comptadorLinies++;
-                        int nPassos= Integer.parseInt(reader.readLine());
-                        _xarxa.recular(nPassos);
-                        break;
-
-                    case "cabal":
-                        Origen nodeOrigen = llegirNodeOrigen(reader);
-                        comptadorLinies++;
-                        Float cabal = Float.parseFloat(reader.readLine());
-                        _xarxa.establirCabal(nodeOrigen,cabal);
-                        break;
-
-                    case "demanda":
-                        lecturaDemanda(reader);
-                        break;
-
-                    case "cicles":
-                        Origen nodeOrigenCicle = llegirNodeOrigen(reader);
-                        //comprobació cicles
-                        if(GestorXarxes.teCicles(_xarxa, nodeOrigenCicle)){
-                            System.out.println(nodeOrigenCicle.id() + " te cicles");
-                        }
-                        else{
-                            System.out.println(nodeOrigenCicle.id() + " no te cicles");
-                        }
-                        break;
-
-                    case "arbre":
-                        Origen nodeOrigenArbre = llegirNodeOrigen(reader);
-                        //comprobació arbre
-                        if(GestorXarxes.esArbre(_xarxa, nodeOrigenArbre)){
-                            System.out.println(nodeOrigenArbre.id() + " es un arbre");
-                        }
-                        else{
-                            System.out.println(nodeOrigenArbre.id() + " no es un arbre");
-                        }
-                        break;
-
-                    case "cabal minim":
-                        lecturaCabalMinim(reader);
-                        break;
-
-                    case "exces cabal":
-                        nextCase = lecturaExcesCabal(reader);
-                        break;
-
-                    case "situacio":
-                        nextCase = lecturaSituacio(reader);
-                        break;
-
-                    case "cabal abonat":
-                        //lectura i comprobació client
-                        comptadorLinies++;
-                        String IdClient =  reader.readLine();
-                        System.out.println("cabal abonat");
-                        if(!(_xarxa.existeixClient(IdClient))){
-                            throw new NoSuchElementException("No s'ha trobat el client: " + IdClient);
-                        }
-                        //Comprovem que no té cicles
-                        Origen nodeOrigenClient = buscarOrigen(_xarxa.retornAbonat(IdClient));
-                        if(GestorXarxes.teCicles(_xarxa,nodeOrigenClient))
-                            throw new IllegalArgumentException("La xarxa té cicles i per tant no es pot calcular el cabal abonat");
-
-                        //calcular cabal
-                        Float cabalClient = _xarxa.cabalAbonat(IdClient);
-                        System.out.println(cabalClient);
-                        break;
+                //l'ordre es llegeix sencera abans d'agafar el bloqueig, perquè un client lent no aturi els altres
+                Ordre ordre = llegirOrdre(linea, reader);
+                //el resultat no s'envia fins que s'ha deixat el bloqueig, perquè un client que no llegeix tampoc no
+                //aturi els altres
+                Lock bloqueig = MODIFICACIONS.contains(linea) ? _bloqueig.writeLock() : _bloqueig.readLock();
+                _sortida.retenir();
+                bloqueig.lock();
+                try {
+                    switch (linea) {
+                        case "terminal":
+                            lecturaTerminal(ordre);
+                            break;
+
+                        case "connexio":
+                            lecturaConnexio(ordre);
+                            break;
+
+                        case "origen":
+                            lecturaOrigen(ordre);
+                            break;
+
+                        case "connectar":
+                            lecturaConnectar(ordre);
+                            break;
+
+                        case "abonar":
+                            //lectura entrada
+                            comptadorLinies++;
+                            String idClient = ordre.llegirLinia();
+                            Terminal terminal = llegirNodeTerminal(ordre);
+                            //abonar
+                            _xarxa.abonar(idClient, terminal);
+                            break;
+
+                        case "tancar":
+                            NodeAixeta AixetaT = llegirNodeAixeta(ordre);
+                            _xarxa.tancarAixeta(AixetaT);
+                            break;
+
+                        case "obrir":
+                            NodeAixeta AixetaO = llegirNodeAixeta(ordre);
+                            _xarxa.obrirAixeta(AixetaO);
+                            break;
+
+                        case "backtrack":
+                            comptadorLinies++;
+                            int nPassos= Integer.parseInt(ordre.llegirLinia());
+                            _xarxa.recular(nPassos);
+                            break;
+
+                        case "desfer":
+                            comptadorLinies++;
+                            _xarxa.desfer(Integer.parseInt(ordre.llegirLinia()));
+                            break;
+
+                        case "refer":
+                            comptadorLinies++;
+                            _xarxa.refer(Integer.parseInt(ordre.llegirLinia()));
+                            break;
+
+                        case "marcar":
+                            comptadorLinies++;
+                            _xarxa.marcarPuntControl(ordre.llegirLinia());
+                            break;
+
+                        case "tornar":
+                            comptadorLinies++;
+                            _xarxa.tornarAPuntControl(ordre.llegirLinia());
+                            break;
+
+                        case "cabal":
+                            Origen nodeOrigen = llegirNodeOrigen(ordre);
+                            comptadorLinies++;
+                            float cabal = LectorOrdres.real(ordre.llegirLinia());
+                            _xarxa.establirCabal(nodeOrigen,cabal);
+                            break;
+
+                        case "demanda":
+                            lecturaDemanda(ordre);
+                            break;
+
+                        case "cicles":
+                            Origen nodeOrigenCicle = llegirNodeOrigen(ordre);
+                            //comprobació cicles
+                            if(GestorXarxes.teCicles(_xarxa, nodeOrigenCicle)){
+                                _sortida.escriure(nodeOrigenCicle.id()).linia(" te cicles");
+                            }
+                            else{
+                                _sortida.escriure(nodeOrigenCicle.id()).linia(" no te cicles");
+                            }
+                            break;
+
+                        case "arbre":
+                            Origen nodeOrigenArbre = llegirNodeOrigen(ordre);
+                            //comprobació arbre
+                            if(GestorXarxes.esArbre(_xarxa, nodeOrigenArbre)){
+                                _sortida.escriure(nodeOrigenArbre.id()).linia(" es un arbre");
+                            }
+                            else{
+                                _sortida.escriure(nodeOrigenArbre.id()).linia(" no es un arbre");
+                            }
+                            break;
+
+                        case "cabal minim":
+                            lecturaCabalMinim(ordre);
+                            break;
+
+                        case "exces cabal":
+                            lecturaExcesCabal(ordre);
+                            break;
+
+                        case "contingencies":
+                            lecturaContingencies(ordre);
+                            break;
+
+                        case "situacio":
+                            lecturaSituacio(ordre);
+                            break;
+
+                        case "cabal abonat":
+                            //lectura i comprobació client
+                            comptadorLinies++;
+                            String IdClient =  ordre.llegirLinia();
+                            _sortida.linia("cabal abonat");
+                            if(!(_xarxa.existeixClient(IdClient))){
+                                throw new NoSuchElementException("No s'ha trobat el client: " + IdClient);
+                            }
+                            //Comprovem que no té cicles
+                            Origen nodeOrigenClient = buscarOrigen(_xarxa.retornAbonat(IdClient));
+                            if(GestorXarxes.teCicles(_xarxa,nodeOrigenClient))
+                                throw new IllegalArgumentException("La xarxa té cicles i per tant no es pot calcular el cabal abonat");
+
+                            //calcular cabal
+                            float cabalClient = _xarxa.cabalAbonat(IdClient);
+                            _sortida.escriure(cabalClient).linia();
+                            break;
                         
-                    case "proximitat":
-                        nextCase = lecturaProximitat(reader);
-                        break;
-
-                    case "dibuix":
-                        //llegim el node
-                        Origen node = llegirNodeOrigen(reader);
-                        //dibuixar
-                        _xarxa.dibuixar(node);
-                        break;
-
-                    case "max-flow":
-                        //llegim el node
-                        Origen nodeOrigenMaxFlow = llegirNodeOrigen(reader);
-                        //Dibuixar flux màxim
-                        GestorXarxes.fluxMaxim(_xarxa,nodeOrigenMaxFlow);
-                        break;
-
-                    case "":
-                        break;
-
-                    default:
-                        System.out.println("Opció no vàlida: " + linea);
+                        case "proximitat":
+                            lecturaProximitat(ordre);
+                            break;
+
+                        case "dibuix":
+                            //llegim el node
+                            Origen node = llegirNodeOrigen(ordre);
+                            //dibuixar
+                            if (_senseFinestres) _xarxa.dibuix(node).escriure(_sortida);
+                            else _xarxa.dibuixar(node);
+                            break;
+
+                        case "max-flow":
+                            //llegim el node
+                            Origen nodeOrigenMaxFlow = llegirNodeOrigen(ordre);
+                            //Dibuixar flux màxim
+                            if (_senseFinestres) GestorXarxes.dibuixFluxMaxim(_xarxa,nodeOrigenMaxFlow).escriure(_sortida);
+                            else GestorXarxes.fluxMaxim(_xarxa,nodeOrigenMaxFlow,_sortida);
+                            break;
+
+                        case "guardar":
+                            comptadorLinies++;
+                            if (_compartida) ordreNoPermesa(linea);
+                            else guardarXarxa(ordre.llegirLinia());
+                            break;
+
+                        case "carregar":
+                            comptadorLinies++;
+                            if (_compartida) ordreNoPermesa(linea);
+                            else carregarXarxa(ordre.llegirLinia());
+                            break;
+
+                        case "":
+                            break;
+
+                        default:
+                            _ambErrors = true;
+                            _sortida.escriure("Opció no vàlida: ").linia(linea);
+                    }
                 }
-
-                if(linea.equals("proximitat") || linea.equals("exces cabal") || linea.equals("situacio")){
-                    linea = nextCase;
+                finally {
+                    bloqueig.unlock();
+                    _sortida.alliberar();
                 }
-                else linea = reader.readLine();
-            }
 
-            reader.close();
+                //les ordres amb llista ja han llegit la primera línia de la següent
+                linea = ordre.ambSeguent() ? ordre.seguent() : reader.llegirLinia();
+            }
 
         }
         catch (IOException e)
         {
-            System.out.println("Error!!!: " + e.getMessage());
+            _ambErrors = true;
+            _sortida.linia("Error!!!: " + e.getMessage());
         }
         catch (NumberFormatException e)
         {
+            _ambErrors = true;
             String error = e.getMessage().split("\"")[1]; //ens quedem amb l'entrada que causa l'error, no amb tot l'error.
-            System.out.println("Error format d'entrada a l'opció de la línia " + comptadorLinies + ": s'esperava un real. S'ha trobat \"" + error + "\".");
+            _sortida.linia("Error format d'entrada a l'opció de la línia " + comptadorLinies + ": s'esperava un real. S'ha trobat \"" + error + "\".");
         }
         catch (IllegalArgumentException e)
         {
+            _ambErrors = true;
             if(e.getMessage().contains("latitud")||e.getMessage().contains("longitud")){
                 comptadorLinies++;
-                System.out.println("Coordenada errònia a la línia " + comptadorLinies + ": " + e.getMessage());
+                _sortida.linia("Coordenada errònia a la línia " + comptadorLinies + ": " + e.getMessage());
             }
             else
-                System.out.println("Error de configuració a la línia " + comptadorLinies + ": " + e.getMessage());
+                _sortida.linia("Error de configuració a la línia " + comptadorLinies + ": " + e.getMessage());
         }
         catch (NoSuchElementException e) {
-            System.out.println("Identificador inexistent: " + e.getMessage());
+            _ambErrors = true;
+            _sortida.linia("Identificador inexistent: " + e.getMessage());
         }
         catch (Exception e)
         {
+            _ambErrors = true;
             e.printStackTrace();
         }
+        finally {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                _ambErrors = true;
+                _sortida.linia("Error!!!: " + e.getMessage());
+            }
+        }
+        return !_ambErrors;
+    }
+
+
+    /** @brief Llegeix una ordre sencera
+     @pre opcio és la línia amb el nom de l'ordre, ja llegida de reader
+     @post Retorna les línies que formen part de l'ordre opcio, llegides de reader. Si l'ordre porta una llista
+     (proximitat, exces cabal i situacio), també s'ha llegit la primera línia de l'ordre següent (o null)
+     */
+    private Ordre llegirOrdre(String opcio, LectorOrdres reader) throws IOException {
+        Ordre ordre = new Ordre();
+        for (int i = nombreLinies(opcio); i > 0; i--) {
+            ordre.afegir(reader.llegirLinia());
+        }
+
+        if (opcio.equals("proximitat") || opcio.equals("exces cabal") || opcio.equals("situacio")) {
+            //la llista s'acaba amb una altra ordre, una línia buida o el final del fitxer
+            String linia = reader.llegirLinia();
+            while (!CambiarOpcio(linia) && linia!=null && !linia.trim().isEmpty()) {
+                ordre.afegir(linia);
+                linia = reader.llegirLinia();
+            }
+            ordre.establirSeguent(linia);
+        }
+        return ordre;
+    }
+
+
+    /** @brief Nombre de línies d'una ordre
+     @pre ---
+     @post Retorna el nombre de línies que segueixen l'ordre opcio sense comptar-ne la llista, si en porta
+     */
+    private static int nombreLinies(String opcio) {
+        switch (opcio) {
+            case "terminal":
+            case "connectar":
+                return 3;
+            case "connexio":
+            case "origen":
+            case "abonar":
+            case "cabal":
+            case "demanda":
+            case "cabal minim":
+                return 2;
+            case "tancar":
+            case "obrir":
+            case "backtrack":
+            case "desfer":
+            case "refer":
+            case "marcar":
+            case "tornar":
+            case "cicles":
+            case "arbre":
+            case "contingencies":
+            case "cabal abonat":
+            case "proximitat":
+            case "dibuix":
+            case "max-flow":
+            case "guardar":
+            case "carregar":
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+
+    /** @brief Ordre no permesa
+     @pre ---
+     @post S'ha escrit que l'ordre opcio no es pot fer sobre una xarxa compartida, i la simulació continua
+     */
+    private void ordreNoPermesa(String opcio) {
+        _ambErrors = true;
+        _sortida.escriure("Ordre no permesa en una xarxa compartida: ").linia(opcio);
+    }
+
+
+    /** @brief Xarxa actual
+     @pre ---
+     @post Retorna la xarxa sobre la qual es fan les operacions
+     */
+    public Xarxa xarxa() {
+        return _xarxa;
+    }
+
+
+    /** @brief Guarda la xarxa actual en format binari
+     @pre ---
+     @post S'ha guardat la xarxa actual al fitxer fitxer (vegeu FitxerXarxa)
+     @exception "IOException" si no es pot escriure el fitxer
+     */
+    public void guardarXarxa(String fitxer) throws IOException {
+        FitxerXarxa.guardar(_xarxa, fitxer);
+    }
+
+
+    /** @brief Substitueix la xarxa actual per una de guardada en format binari
+     @pre ---
+     @post La xarxa actual és la guardada al fitxer fitxer, sense cap canvi per desfer
+     @exception "IOException" si no es pot llegir el fitxer o no és una xarxa guardada vàlida
+     */
+    public void carregarXarxa(String fitxer) throws IOException {
+        _xarxa = FitxerXarxa.carregar(fitxer);
     }
 
 
@@ -212,6 +456,23 @@ public class SimuladorModeText {
      */
     private Coordenades lecturaCoordenada(String cord)
     {
+        //forma habitual (una coma i dos ':' a cada part), sense partir la cadena
+        int coma = cord.indexOf(',');
+        if (coma >= 0 && cord.indexOf(',', coma + 1) < 0) {
+            int lat1 = cord.indexOf(':');
+            int lat2 = (lat1 >= 0) ? cord.indexOf(':', lat1 + 1) : -1;
+            int lon1 = cord.indexOf(':', coma + 1);
+            int lon2 = (lon1 >= 0) ? cord.indexOf(':', lon1 + 1) : -1;
+            if (0 < lat1 && lat1 + 1 < lat2 && lat2 + 2 < coma && coma + 1 < lon1 && lon1 + 1 < lon2
+                    && lon2 + 2 < cord.length() && cord.indexOf(':', lat2 + 1) == lon1 && cord.indexOf(':', lon2 + 1) < 0) {
+                return new Coordenades(
+                        LectorOrdres.enter(cord, 0, lat1), LectorOrdres.enter(cord, lat1 + 1, lat2),
+                        LectorOrdres.real(cord, lat2 + 1, coma - 1), cord.charAt(coma - 1),
+                        LectorOrdres.enter(cord, coma + 1, lon1), LectorOrdres.enter(cord, lon1 + 1, lon2),
+                        LectorOrdres.real(cord, lon2 + 1, cord.length() - 1), cord.charAt(cord.length() - 1));
+            }
+        }
+
         String[] partsCord = cord.split(","); //divideix la cadena en latitud i longitud
         String Latitud = partsCord[0];
         String Longitud = partsCord[1];
@@ -233,8 +494,8 @@ public class SimuladorModeText {
      @pre --
      @post Retorna el node aixeta llegit
      */
-    private NodeAixeta llegirNodeAixeta(BufferedReader reader) throws IOException, NoSuchElementException {
-        String idNodeAixeta = reader.readLine();
+    private NodeAixeta llegirNodeAixeta(Ordre ordre) throws NoSuchElementException {
+        String idNodeAixeta = ordre.llegirLinia();
         comptadorLinies++;
         NodeAixeta nodeA = _xarxa.node(idNodeAixeta);
         if(nodeA == null){
@@ -249,8 +510,8 @@ public class SimuladorModeText {
      @pre --
      @post Retorna el node aixeta llegit
      */
-    private Origen llegirNodeOrigen(BufferedReader reader) throws IOException, NoSuchElementException {
-        String idNodeOrigen = reader.readLine();
+    private Origen llegirNodeOrigen(Ordre ordre) throws NoSuchElementException {
+        String idNodeOrigen = ordre.llegirLinia();
         comptadorLinies++;
         NodeAixeta nodeO = _xarxa.node(idNodeOrigen);
         if(nodeO == null){
@@ -268,8 +529,8 @@ public class SimuladorModeText {
      @pre --
      @post Retorna el node aixeta llegit
      */
-    private Terminal llegirNodeTerminal(BufferedReader reader) throws IOException, NoSuchElementException {
-        String idNodeTerminal = reader.readLine();
+    private Terminal llegirNodeTerminal(Ordre ordre) throws NoSuchElementException {
+        String idNodeTerminal = ordre.llegirLinia();
         comptadorLinies++;
         Terminal nodeT = (Terminal) _xarxa.node(idNodeTerminal);
         if(nodeT == null){
@@ -283,12 +544,12 @@ public class SimuladorModeText {
      @pre --
      @post Afegeix el nou node Terminal a la xarxa
      */
-    private void lecturaTerminal(BufferedReader reader) throws IOException, IllegalArgumentException{
-        String idTerminal = reader.readLine(); //guarda id
+    private void lecturaTerminal(Ordre ordre) throws IllegalArgumentException{
+        String idTerminal = ordre.llegirLinia(); //guarda id
         comptadorLinies++;
-        Coordenades cordTerminal = lecturaCoordenada(reader.readLine()); //lectura cordenada
-        String demandaLectura = reader.readLine();
-        float demandaPunta = Float.parseFloat(demandaLectura); //guarda demanda
+        Coordenades cordTerminal = lecturaCoordenada(ordre.llegirLinia()); //lectura cordenada
+        String demandaLectura = ordre.llegirLinia();
+        float demandaPunta = LectorOrdres.real(demandaLectura); //guarda demanda
 
         _xarxa.afegir(new Terminal(idTerminal, cordTerminal, demandaPunta)); //afageix terminal a la xarxa
         comptadorLinies+=2;
@@ -299,10 +560,10 @@ public class SimuladorModeText {
      @pre --
      @post Afegeix el nou node connexió a la xarxa
      */
-    private void lecturaConnexio(BufferedReader reader) throws IOException, IllegalArgumentException{
-        String idConnexio = reader.readLine(); //guarda id
+    private void lecturaConnexio(Ordre ordre) throws IllegalArgumentException{
+        String idConnexio = ordre.llegirLinia(); //guarda id
         comptadorLinies++;
-        Coordenades cordConnexio = lecturaCoordenada(reader.readLine()); //lectura cordenada
+        Coordenades cordConnexio = lecturaCoordenada(ordre.llegirLinia()); //lectura cordenada
 
         _xarxa.afegir(new Connexio(idConnexio, cordConnexio)); //afageix connexió a la xarxa
         comptadorLinies++;
@@ -313,10 +574,10 @@ public class SimuladorModeText {
      @pre --
      @post Afegeix el nou node origen a la xarxa
      */
-    private void lecturaOrigen(BufferedReader reader) throws IOException, IllegalArgumentException{
-        String idOrigen = reader.readLine(); //guarda id
+    private void lecturaOrigen(Ordre ordre) throws IllegalArgumentException{
+        String idOrigen = ordre.llegirLinia(); //guarda id
         comptadorLinies++;
-        Coordenades cordOrigen = lecturaCoordenada(reader.readLine()); //lectura cordenada
+        Coordenades cordOrigen = lecturaCoordenada(ordre.llegirLinia()); //lectura cordenada
 
         _xarxa.afegir(new Origen(idOrigen, cordOrigen)); //afageix connexió a la xarxa
         comptadorLinies++;
@@ -325,24 +586,24 @@ public class SimuladorModeText {
 
     /** @brief Llegeix l'id de dos nodes i crida la funció connectar de la classe xarxa per crear una canonada entre aquests dos nodes.
      @pre --
-     @post Connecta els dos nodes llegits pel reader
+     @post Connecta els dos nodes llegits per l'ordre
      */
-    private void lecturaConnectar(BufferedReader reader) throws IOException, IllegalArgumentException{
-        NodeAixeta node1 = llegirNodeAixeta(reader);
-        NodeAixeta node2 = llegirNodeAixeta(reader);
+    private void lecturaConnectar(Ordre ordre) throws IllegalArgumentException{
+        NodeAixeta node1 = llegirNodeAixeta(ordre);
+        NodeAixeta node2 = llegirNodeAixeta(ordre);
         comptadorLinies++;
-        _xarxa.connectarAmbCanonada(node1, node2, Float.parseFloat(reader.readLine()));
+        _xarxa.connectarAmbCanonada(node1, node2, LectorOrdres.real(ordre.llegirLinia()));
     }
 
 
     /** @brief Llegeix un node Terminal i la seva demanda i ho actualitza a la xarxa cridant la funció establirDemanda.
      @pre --
-     @post Estableix una demanda pel node Terminal entrat pel reader
+     @post Estableix una demanda pel node Terminal entrat per l'ordre
      */
-    private void lecturaDemanda(BufferedReader reader) throws IOException, IllegalArgumentException{
-        Terminal nodeTerminal = llegirNodeTerminal(reader);
+    private void lecturaDemanda(Ordre ordre) throws IllegalArgumentException{
+        Terminal nodeTerminal = llegirNodeTerminal(ordre);
         comptadorLinies++;
-        float demandaTerminal = Float.parseFloat(reader.readLine());
+        float demandaTerminal = LectorOrdres.real(ordre.llegirLinia());
         if(nodeTerminal.demandaPunta() < demandaTerminal){
             throw new IllegalArgumentException("La demanda indicada (" + demandaTerminal
                     + ") és superior a la demanda punta del node (" + nodeTerminal.demandaPunta() + ")");
@@ -351,20 +612,20 @@ public class SimuladorModeText {
     }
 
 
-    /** @brief Llegeix el node Origen entrat pel reader i el percentatge de cabal. A partir d'aquestes dades busca el cabal mínim
+    /** @brief Llegeix el node Origen entrat per l'ordre i el percentatge de cabal. A partir d'aquestes dades busca el cabal mínim
      * per satisfer la demanda entrada.
      @pre --
      @post Mostra el cabal mínim que pot haver a la xarxa des del node Origen i el tant per cent entrat.
      */
-    private void lecturaCabalMinim(BufferedReader reader) throws IOException, IllegalArgumentException{
+    private void lecturaCabalMinim(Ordre ordre) throws IllegalArgumentException{
 
         //lectura node
-        Origen nodeOrigenCabalMin = llegirNodeOrigen(reader);
+        Origen nodeOrigenCabalMin = llegirNodeOrigen(ordre);
 
         //lectura cabal mínim
         comptadorLinies++;
-        String percentatgeDemandaSatisfet = reader.readLine(); //amb %
-        float DemandaSatisfet = Float.parseFloat(String.valueOf(percentatgeDemandaSatisfet.replace("%", ""))); //sense %
+        String percentatgeDemandaSatisfet = ordre.llegirLinia(); //amb %
+        float DemandaSatisfet = LectorOrdres.real(percentatgeDemandaSatisfet.replace("%", "")); //sense %
 
         if(DemandaSatisfet < 0){
             throw new IllegalArgumentException("La demanda indicada (" + percentatgeDemandaSatisfet
@@ -373,26 +634,51 @@ public class SimuladorModeText {
         //comprobar cicles
         if(!GestorXarxes.teCicles(_xarxa,nodeOrigenCabalMin)) {
             //impimim valor cabal mínim
-            System.out.println("cabal minim\n" +
-                    GestorXarxes.cabalMinim(_xarxa, nodeOrigenCabalMin, DemandaSatisfet));
+            _sortida.escriure("cabal minim\n")
+                    .escriure(GestorXarxes.cabalMinim(_xarxa, nodeOrigenCabalMin, DemandaSatisfet)).linia();
         }
         else throw new IllegalArgumentException("La xarxa actual té cicles i no es pot calcular el cabal mínim");
 
     }
 
 
+    /** @brief Llegeix el node Origen entrat per l'ordre i mostra, per a cada connexió oberta de la seva component, què passaria
+     * si només es tanqués aquella aixeta.
+     @pre --
+     @post Mostra una línia per aixeta, de la que més afecta a la que menys, amb la demanda que deixaria de servir-se i
+     els terminals que es quedarien sense aigua
+     */
+    private void lecturaContingencies(Ordre ordre) throws IllegalArgumentException{
+        Origen nodeOrigenContingencies = llegirNodeOrigen(ordre);
+
+        //comprobar cicles
+        if(GestorXarxes.teCicles(_xarxa,nodeOrigenContingencies)) {
+            throw new IllegalArgumentException("La xarxa actual té cicles i no es poden analitzar les contingències");
+        }
+
+        AnalisiContingencies analisi = GestorXarxes.analisiContingencies(_xarxa, nodeOrigenContingencies);
+        _sortida.linia("contingencies");
+        for (NodeAixeta aixeta : analisi.aixetes()) {
+            _sortida.escriure(aixeta.id()).escriure(' ').escriure(analisi.demandaNoServida(aixeta));
+            for (Terminal terminal : analisi.terminalsSenseAigua(aixeta)) {
+                _sortida.escriure(' ').escriure(terminal.id());
+            }
+            _sortida.linia();
+        }
+    }
+
+
     /** @brief Va llegint terminals i es van guardant tots els que tenen excés amb la crida de la funció de GestorXarxes
      * fins que es llegeixi un case o s'hagi arribat al final del fitxer que és quan es mostren tots els terminals trobats
      @pre --
-     @post Retorna la línia llegida que ja no fa refèrencia a aquesta funció i mostra totes les terminals entrades amb excés de cabal
+     @post Mostra totes les canonades entrades amb excés de cabal
      */
-    private String lecturaExcesCabal(BufferedReader reader) throws IOException, IllegalArgumentException {
-        System.out.println("exces cabal");
-        Set<Canonada> cjtCanonades = new HashSet<>();
-        Set<Canonada> excesCanonades = new HashSet<>();
+    private void lecturaExcesCabal(Ordre ordre) throws IllegalArgumentException {
+        _sortida.linia("exces cabal");
+        Map<Origen, Set<Canonada>> canonadesPerOrigen = new LinkedHashMap<>(); //canonades llegides, per l'origen de la seva component
 
         //bucle que va llegint les terminals fins trobar un altre case
-        String linia= reader.readLine();
+        String linia= ordre.llegirLinia();
         while (!CambiarOpcio(linia) && linia!=null && !linia.trim().isEmpty()) {
             comptadorLinies++;
             String[] canonada = linia.split("-"); //Dividim els dos nodes
@@ -408,103 +694,62 @@ public class SimuladorModeText {
                 throw new NoSuchElementException("No existeix un node amb ID: " + IdNode2);
             }
 
-            //mirar quin node és origen i buscar excés
+            //mirar quin node és origen
+            Origen nodeOrigen;
             if(NodeAixeta1 instanceof Origen){
-                if(!GestorXarxes.teCicles(_xarxa,(Origen) NodeAixeta1)) {//comprovar no cicles
-                    //buscar canonada i afegir
-                    cjtCanonades.add(trobarCanonada(_xarxa, (Origen) NodeAixeta1, NodeAixeta1, NodeAixeta2));
-                    excesCanonades.addAll(GestorXarxes.excesCabal(_xarxa, (Origen) NodeAixeta1, cjtCanonades));
-                }
-                else throw new IllegalArgumentException("La xarxa actual té cicles i no es pot calcular l'excés de cabal");
+                nodeOrigen = (Origen) NodeAixeta1;
             }
             else if(NodeAixeta2 instanceof Origen){
-                if(!GestorXarxes.teCicles(_xarxa,(Origen) NodeAixeta2)) {//comprovar no cicles
-                    //buscar canonada i afegir
-                    cjtCanonades.add(trobarCanonada(_xarxa, (Origen) NodeAixeta2, NodeAixeta2, NodeAixeta1));
-                    excesCanonades.addAll(GestorXarxes.excesCabal(_xarxa, (Origen) NodeAixeta2, cjtCanonades));
-                }
-                else throw new IllegalArgumentException("La xarxa actual té cicles i no es pot calcular l'excés de cabal");
+                nodeOrigen = (Origen) NodeAixeta2;
             }
             else {//buscar node Origen
-                Origen nodeOrigen = buscarOrigen(NodeAixeta1);
-                if(!GestorXarxes.teCicles(_xarxa,nodeOrigen)) {//comprovar no cicles
-                    cjtCanonades.add(trobarCanonada(_xarxa, nodeOrigen, NodeAixeta1, NodeAixeta2));
-                    excesCanonades.addAll(GestorXarxes.excesCabal(_xarxa, nodeOrigen, cjtCanonades));
-                }
-                else throw new IllegalArgumentException("La xarxa actual té cicles i no es pot calcular l'excés de cabal");
+                nodeOrigen = buscarOrigen(NodeAixeta1);
+            }
+
+            if(!GestorXarxes.teCicles(_xarxa,nodeOrigen)) {//comprovar no cicles
+                //buscar canonada i afegir-la a les de la seva component
+                canonadesPerOrigen.computeIfAbsent(nodeOrigen, o -> new HashSet<>()).add(_xarxa.canonadaEntre(NodeAixeta1, NodeAixeta2));
             }
+            else throw new IllegalArgumentException("La xarxa actual té cicles i no es pot calcular l'excés de cabal");
 
-            linia = reader.readLine(); //llegeix el possible terminal o case
+            linia = ordre.llegirLinia(); //llegeix el possible terminal o case
         }
+        //buscar excés amb una sola passada per cada component
+        Set<Canonada> excesCanonades = new HashSet<>();
+        for (Map.Entry<Origen, Set<Canonada>> entrada : canonadesPerOrigen.entrySet()) {
+            excesCanonades.addAll(GestorXarxes.excesCabal(_xarxa, entrada.getKey(), entrada.getValue()));
+        }
+
         //mostrar canonades amb excés
 
         while (!excesCanonades.isEmpty()) {
             Canonada canonada = excesCanonades.iterator().next();
-            System.out.println(canonada.node1().id() + "-" + canonada.node2().id());
+            _sortida.escriure(canonada.node1().id()).escriure('-').linia(canonada.node2().id());
             excesCanonades.remove(canonada);
         }
 
-        return linia;
     }
 
     /** @brief Retorna el node Origen el qual li proporciona aigua al node aixeta entrat.
      @pre NodeAixeta pertany a la xarxa
-     @post Retorna el node Origen que està connectat amb el nodeAixeta aixeta
+     @post Retorna el primer node Origen que està connectat amb el nodeAixeta aixeta, o null si no n'hi ha cap
      */
     private Origen buscarOrigen(NodeAixeta aixeta){
-        Origen nodeOrigen = null;
-        boolean trobat = false;
-        Iterator<Canonada> ItCanonada = _xarxa.entrades(aixeta);
-        while(ItCanonada.hasNext() && !trobat){ //mentre tingui entrades i no s'hagi trobat
-            Canonada canonada = ItCanonada.next();
-            if(canonada.node1() instanceof Origen){//si és node Origen guardem i parem
-                nodeOrigen = (Origen) canonada.node1();
-                trobat = true;
-            }
-            else {
-                nodeOrigen = buscarOrigen((NodeAixeta) canonada.node1()); //busquem el node Origen del node de dalt
-                if (nodeOrigen != null) {//si trobat parem
-                    trobat = true;
-                }
-            }
-        }
-
-        return nodeOrigen;
-    }
-
-    /** @brief Busca i retorna l'aresta que uneix els dos nodes (nodeAixeta1 i nodeAixeta2)
-     @pre --
-     @post Retorna la canonada que es troba entre nodeAixeta 1 i nodeAixeta2
-     */
-    private Canonada trobarCanonada(Xarxa x,Origen nodeOrigen, NodeAixeta nodeAixeta1, NodeAixeta nodeAixeta2) {
-        Graph subGraf = x.crearSubGraf(nodeOrigen);
-        for (Node node : subGraf) {
-            for(Edge aresta : node) {
-                Canonada canonada = (Canonada) aresta.getAttribute("canonada");
-                NodeAixeta origen = canonada.node1();
-                NodeAixeta destino = canonada.node2();
-
-                // Comprobem si és la canonada que busquem
-                if ((origen.equals(nodeAixeta1) && destino.equals(nodeAixeta2)) || (origen.equals(nodeAixeta2) && destino.equals(nodeAixeta1))) {
-                    return canonada;
-                }
-            }
-        }
-        return null; //No s'ha trobat
+        List<Origen> origens = _xarxa.origensAlimentadors(aixeta);
+        return origens.isEmpty() ? null : origens.get(0);
     }
 
-
     /** @brief Va llegint i guardant terminals fins a trobar un nou case o fi de fitxer. Després crida GestorXarxes
      * per trobar les aixetes que s'han de tancar i les mostra.
      @pre --
-     @post Retorna la línia llegida que ja no fa referència a aquesta funció i mostra les terminals entrades que s'han de tancar
+     @post Mostra les aixetes que s'han de tancar segons l'estat dels terminals entrats
      */
-    private String lecturaSituacio(BufferedReader reader) throws IOException, NoSuchElementException {
-        System.out.println("tancar");
+    private void lecturaSituacio(Ordre ordre) throws NoSuchElementException {
+        _sortida.linia("tancar");
         Map<Terminal, Boolean> aiguaArriba = new HashMap<>();
 
         //bucle que va llegint les terminals fins trobar un altre case
-        String terminalAigua = reader.readLine(); //llegeix terminal
+        String terminalAigua = ordre.llegirLinia(); //llegeix terminal
         while (terminalAigua!=null && !terminalAigua.trim().isEmpty() &&!CambiarOpcio(terminalAigua)) {
             comptadorLinies++;
 
@@ -531,30 +776,28 @@ public class SimuladorModeText {
                 aiguaArriba.put(nodeTerminal, true);
             }
 
-            terminalAigua = reader.readLine(); //llegeix el possible terminal o case
+            terminalAigua = ordre.llegirLinia(); //llegeix el possible terminal o case
         }
         //busquem i mostrem les aixetes que s'han de tancar
         Set<NodeAixeta> tancarAiexetes = GestorXarxes.aixetesTancar(_xarxa,aiguaArriba);
         for(NodeAixeta nodeAixeta : tancarAiexetes) {
-            System.out.println(nodeAixeta.id());
+            _sortida.linia(nodeAixeta.id());
         }
-
-        return terminalAigua;
     }
 
 
     /** @brief Va llegint i guardant nodes aixetes fins a trobar un nou case o fi de fitxer. Després crida GestorXarxes
      * per ordenar per proximitat els nodes i els mostra ordenats.
      @pre --
-     @post Retorna la línia llegida que ja no fa referència a aquesta funció i
+     @post Mostra els nodes entrats ordenats per proximitat a la coordenada entrada
      */
-    private String lecturaProximitat(BufferedReader reader) throws IOException, NoSuchElementException {
+    private void lecturaProximitat(Ordre ordre) throws NoSuchElementException {
         //llegim coordenades
-        Coordenades Cord = lecturaCoordenada(reader.readLine());
+        Coordenades Cord = lecturaCoordenada(ordre.llegirLinia());
         Set<NodeAixeta> llistaAixetes = new HashSet<NodeAixeta>();
 
         //bucle que va llegint les terminals fins trobar un altre case
-        String IdnodeAixeta = reader.readLine();
+        String IdnodeAixeta = ordre.llegirLinia();
         while (!CambiarOpcio(IdnodeAixeta) && IdnodeAixeta!=null && !IdnodeAixeta.trim().isEmpty()) {
             comptadorLinies++;
             NodeAixeta nodeAixeta = _xarxa.node(IdnodeAixeta);
@@ -563,18 +806,17 @@ public class SimuladorModeText {
             }
             llistaAixetes.add(nodeAixeta);
 
-            IdnodeAixeta = reader.readLine(); //llegeix el possible terminal o case
+            IdnodeAixeta = ordre.llegirLinia(); //llegeix el possible terminal o case
 
         }
         //Ordenem els nodes
         List<NodeAixeta> nodesOrdenats = GestorXarxes.nodesOrdenats(Cord, llistaAixetes);
 
         //Imprimir aixetes ordenades
-        System.out.println("proximitat");
+        _sortida.linia("proximitat");
         for (int i = 0; i < nodesOrdenats.size(); i++) {
-            System.out.println(nodesOrdenats.get(i).id());
+            _sortida.linia(nodesOrdenats.get(i).id());
         }
-        return IdnodeAixeta;
     }
 
 
@@ -584,12 +826,71 @@ public class SimuladorModeText {
      */
     private boolean CambiarOpcio(String linia){
         if(linia!=null) {
-            String[] opcions = {"terminal", "connexio", "origen", "connectar", "abonar", "tancar", "obrir", "backtrack", "cabal", "demanda", "cicles"
-                    , "arbre", "cabal minim", "exces cabal", "situacio", "cabal abonat", "proximitat", "dibuix", "max-flow"};
-            if (Arrays.asList(opcions).contains(linia.toLowerCase())) return true;
-            else return false;
+            return OPCIONS.contains(linia.toLowerCase());
         }
         else return false;
     }
 
+
+    /** @class Ordre
+     @brief Línies d'una ordre ja llegides, que es consulten mentre s'executa l'ordre sense esperar l'entrada
+     */
+    private static class Ordre {
+
+        private final List<String> _linies;
+        private int _posicio;
+        private boolean _ambSeguent;
+        private String _seguent; //primera línia de l'ordre següent, si ja s'ha llegit
+
+        /** @brief Crea una Ordre
+         @pre ---
+         @post Crea una ordre sense cap línia
+         */
+        private Ordre() {
+            _linies = new ArrayList<>(3);
+            _posicio = 0;
+            _ambSeguent = false;
+        }
+
+        /** @brief Afegir línia
+         @pre ---
+         @post S'ha afegit linia al final de l'ordre
+         */
+        private void afegir(String linia) {
+            _linies.add(linia);
+        }
+
+        /** @brief Establir següent
+         @pre ---
+         @post linia és la primera línia de l'ordre següent
+         */
+        private void establirSeguent(String linia) {
+            _ambSeguent = true;
+            _seguent = linia;
+        }
+
+        /** @brief Llegir línia
+         @pre ---
+         @post Retorna la següent línia de l'ordre, o null si ja no en queda cap
+         */
+        private String llegirLinia() {
+            return (_posicio < _linies.size()) ? _linies.get(_posicio++) : null;
+        }
+
+        /** @brief Amb següent
+         @pre ---
+         @post Diu si ja s'ha llegit la primera línia de l'ordre següent
+         */
+        private boolean ambSeguent() {
+            return _ambSeguent;
+        }
+
+        /** @brief Següent
+         @pre ambSeguent()
+         @post Retorna la primera línia de l'ordre següent, o null si s'ha acabat l'entrada
+         */
+        private String seguent() {
+            return _seguent;
+        }
+    }
 }
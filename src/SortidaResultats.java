@@ -0,0 +1,199 @@
+import java.io.*;
+import java.nio.charset.*;
+
+/** @file SortidaResultats.java
+ @brief Classe SortidaResultats
+ */
+
+/** @class SortidaResultats
+ @brief Sortida on una simulació escriu els seus resultats, amb un buffer gran
+
+ Cada simulació té la seva, i per tant se'n poden fer diverses alhora en una mateixa JVM sense tocar System.out. El
+ text s'acumula en un buffer de caràcters, on els números s'hi escriuen directament (StringBuilder.append(), sense
+ crear cap String), i es passa a l'OutputStream amb el joc de caràcters per defecte. Els bytes són els mateixos que
+ els d'un PrintStream amb println(): els mateixos salts de línia, els mateixos reals i els mateixos caràcters
+ substituïts. Quan es buida depèn de la política: a cada línia, o només quan el buffer és ple i en tancar. Mentre està
+ retinguda (retenir()) no es buida mai, i així no s'escriu a l'OutputStream amb un bloqueig agafat.
+
+ Com PrintStream, no llença IOException: si falla l'escriptura, es recorda i es pot consultar amb teError().
+ */
+
+public class SortidaResultats implements Closeable {
+
+    public static final byte CADA_LINIA = 0;
+    public static final byte BUFFER_PLE = 1;
+
+    private static final int MIDA_BUFFER = 1 << 16;
+
+    //Atributs
+    private final Writer _sortida;
+    private final byte _politica;
+    private final StringBuilder _text; //text pendent d'escriure
+    private final char[] _caracters; //per passar _text a _sortida
+    private final String _saltLinia;
+    private boolean _retinguda; //si cert, el text s'acumula fins que s'allibera
+    private boolean _error;
+
+    /** @brief Crea una SortidaResultats
+     @pre politica és CADA_LINIA o BUFFER_PLE
+     @post Crea una sortida que escriu a sortida i la buida segons politica
+     */
+    public SortidaResultats(OutputStream sortida, byte politica) {
+        _sortida = new OutputStreamWriter(sortida, Charset.defaultCharset());
+        _politica = politica;
+        _text = new StringBuilder(MIDA_BUFFER);
+        _caracters = new char[MIDA_BUFFER];
+        _saltLinia = System.lineSeparator();
+        _retinguda = false;
+        _error = false;
+    }
+
+    /** @brief Crea una SortidaResultats cap a un fitxer
+     @pre ---
+     @post Crea una sortida que escriu al fitxer fitxer (que es buida o es crea) i només es buida quan el buffer és ple
+     @exception "FileNotFoundException" si no es pot obrir el fitxer
+     */
+    public SortidaResultats(String fitxer) throws FileNotFoundException {
+        this(new FileOutputStream(fitxer), BUFFER_PLE);
+    }
+
+    /** @brief Escriure text
+     @pre ---
+     @post S'ha afegit text ("null" si és null) a la línia actual
+     */
+    public SortidaResultats escriure(String text) {
+        _text.append(text);
+        return this;
+    }
+
+    /** @brief Escriure caràcter
+     @pre ---
+     @post S'ha afegit c a la línia actual
+     */
+    public SortidaResultats escriure(char c) {
+        _text.append(c);
+        return this;
+    }
+
+    /** @brief Escriure real
+     @pre ---
+     @post S'ha afegit valor a la línia actual, amb el mateix format que Float.toString()
+     */
+    public SortidaResultats escriure(float valor) {
+        _text.append(valor);
+        return this;
+    }
+
+    /** @brief Escriure enter
+     @pre ---
+     @post S'ha afegit valor a la línia actual
+     */
+    public SortidaResultats escriure(int valor) {
+        _text.append(valor);
+        return this;
+    }
+
+    /** @brief Acabar línia
+     @pre ---
+     @post S'ha acabat la línia actual i, segons la política, s'ha buidat la sortida
+     */
+    public void linia() {
+        _text.append(_saltLinia);
+        if (_retinguda) {
+            return;
+        }
+        if (_politica == CADA_LINIA) {
+            buidar();
+        }
+        else if (_text.length() >= MIDA_BUFFER) {
+            passar();
+        }
+    }
+
+    /** @brief Escriure línia
+     @pre ---
+     @post S'ha afegit text a la línia actual i s'ha acabat la línia
+     */
+    public void linia(String text) {
+        escriure(text).linia();
+    }
+
+    /** @brief Retenir
+     @pre ---
+     @post Fins que es cridi alliberar(), el que s'escrigui només s'acumula al buffer, encara que la política sigui
+     CADA_LINIA o el buffer s'ompli
+     */
+    public void retenir() {
+        _retinguda = true;
+    }
+
+    /** @brief Alliberar
+     @pre ---
+     @post La sortida ja no està retinguda i s'ha buidat el que s'hi ha escrit mentrestant segons la política: tot, si
+     és CADA_LINIA, o el buffer, si és BUFFER_PLE i està ple
+     */
+    public void alliberar() {
+        _retinguda = false;
+        if (_politica == CADA_LINIA) {
+            buidar();
+        }
+        else if (_text.length() >= MIDA_BUFFER) {
+            passar();
+        }
+    }
+
+    /** @brief Buidar
+     @pre ---
+     @post Tot el que s'ha escrit ha arribat a l'OutputStream
+     */
+    public void buidar() {
+        passar();
+        try {
+            _sortida.flush();
+        }
+        catch (IOException e) {
+            _error = true;
+        }
+    }
+
+    /** @brief Tancar
+     @pre ---
+     @post S'ha buidat la sortida i s'ha tancat l'OutputStream
+     */
+    @Override
+    public void close() {
+        passar();
+        try {
+            _sortida.close();
+        }
+        catch (IOException e) {
+            _error = true;
+        }
+    }
+
+    /** @brief Té error
+     @pre ---
+     @post Diu si alguna escriptura ha fallat
+     */
+    public boolean teError() {
+        return _error;
+    }
+
+    /** @brief Passar
+     @pre ---
+     @post El text pendent s'ha passat a _sortida i el buffer és buit
+     */
+    private void passar() {
+        try {
+            for (int i = 0; i < _text.length(); i += _caracters.length) {
+                int n = Math.min(_caracters.length, _text.length() - i);
+                _text.getChars(i, i + n, _caracters, 0);
+                _sortida.write(_caracters, 0, n);
+            }
+        }
+        catch (IOException e) {
+            _error = true;
+        }
+        _text.setLength(0);
+    }
+}
@@ -0,0 +1,73 @@
+import org.graphstream.graph.*;
+import org.graphstream.graph.implementations.SingleGraph;
+import org.graphstream.ui.spriteManager.*;
+
+/** @file VisorGrafic.java
+ @brief Classe VisorGrafic
+ */
+
+/** @class VisorGrafic
+ @brief Mostra un DibuixXarxa en una finestra de GraphStream
+
+ És l'única classe que fa servir la interfície gràfica; només es carrega si es vol veure algun dibuix.
+ */
+
+public abstract class VisorGrafic {
+
+    /** @brief Mostrar
+     @pre ---
+     @post Obre una finestra amb el graf de dibuix: cada node amb el seu identificador i coordenades, els terminals
+     amb la seva etiqueta i cada canonada amb la seva etiqueta
+     */
+    public static void mostrar(DibuixXarxa dibuix) {
+        System.setProperty("org.graphstream.ui", "swing");
+        System.setProperty("org.graphstream.debug", "true");
+        Graph graf = new SingleGraph(dibuix.titol());
+        SpriteManager sman = new SpriteManager(graf);
+
+        for (int i = 0; i < dibuix.nombreNodes(); i++) {
+            NodeAixeta nodeAixeta = dibuix.node(i);
+            Node node = graf.addNode(nodeAixeta.id());
+            node.setAttribute("ui.class", dibuix.classeNode(i));
+            node.setAttribute("ui.label", nodeAixeta.id());
+            node.setAttribute("x", nodeAixeta.coordenades().getLongitudRadians());
+            node.setAttribute("y", nodeAixeta.coordenades().getLatitudRadians());
+
+            //enllaç coordenades
+            Sprite spriteCoordenada = sman.addSprite(nodeAixeta.id() + "Cord");
+            spriteCoordenada.setAttribute("ui.label", DibuixXarxa.etiquetaCoordenades(nodeAixeta.coordenades()));
+            spriteCoordenada.setPosition(0, 0.03, 0);
+            spriteCoordenada.attachToNode(nodeAixeta.id());
+
+            //enllaç etiqueta terminals
+            if (dibuix.etiquetaNode(i) != null) {
+                Sprite spriteTerminal = sman.addSprite(nodeAixeta.id() + "Terminal");
+                spriteTerminal.setAttribute("ui.label", dibuix.etiquetaNode(i));
+                spriteTerminal.setPosition(0, -0.06, 0);
+                spriteTerminal.setAttribute("ui.class", "terminal");
+                spriteTerminal.attachToNode(nodeAixeta.id());
+            }
+        }
+
+        for (int i = 0; i < dibuix.nombreCanonades(); i++) {
+            Canonada canonada = dibuix.canonada(i);
+            String idCanonada = canonada.node1().id() + "-" + canonada.node2().id();
+            Edge edge = graf.addEdge(idCanonada, canonada.node1().id(), canonada.node2().id(), true);
+            if (dibuix.classeCanonada(i) != null) {
+                edge.setAttribute("ui.class", dibuix.classeCanonada(i));
+            }
+
+            //enllaç etiqueta canonades
+            Sprite spriteCabal = sman.addSprite(idCanonada + "Canonada");
+            spriteCabal.setAttribute("ui.label", dibuix.etiquetaCanonada(i));
+            spriteCabal.setPosition(0.5);
+            spriteCabal.setAttribute("ui.class", "canonada");
+            spriteCabal.attachToEdge(idCanonada);
+        }
+
+        graf.setAttribute("ui.quality");
+        graf.setAttribute("ui.antialias");
+        graf.setAttribute("ui.stylesheet", "url('file:src/estil.css')");
+        graf.display(true);
+    }
+}
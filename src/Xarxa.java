@@ -1,10 +1,8 @@
 //Aleix Suriñach
-
-// Web utilitzada per mètodes GraphStream --> https://graphstream-project.org/gs-core/org/graphstream/graph/Graph.html
 import java.util.*;
-import org.graphstream.graph.*;
-import org.graphstream.graph.implementations.*;
-import org.graphstream.ui.spriteManager.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
 
 /** @file Xarxa.java
  @brief Classe Xarxa
@@ -13,27 +11,71 @@ import org.graphstream.ui.spriteManager.*;
 /** @class Xarxa
  @brief Xarxa de distribució d'aigua, no necessàriament connexa (graf dirigit de Node)
  @author Aleix Suriñach
+
+ Els nodes i les canonades es guarden a l'IndexXarxa, amb identificadors enters i taules de tipus primitius, i totes
+ les consultes es fan sobre aquestes taules. GraphStream només es fa servir per mostrar els dibuixos (VisorGrafic):
+ el graf es crea quan es vol veure un dibuix, només amb la component dibuixada.
+
+ Es pot fer servir des de diversos fils. Totes les modificacions (afegir, connectar, abonar, aixetes, demandes,
+ cabals, desfer i refer) agafen el bloqueig d'escriptura d'un StampedLock, de manera que s'apliquen senceres i una
+ darrere l'altra. cabal(), demanda(), cabalAbonat() i calculCabalCanonada() fan una lectura optimista sense bloquejar
+ (també la cerca del node o la canonada): si el valor ja és a la memòria i cap modificació no ha començat mentrestant,
+ el retornen, i n'hi pot haver tantes alhora com fils. Si no hi és, el calculen amb el bloqueig de lectura, que no fa
+ fallar les lectures optimistes dels altres fils, i amb _calcul, perquè només un fil alhora ompli la memòria.
+ avaluarCabals(), instantania() i dibuix() també fan la instantània amb aquests dos bloquejos, perquè fer-la pot
+ reconstruir les taules de l'índex. Les consultes que recorren l'índex directament (les de GestorXarxes) s'han de fer
+ dins consultar(), que agafa els mateixos bloquejos, o sobre una instantània.
  */
 
 
 public class Xarxa {
 
     //Atributs
-    private final Graph _xarxa;
-    private final Map<String, Terminal> _clients;
-    private final Stack<String> _modifAixetes;
+    private final StampedLock _bloqueig; //escriptura per les modificacions, lectura pels càlculs que omplen la memòria
+    private final ReentrantLock _calcul; //un sol càlcul alhora omple la memòria, amb el bloqueig de lectura
+    private final Map<String, Terminal> _clients; //es pot consultar des d'altres fils
+    private final DiariCanvis _diari; //canvis d'aixetes, demandes i cabals, per desfer-los
+    private final IndexXarxa _index; //nodes i canonades amb identificadors enters, pels recorreguts
+    private final MemoriaCabals _memoria; //demandes i cabals ja calculats
+    private final EstatNodes _estat; //estat de cada node, per les instantànies
+    private final ThreadLocal<RecorregutXarxa> _recorregut; //recorregut reutilitzable pels mòduls de consulta, un per fil
+    private final RecorregutXarxa _recorregutDemanda; //recorregut pel càlcul de demandes
+    private final RecorregutXarxa _recorregutCabal; //recorregut pel càlcul de cabals
+    private final IndexEspacial _espacial; //coordenades dels nodes, per les consultes de proximitat
 
     /** @brief Crea una Xarxa
      @pre ---
      @post Crea una xarxa de distribució d'aigua buida
      */
     public Xarxa() {
-        System.setProperty("org.graphstream.ui", "swing");
-        System.setProperty("org.graphstream.debug", "true");
+        this(new IndexXarxa());
+    }
+
+    /** @brief Crea una Xarxa amb espai reservat
+     @pre nNodes, nCanonades >= 0
+     @post Crea una xarxa de distribució d'aigua buida, on es poden afegir nNodes nodes i nCanonades canonades sense
+     que hagi de créixer l'índex
+     */
+    public Xarxa(int nNodes, int nCanonades) {
+        this(new IndexXarxa(nNodes, nCanonades));
+    }
 
-        _xarxa = new SingleGraph("Xarxa Be Water");
-        _clients = new HashMap<>();
-        _modifAixetes = new Stack<>();
+    /** @brief Crea una Xarxa sobre un índex
+     @pre index és buit
+     @post Crea una xarxa de distribució d'aigua buida amb l'índex index
+     */
+    private Xarxa(IndexXarxa index) {
+        _bloqueig = new StampedLock();
+        _calcul = new ReentrantLock();
+        _clients = new ConcurrentHashMap<>();
+        _diari = new DiariCanvis();
+        _index = index;
+        _memoria = new MemoriaCabals(_index);
+        _estat = new EstatNodes();
+        _recorregut = ThreadLocal.withInitial(() -> new RecorregutXarxa(_index));
+        _recorregutDemanda = new RecorregutXarxa(_index);
+        _recorregutCabal = new RecorregutXarxa(_index);
+        _espacial = new IndexEspacial();
     }
 
     /** @brief Node xarxa
@@ -41,53 +83,79 @@ public class Xarxa {
      @post Retorna el node de la xarxa amb identificador id
      */
     public NodeAixeta node(String id) {
-        Node n = _xarxa.getNode(id);
+        int v = _index.id(id);
+
+        return (v >= 0) ? _index.node(v) : null;
+    }
 
-        return (n != null) ? (NodeAixeta) n.getAttribute("aixeta") : null;
+    /** @brief Índex de la xarxa
+     @pre ---
+     @post Retorna l'índex compacte dels nodes i canonades de la xarxa, només per consultar-lo
+     */
+    public IndexXarxa index() {
+        return _index;
     }
 
     /** @brief Sortides d'un node
      @pre node pertany a la xarxa
      @post Retorna un iterador que permet recórrer totes les canonades que surten del node
+     @deprecated Crea un cursor nou a cada crida: per recórrer molts nodes, fer servir un sol cursor() i situar-lo
+     amb CursorCanonades.sortides
      */
+    @Deprecated
     public Iterator<Canonada> sortides(NodeAixeta node)
     {
-        Node nodeIterador = _xarxa.getNode(node.id());
-        Iterator<Edge> edgeIterator = nodeIterador.leavingEdges().iterator();
-
-        // Creem una llista per emmagatzemar les canonades
-        List<Canonada> canonades = new ArrayList<>();
-
-        // Convertim cada Edge a Canonada i l'afegim a la llista
-        while (edgeIterator.hasNext()) {
-            Edge aresta = edgeIterator.next();
-            Canonada pipe = (Canonada) aresta.getAttribute("canonada");
-            canonades.add(pipe);
-        }
-
-        return canonades.iterator();
+        return cursor().sortides(node);
     }
 
     /** @brief Entrades d'un node
      @pre node pertany a la xarxa
      @post Retorna un iterador que permet recórrer totes les canonades que entre del node
+     @deprecated Crea un cursor nou a cada crida: per recórrer molts nodes, fer servir un sol cursor() i situar-lo
+     amb CursorCanonades.entrades
      */
+    @Deprecated
     public Iterator<Canonada> entrades(NodeAixeta node)
     {
-        Node nodeIterador = _xarxa.getNode(node.id());
-        Iterator<Edge> edgeIterator = nodeIterador.enteringEdges().iterator();
+        return cursor().entrades(node);
+    }
 
-        // Creem una llista per emmagatzemar les canonades
-        List<Canonada> canonades = new ArrayList<>();
+    /** @brief Cursor de canonades
+     @pre ---
+     @post Retorna un cursor reutilitzable per recórrer les sortides i entrades dels nodes de la xarxa sense crear
+     cap llista
+     */
+    public CursorCanonades cursor()
+    {
+        return new CursorCanonades(_index);
+    }
 
-        // Convertim cada Edge a Canonada i l'afegim a la llista
-        while (edgeIterator.hasNext()) {
-            Edge aresta = edgeIterator.next();
-            Canonada pipe = (Canonada) aresta.getAttribute("canonada");
-            canonades.add(pipe);
-        }
+    /** @brief Recorregut
+     @pre ---
+     @post Retorna un recorregut reutilitzable de les canonades de la xarxa, propi del fil que el demana i compartit per
+     totes les seves consultes que no en facin dos de niats
+     */
+    public RecorregutXarxa recorregut()
+    {
+        return _recorregut.get();
+    }
 
-        return canonades.iterator();
+    /** @brief Consultar
+     @pre consulta només llegeix la xarxa (index(), cursor(), recorregut()) i no crida cap altre mètode de la xarxa
+     que bloquegi: un segon bloqueig de lectura niat es podria quedar esperant una modificació que espera el primer
+     @post Retorna el resultat de consulta, feta amb el bloqueig de lectura i _calcul: cap modificació ni cap altre
+     càlcul no canvia l'índex mentrestant
+     */
+    public <T> T consultar(Supplier<T> consulta) {
+        long segell = _bloqueig.readLock();
+        _calcul.lock();
+        try {
+            return consulta.get();
+        }
+        finally {
+            _calcul.unlock();
+            _bloqueig.unlockRead(segell);
+        }
     }
 
     /** @brief Afegir Origen
@@ -96,16 +164,19 @@ public class Xarxa {
      @exception "IllegalArgumentException" si ja existeix un node amb aquest id
      */
     public void afegir(Origen nodeOrigen) {
-        String id = nodeOrigen.id();
-        if(_xarxa.getNode(id) != null)
-        {
-            throw new IllegalArgumentException("L'origen amb id " + id + " ja existeix");
-        }
+        long segell = _bloqueig.writeLock();
+        try {
+            String id = nodeOrigen.id();
+            if(_index.id(id) >= 0)
+            {
+                throw new IllegalArgumentException("L'origen amb id " + id + " ja existeix");
+            }
 
-        Node n = _xarxa.addNode(nodeOrigen.id());
-        n.setAttribute("ui.label", nodeOrigen.id());
-        n.setAttribute("aixeta", nodeOrigen);
-        n.setAttribute("ui.class", "origen");
+            inserir(nodeOrigen);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
     }
 
     /** @brief Afegir Terminal
@@ -114,16 +185,19 @@ public class Xarxa {
      @exception "IllegalArgumentException" si ja existeix un node amb aquest id
      */
     public void afegir(Terminal nodeTerminal) {
-        String id = nodeTerminal.id();
-        if(_xarxa.getNode(id) != null)
-        {
-            throw new IllegalArgumentException("La terminal amb id " + id + " ja existeix");
-        }
+        long segell = _bloqueig.writeLock();
+        try {
+            String id = nodeTerminal.id();
+            if(_index.id(id) >= 0)
+            {
+                throw new IllegalArgumentException("La terminal amb id " + id + " ja existeix");
+            }
 
-        Node n = _xarxa.addNode(nodeTerminal.id());
-        n.setAttribute("ui.label", nodeTerminal.id());
-        n.setAttribute("aixeta", nodeTerminal);
-        n.setAttribute("ui.class", "terminal");
+            inserir(nodeTerminal);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
     }
 
     /** @brief Afegir Connexio
@@ -132,16 +206,19 @@ public class Xarxa {
      @exception "IllegalArgumentException" si ja existeix un node amb aquest id
      */
     public void afegir(Connexio nodeConnexio) {
-        String id = nodeConnexio.id();
-        if(_xarxa.getNode(id) != null)
-        {
-            throw new IllegalArgumentException("La connexió amb id " + id + " ja existeix");
-        }
+        long segell = _bloqueig.writeLock();
+        try {
+            String id = nodeConnexio.id();
+            if(_index.id(id) >= 0)
+            {
+                throw new IllegalArgumentException("La connexió amb id " + id + " ja existeix");
+            }
 
-        Node n = _xarxa.addNode(nodeConnexio.id());
-        n.setAttribute("ui.label", nodeConnexio.id());
-        n.setAttribute("aixeta", nodeConnexio);
-        n.setAttribute("ui.class", "connexio");
+            inserir(nodeConnexio);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
     }
 
     /** @brief Connectar Canonada
@@ -151,39 +228,90 @@ public class Xarxa {
      IllegalArgumentException els nodes ja estan connectats o node1 és un node terminal
      */
     public void connectarAmbCanonada(NodeAixeta node1, NodeAixeta node2, float c) {
-        Node n1 = _xarxa.getNode(node1.id());
-        Node n2 = _xarxa.getNode(node2.id());
+        long segell = _bloqueig.writeLock();
+        try {
+            int v1 = _index.id(node1.id());
+            int v2 = _index.id(node2.id());
 
-        if(n1 == null || n2 == null) {
-            throw new NoSuchElementException("Algun dels nodes no pertany a la xarxa");
-        }
+            if(v1 < 0 || v2 < 0) {
+                throw new NoSuchElementException("Algun dels nodes no pertany a la xarxa");
+            }
 
-        if(node1 instanceof Terminal) {
-            throw new IllegalArgumentException("El node " + node1.id() + " és un node terminal");
-        }
+            if(node1 instanceof Terminal) {
+                throw new IllegalArgumentException("El node " + node1.id() + " és un node terminal");
+            }
+
+            //mirar si els dos nodes ja estan connectats
+            if (_index.idCanonada(v1, v2) >= 0 || _index.idCanonada(v2, v1) >= 0) {
+                throw new IllegalArgumentException("Nodes ja connectats");
+            }
 
-        //mirar si els dos nodes ja estan connectats
-        if (n1.hasEdgeBetween(n2)) {
-            throw new IllegalArgumentException("Nodes ja connectats");
+            //Capacitat negativa?
+            if (c < 0) {
+                throw new IllegalArgumentException("La capacitat no pot ser negativa");
+            }
+
+            inserirCanonada(v1, node1, v2, node2, c);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
         }
+    }
+
+    /** @brief Afegir en bloc
+     @pre La xarxa és buida; nodes[0..nNodes) no tenen identificadors repetits; cada canonada e < nCanonades va de
+     nodes[origens[e]], que no és un node terminal, a nodes[destins[e]], amb capacitats[e] no negativa; i no hi ha dues
+     canonades entre els mateixos nodes (en cap sentit). ConstructorXarxa ho comprova abans de cridar-lo, i per això
+     només és visible des del paquet.
+     @post S'han afegit a la xarxa els nodes, amb els identificadors enters 0..nNodes-1, i les canonades en ordre,
+     com si s'haguessin afegit i connectat un per un
+     @exception "IllegalStateException" si la xarxa no és buida
+     */
+    void afegirEnBloc(NodeAixeta[] nodes, int nNodes, int[] origens, int[] destins, float[] capacitats,
+                      int nCanonades) {
+        long segell = _bloqueig.writeLock();
+        try {
+            if (_index.nombreNodes() > 0) {
+                throw new IllegalStateException("Només es pot afegir en bloc a una xarxa buida");
+            }
 
-        //Capacitat negativa?
-        if (c < 0) {
-            throw new IllegalArgumentException("La capacitat no pot ser negativa");
+            _index.reservar(nNodes, nCanonades);
+            for (int v = 0; v < nNodes; v++) {
+                inserir(nodes[v]);
+            }
+            for (int e = 0; e < nCanonades; e++) {
+                int v1 = origens[e];
+                int v2 = destins[e];
+                inserirCanonada(v1, _index.node(v1), v2, _index.node(v2), capacitats[e]);
+            }
         }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
+    }
 
-        String idCanonada = node1.id() + "-" + node2.id();
-        Edge e = _xarxa.addEdge(idCanonada, node1.id(), node2.id(), true);
+    /** @brief Inserir node
+     @pre No existeix cap node amb el mateix id que node a la xarxa
+     @post S'ha afegit node a la xarxa
+     */
+    private void inserir(NodeAixeta node) {
+        int v = _index.afegirNode(node);
+        _memoria.afegirNode(v);
+        _estat.guardar(v, node);
+        _espacial.afegir(node.id(), node.coordenades());
+    }
 
+    /** @brief Inserir canonada
+     @pre node1 i node2 són els nodes v1 i v2 de la xarxa, node1 no és un node terminal, no estan connectats i c no
+     és negativa
+     @post S'han connectat els nodes amb una canonada de capacitat c; si node2 era un origen, passa a ser una connexió
+     */
+    private void inserirCanonada(int v1, NodeAixeta node1, int v2, NodeAixeta node2, float c) {
         Canonada pipe;
         if(node2 instanceof Origen) {
             Connexio conn = new Connexio(node2.id(), node2.coordenades());
-            Node n = _xarxa.getNode(conn.id());
-            n.removeAttribute("aixeta");
-            n.setAttribute("aixeta", conn);
-
-            n.removeAttribute("ui.class");
-            n.setAttribute("ui.class", "connexio");
+            _index.substituirNode(v2, conn);
+            _estat.guardar(v2, conn);
 
             pipe = new Canonada(node1, conn, c);
         }
@@ -191,7 +319,80 @@ public class Xarxa {
             pipe = new Canonada(node1, node2, c);
         }
 
-        e.setAttribute("canonada", pipe);
+        _memoria.canonadaAfegida(_index.afegirCanonada(v1, v2, pipe));
+    }
+
+    /** @brief Canonada entre dos nodes
+     @pre ---
+     @post Retorna la canonada que va de node1 a node2, o null si no n'hi ha cap
+     */
+    public Canonada canonada(NodeAixeta node1, NodeAixeta node2) {
+        int v1 = _index.id(node1.id());
+        int v2 = _index.id(node2.id());
+        int e = (v1 >= 0 && v2 >= 0) ? _index.idCanonada(v1, v2) : -1;
+
+        return (e >= 0) ? _index.canonada(e) : null;
+    }
+
+    /** @brief Canonada que uneix dos nodes
+     @pre ---
+     @post Retorna la canonada que uneix node1 i node2, en qualsevol dels dos sentits, o null si no n'hi ha cap
+     */
+    public Canonada canonadaEntre(NodeAixeta node1, NodeAixeta node2) {
+        Canonada canonada = canonada(node1, node2);
+
+        return (canonada != null) ? canonada : canonada(node2, node1);
+    }
+
+    /** @brief Nodes per proximitat
+     @pre ---
+     @post Retorna tots els nodes de la xarxa ordenats segons la seva distància a c i, en cas d'empat, en ordre
+     alfabètic dels seus identificadors. Cada node es busca quan es demana
+     */
+    public Iterator<NodeAixeta> nodesPerProximitat(Coordenades c) {
+        PrimitiveIterator.OfInt cerca = _espacial.perDistancia(c);
+        return new Iterator<NodeAixeta>() {
+            @Override
+            public boolean hasNext() {
+                return cerca.hasNext();
+            }
+
+            @Override
+            public NodeAixeta next() {
+                return _index.node(cerca.nextInt()); //els punts tenen el mateix número que els nodes
+            }
+        };
+    }
+
+    /** @brief Nodes més propers
+     @pre k >= 0
+     @post Retorna els k nodes de la xarxa més propers a c (o tots, si n'hi ha menys), en l'ordre de nodesPerProximitat(c)
+     */
+    public List<NodeAixeta> nodesMesPropers(Coordenades c, int k) {
+        List<NodeAixeta> propers = new ArrayList<>();
+        for (int v : _espacial.mesPropers(c, k)) {
+            propers.add(_index.node(v));
+        }
+        return propers;
+    }
+
+    /** @brief Orígens alimentadors
+     @pre ---
+     @post Retorna tots els orígens des dels quals arriba aigua a node seguint les canonades, en l'ordre en què s'hi han
+     connectat
+     @exception "NoSuchElementException" si node no pertany a la xarxa
+     */
+    public List<Origen> origensAlimentadors(NodeAixeta node) {
+        int v = _index.id(node.id());
+        if(v < 0) {
+            throw new NoSuchElementException("El node no pertany a la xarxa");
+        }
+
+        List<Origen> origens = new ArrayList<>(_index.nombreAlimentadors(v));
+        for (int i = 0; i < _index.nombreAlimentadors(v); i++) {
+            origens.add((Origen) _index.node(_index.alimentador(v, i)));
+        }
+        return origens;
     }
 
     /** @brief Terminal associat
@@ -202,6 +403,14 @@ public class Xarxa {
         return _clients.get(IdClient);
     }
 
+    /** @brief Clients
+     @pre ---
+     @post Retorna, només per consultar-los, els clients abonats amb el terminal de cadascun
+     */
+    public Map<String, Terminal> clients() {
+        return Collections.unmodifiableMap(_clients);
+    }
+
     /** @brief Existeix Client
      @pre ---
      @post True si IdClient està abonat a la xarxa, false altrament
@@ -216,13 +425,19 @@ public class Xarxa {
      @exception "NoSuchElementException" si nodeTerminal no pertany a la xarxa
      */
     public boolean abonar(String idClient, Terminal nodeTerminal) {
-        if(_xarxa.getNode(nodeTerminal.id()) == null)
-        {
-            throw new NoSuchElementException("El node no pertany a la xarxa");
-        }
+        long segell = _bloqueig.writeLock();
+        try {
+            if(_index.id(nodeTerminal.id()) < 0)
+            {
+                throw new NoSuchElementException("El node no pertany a la xarxa");
+            }
 
-        //Igual a null, no existia client, si diferent retornaria el nodeTerminal
-        return _clients.putIfAbsent(idClient, nodeTerminal) == null;
+            //Igual a null, no existia client, si diferent retornaria el nodeTerminal
+            return _clients.putIfAbsent(idClient, nodeTerminal) == null;
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
     }
 
     /** @brief Cabal Abonat
@@ -241,22 +456,26 @@ public class Xarxa {
      @exception  "NoSuchElementException" si node no pertany a la xarxa
      */
     public void obrirAixeta(NodeAixeta node) {
-        if(_xarxa.getNode(node.id()) == null)
-        {
-            throw new NoSuchElementException("El node no pertany a la xarxa");
-        }
-
-        String identificadorAixeta;
+        long segell = _bloqueig.writeLock();
+        try {
+            int v = _index.id(node.id());
+            if(v < 0)
+            {
+                throw new NoSuchElementException("El node no pertany a la xarxa");
+            }
 
-        // Si l'aixeta canviarà d'estat, s'afegeix "sí" i es canvia
-        if (node.aixetaOberta()) {
-            identificadorAixeta = node.id() + "-" + "no";
-        } else {
-            identificadorAixeta = node.id() + "-" + "si";
-            node.obrirAixeta();
+            // Es guarda si l'aixeta canvia d'estat
+            boolean canviat = !node.aixetaOberta();
+            if (canviat) {
+                node.obrirAixeta();
+                _memoria.invalidarDemanda(v);
+                _estat.guardar(v, _index.node(v));
+            }
+            _diari.registrarAixeta(v, canviat);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
         }
-        _modifAixetes.push(identificadorAixeta);
-
     }
 
     /** @brief Tancar aixeta
@@ -265,53 +484,171 @@ public class Xarxa {
      @exception  "NoSuchElementException" si node no pertany a la xarxa
      */
     public void tancarAixeta(NodeAixeta node) {
-        if(_xarxa.getNode(node.id()) == null)
-        {
-            throw new NoSuchElementException("El node no pertany a la xarxa");
-        }
-
-        String identificadorAixeta;
+        long segell = _bloqueig.writeLock();
+        try {
+            int v = _index.id(node.id());
+            if(v < 0)
+            {
+                throw new NoSuchElementException("El node no pertany a la xarxa");
+            }
 
-        // Si l'aixeta canviarà d'estat, s'afegeix "sí" i es canvia
-        if (node.aixetaOberta()) {
-            identificadorAixeta = node.id() + "-" + "si";
-            node.tancarAixeta();
-        } else {
-            identificadorAixeta = node.id() + "-" + "no";
+            // Es guarda si l'aixeta canvia d'estat
+            boolean canviat = node.aixetaOberta();
+            if (canviat) {
+                node.tancarAixeta();
+                _memoria.invalidarDemanda(v);
+                _estat.guardar(v, _index.node(v));
+            }
+            _diari.registrarAixeta(v, canviat);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
         }
-        _modifAixetes.push(identificadorAixeta);
     }
 
     /** @brief Recular passos
      @pre nPassos >= 1
-     @post S'ha reculat nPassos passos en la seqüència d'operacions realitzades d'obrir i tancar aixetes
+     @post S'ha reculat nPassos passos en la seqüència d'operacions realitzades d'obrir i tancar aixetes. Els canvis de
+     demanda i cabal fets entremig es mantenen i ja no es podran desfer
      @exception  "IllegalArgumentException" si nPassos és negatiu o zero
      */
     public void recular(int nPassos) {
-        if(nPassos <= 0)
-        {
-            throw new IllegalArgumentException("El nombre de passos ha de ser 1 o superior");
+        long segell = _bloqueig.writeLock();
+        try {
+            if(nPassos <= 0)
+            {
+                throw new IllegalArgumentException("El nombre de passos ha de ser 1 o superior");
+            }
+
+            int nombrePassos = nPassos;
+            _diari.descartarRefer(); //reculat no es pot refer
+            // Mentre el nombre de passos > 0 i el diari no estigui buit
+            while (_diari.potDesfer() && nombrePassos > 0) {
+                long entrada = _diari.treure();
+
+                // Si aquella modificació ha creat un canvi d'estat, revertir-lo
+                // ex: aixeta oberta i es vol obrir, no hi ha hagut un canvi i, per tant, s'ignora aquest pas
+                if (DiariCanvis.tipus(entrada) == DiariCanvis.AIXETA) {
+                    aplicar(entrada, false);
+                    nombrePassos--;
+                }
+            }
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
+    }
+
+    /** @brief Desfer canvis
+     @pre k >= 0
+     @post S'han desfet els k darrers canvis d'aixetes, demandes i cabals (o tots, si n'hi ha menys); es poden refer
+     @exception "IllegalArgumentException" si k és negatiu
+     */
+    public void desfer(int k) {
+        long segell = _bloqueig.writeLock();
+        try {
+            if (k < 0) {
+                throw new IllegalArgumentException("El nombre de canvis no pot ser negatiu");
+            }
+
+            for (int i = 0; i < k && _diari.potDesfer(); i++) {
+                aplicar(_diari.desfer(), false);
+            }
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
         }
+    }
 
-        int nombrePassos = nPassos;
-        // Mentre el nombre de passos > 0 i la pila de modificacions no estigui buida
-        while (!_modifAixetes.empty() && nombrePassos > 0) {
-            // Desempilar
-            String contingut = _modifAixetes.pop();
-            String[] parts = contingut.split("-");
+    /** @brief Refer canvis
+     @pre k >= 0
+     @post S'han refet els k primers canvis desfets (o tots, si n'hi ha menys)
+     @exception "IllegalArgumentException" si k és negatiu
+     */
+    public void refer(int k) {
+        long segell = _bloqueig.writeLock();
+        try {
+            if (k < 0) {
+                throw new IllegalArgumentException("El nombre de canvis no pot ser negatiu");
+            }
 
-            // Si aquella modificació ha creat un canvi d'estat, revertir-lo
-            // ex: aixeta oberta i es vol obrir, no hi ha hagut un canvi i, per tant, s'ignora aquest pas
-            if (parts[1].equals("si")) {
-                Node n = _xarxa.getNode(parts[0]);
-                NodeAixeta aixeta = (NodeAixeta) n.getAttribute("aixeta");
-                aixeta.canviarEstat();
+            for (int i = 0; i < k && _diari.potRefer(); i++) {
+                aplicar(_diari.refer(), true);
             }
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
+    }
 
-            nombrePassos--;
+    /** @brief Marcar punt de control
+     @pre ---
+     @post El punt de control nom recorda l'estat actual de les aixetes, demandes i cabals
+     */
+    public void marcarPuntControl(String nom) {
+        long segell = _bloqueig.writeLock();
+        try {
+            _diari.marcar(nom);
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
         }
     }
 
+    /** @brief Tornar a un punt de control
+     @pre ---
+     @post Les aixetes, demandes i cabals tornen a estar com quan es va marcar el punt de control nom; només es desfan o
+     es refan els canvis que hi ha entremig
+     @exception "NoSuchElementException" si el punt de control no existeix o s'ha descartat en fer canvis nous
+     */
+    public void tornarAPuntControl(String nom) {
+        long segell = _bloqueig.writeLock();
+        try {
+            int p = _diari.posicio(nom);
+            if (p < 0) {
+                throw new NoSuchElementException("No existeix el punt de control " + nom);
+            }
+
+            while (_diari.posicio() > p) {
+                aplicar(_diari.desfer(), false);
+            }
+            while (_diari.posicio() < p) {
+                aplicar(_diari.refer(), true);
+            }
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
+    }
+
+    /** @brief Aplicar canvi
+     @pre entrada és una entrada del diari
+     @post S'ha refet el canvi d'entrada si endavant, o s'ha desfet altrament
+     */
+    private void aplicar(long entrada, boolean endavant) {
+        int v = DiariCanvis.node(entrada);
+        NodeAixeta node = _index.node(v);
+        switch (DiariCanvis.tipus(entrada)) {
+            case DiariCanvis.AIXETA:
+                if (DiariCanvis.canviat(entrada)) {
+                    node.canviarEstat();
+                    _memoria.invalidarDemanda(v);
+                }
+                break;
+            case DiariCanvis.DEMANDA:
+                ((Terminal) node).establirDemandaActual(endavant ? _diari.nou(entrada) : _diari.anterior(entrada));
+                _memoria.invalidarDemanda(v);
+                break;
+            default:
+                //un origen que ha passat a ser una connexió ja no té cabal
+                if (node instanceof Origen nodeOrigen) {
+                    nodeOrigen.establirCabal(endavant ? _diari.nou(entrada) : _diari.anterior(entrada));
+                    _memoria.invalidarCabal(v);
+                }
+        }
+        _estat.guardar(v, _index.node(v));
+    }
+
     /** @brief Establir cabal
      @pre nodeOrigen pertany a la xarxa i cabal >= 0
      @post El cabal de nodeOrigen és cabal
@@ -319,17 +656,27 @@ public class Xarxa {
      IllegalArgumentException si cabal és negatiu
      */
     public void establirCabal(Origen nodeOrigen, float cabal) {
-        if(_xarxa.getNode(nodeOrigen.id()) == null)
-        {
-            throw new NoSuchElementException("NodeOrigen no pertany a la xarxa");
-        }
+        long segell = _bloqueig.writeLock();
+        try {
+            if(_index.id(nodeOrigen.id()) < 0)
+            {
+                throw new NoSuchElementException("NodeOrigen no pertany a la xarxa");
+            }
 
-        if(cabal < 0)
-        {
-            throw new IllegalArgumentException("El cabal no pot ser negatiu");
-        }
+            if(cabal < 0)
+            {
+                throw new IllegalArgumentException("El cabal no pot ser negatiu");
+            }
 
-        nodeOrigen.establirCabal(cabal);
+            int v = _index.id(nodeOrigen.id());
+            _diari.registrarValor(DiariCanvis.CABAL, v, nodeOrigen.cabal(), cabal);
+            nodeOrigen.establirCabal(cabal);
+            _memoria.invalidarCabal(v);
+            _estat.guardar(v, _index.node(v)); //si nodeOrigen ja és una connexió el seu cabal no compta
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
     }
 
     /** @brief Establir demanda
@@ -339,17 +686,27 @@ public class Xarxa {
      IllegalArgumentException si demanda és negatiu
      */
     public void establirDemanda(Terminal nodeTerminal, float demanda) {
-        if(_xarxa.getNode(nodeTerminal.id()) == null)
-        {
-            throw new NoSuchElementException("NodeOrigen no pertany a la xarxa");
-        }
+        long segell = _bloqueig.writeLock();
+        try {
+            if(_index.id(nodeTerminal.id()) < 0)
+            {
+                throw new NoSuchElementException("NodeOrigen no pertany a la xarxa");
+            }
 
-        if(demanda < 0)
-        {
-            throw new IllegalArgumentException("La demanda no pot ser negativa");
-        }
+            if(demanda < 0)
+            {
+                throw new IllegalArgumentException("La demanda no pot ser negativa");
+            }
 
-        nodeTerminal.establirDemandaActual(demanda);
+            int v = _index.id(nodeTerminal.id());
+            _diari.registrarValor(DiariCanvis.DEMANDA, v, nodeTerminal.demandaActual(), demanda);
+            nodeTerminal.establirDemandaActual(demanda);
+            _memoria.invalidarDemanda(v);
+            _estat.guardar(v, _index.node(v));
+        }
+        finally {
+            _bloqueig.unlockWrite(segell);
+        }
     }
 
     /** @brief Cabal teòric
@@ -358,35 +715,27 @@ public class Xarxa {
      @exception "NoSuchElementException" si node no pertany a la xarxa
      */
     public float cabal(NodeAixeta node) {
-        if (_xarxa.getNode(node.id()) == null) {
-            throw new NoSuchElementException("Aquest node no pertany a la xarxa");
-        }
-
-        if(node instanceof Terminal terminal) {
-            if(terminal.demandaActual() == 0) {
-                return 0;
+        long segell = _bloqueig.tryOptimisticRead();
+        if (segell != 0) {
+            float cabal = _memoria.cabalGuardat(_index.id(node.id()));
+            if (!Float.isNaN(cabal) && _bloqueig.validate(segell)) {
+                return cabal;
             }
         }
 
-        if(node instanceof Origen origen) {
-            Node n = _xarxa.getNode(node.id());
-            if(n.getAttribute("ui.class").equals("origen")) {
-                if (origen.cabal() <= demanda(origen)) {
-                    return origen.cabal();
-                } else {
-                    return demanda(origen);
-                }
+        segell = _bloqueig.readLock();
+        _calcul.lock();
+        try {
+            int v = _index.id(node.id());
+            if (v < 0) {
+                throw new NoSuchElementException("Aquest node no pertany a la xarxa");
             }
+            return cabalNode(v);
         }
-
-        float cabalTotal = 0;
-        Iterator<Canonada> pipes = entrades(node);
-        while (pipes.hasNext()) {
-            Canonada pipe = pipes.next();
-            cabalTotal += calculCabalCanonada(pipe);
+        finally {
+            _calcul.unlock();
+            _bloqueig.unlockRead(segell);
         }
-
-        return cabalTotal;
     }
 
     /** @brief Cabal canonada
@@ -394,20 +743,27 @@ public class Xarxa {
      @post Retorna el cabal que circula per la canonada
      */
     public float calculCabalCanonada(Canonada pipe){
-        float demandaTotalCanonades = 0;
-        Iterator<Canonada> pipes = sortides(pipe.node1());
-        while(pipes.hasNext())
-        {//Suma de les capacitats de les canonades que entren al segon node de pipe
-            Canonada c = pipes.next();
-            demandaTotalCanonades += calculDemandaCanonada(c);
+        long segell = _bloqueig.tryOptimisticRead();
+        if (segell != 0) {
+            float cabal = _memoria.cabalCanonadaGuardat(idCanonada(pipe));
+            if (!Float.isNaN(cabal) && _bloqueig.validate(segell)) {
+                return cabal;
+            }
         }
 
-        float cabalNode = cabal(pipe.node1());
-        //Repartició cabal
-        float demandaCanonada = calculDemandaCanonada(pipe);
-        float cabalCanonada = (demandaCanonada / demandaTotalCanonades) * cabalNode;
-
-        return cabalCanonada;
+        segell = _bloqueig.readLock();
+        _calcul.lock();
+        try {
+            int e = idCanonada(pipe);
+            if (e < 0) {
+                throw new NoSuchElementException("La canonada no pertany a la xarxa");
+            }
+            return cabalCanonada(e);
+        }
+        finally {
+            _calcul.unlock();
+            _bloqueig.unlockRead(segell);
+        }
     }
 
     /** @brief Demanda teòrica
@@ -416,193 +772,291 @@ public class Xarxa {
      @exception "NoSuchElementException" si node no pertany a la xarxa
      */
     public float demanda(NodeAixeta node) {
-        if (_xarxa.getNode(node.id()) == null)
-        {
-            throw new NoSuchElementException("Aquest node no pertany a la xarxa");
+        long segell = _bloqueig.tryOptimisticRead();
+        if (segell != 0) {
+            float demanda = _memoria.demandaGuardada(_index.id(node.id()));
+            if (!Float.isNaN(demanda) && _bloqueig.validate(segell)) {
+                return demanda;
+            }
         }
 
-        if(!node.aixetaOberta())
-        {
-            return 0;
+        segell = _bloqueig.readLock();
+        _calcul.lock();
+        try {
+            int v = _index.id(node.id());
+            if (v < 0)
+            {
+                throw new NoSuchElementException("Aquest node no pertany a la xarxa");
+            }
+            return demandaNode(v);
         }
-
-        if(node instanceof Terminal terminal)
-        {
-            return terminal.demandaActual();
+        finally {
+            _calcul.unlock();
+            _bloqueig.unlockRead(segell);
         }
+    }
 
-        float demandaTotal = 0;
-        Iterator<Canonada> pipes = sortides(node);
-        while(pipes.hasNext())
-        {
-            Canonada pipe = pipes.next();
-            demandaTotal += calculDemandaCanonada(pipe);
+    /** @brief Avaluar cabals
+     @pre nodeOrigen pertany a la xarxa i la seva component connexa no té cicles
+     @post Retorna la demanda i el cabal teòrics de tots els nodes i canonades de la component connexa que conté
+     nodeOrigen, calculats en una sola passada
+     @exception "NoSuchElementException" si nodeOrigen no pertany a la xarxa
+     IllegalArgumentException si la component té cicles
+     */
+    public AvaluacioCabals avaluarCabals(Origen nodeOrigen) {
+        InstantaniaXarxa instantania;
+        int[] nodes;
+        long segell = _bloqueig.readLock();
+        _calcul.lock();
+        try {
+            int v = _index.id(nodeOrigen.id());
+            if (v < 0) {
+                throw new NoSuchElementException("Aquest node no pertany a la xarxa");
+            }
+            instantania = new InstantaniaXarxa(_index, _estat.instantania());
+            nodes = _index.component(v).nodes();
+        }
+        finally {
+            _calcul.unlock();
+            _bloqueig.unlockRead(segell);
         }
 
-        return demandaTotal;
+        return new AvaluacioCabals(instantania, nodes);
     }
 
-    /** @brief Demanda canonada
+    /** @brief Instantània
      @pre ---
-     @post Retorna la demanda que hi ha d'haver per la canonada
+     @post Retorna l'estat actual de la xarxa, de només lectura, que no canvia encara que després es modifiqui la
+     xarxa i es pot consultar des d'altres fils. Només costa una còpia de la taula de trossos de l'estat dels nodes
      */
-    private float calculDemandaCanonada(Canonada pipe) {
-        float capacitatCanonadesTotal = 0;
-        Iterator<Canonada> pipes = entrades(pipe.node2());
-        while(pipes.hasNext())
-        {//Suma de les capacitats de les canonades que entren al segon node de pipe
-            Canonada c = pipes.next();
-            capacitatCanonadesTotal += c.capacitat();
-        }
-
-        float demandaNode = demanda(pipe.node2());
-        //Repartició demanda
-        float demandaCanonada = (pipe.capacitat() / capacitatCanonadesTotal) * demandaNode;
-
-        if(demandaCanonada > pipe.capacitat()) {
-            return pipe.capacitat();
-        }
-        else {
-            return demandaCanonada;
-        }
+    public InstantaniaXarxa instantania() {
+        //fer la instantània canvia la generació de l'estat i pot reconstruir les taules CSR: cap altre càlcul alhora
+        return consultar(() -> new InstantaniaXarxa(_index, _estat.instantania()));
     }
 
-    /** @brief Dibuixar
+    /** @brief Identificador enter d'una canonada
      @pre ---
-     @post Dibuixa la xarxa de distribució d'aigua en la qual pertany nodeOrigen
+     @post Retorna l'identificador enter de pipe, o -1 si no pertany a la xarxa
      */
-    public void dibuixar(Origen nodeOrigen) {
-        Graph subGraf = crearSubGraf(nodeOrigen);
-        SpriteManager sman = new SpriteManager(subGraf);
+    private int idCanonada(Canonada pipe) {
+        int v1 = _index.id(pipe.node1().id());
+        int v2 = _index.id(pipe.node2().id());
 
-        for(Node node : subGraf.nodes().toList()){
-            NodeAixeta nodeAixeta = node(node.getId()); //recuperem info del node
-            node.setAttribute("x", Math.toRadians(nodeAixeta.coordenades().getAlongitud()));
-            node.setAttribute("y", Math.toRadians(nodeAixeta.coordenades().getAlatitud()));
+        return (v1 >= 0 && v2 >= 0) ? _index.idCanonada(v1, v2) : -1;
+    }
 
-            enllaçarSprites(sman,node);
-            //tanquem node graficament
-            if(!nodeAixeta.aixetaOberta()) {
-                node.removeAttribute("ui.class");
-                node.setAttribute("ui.class", "tancat");
+    /** @brief Cabal d'un node de l'índex
+     @pre v pertany a l'índex de la xarxa
+     @post Retorna el cabal teòric al node v, calculant-lo només si no està guardat a la memòria
+     */
+    private float cabalNode(int v) {
+        if (!_memoria.cabalValid(v)) {
+            //es calculen en postordre els ascendents de v que no tenen el cabal guardat
+            RecorregutXarxa recorregut = _recorregutCabal;
+            recorregut.recorrerEntrades(v);
+            while (!recorregut.buit()) {
+                int n = recorregut.actual();
+                int e = calculCabalIndependent(n) ? -1 : recorregut.seguentCanonada();
+                if (e < 0) {
+                    demandaNode(n); //el cabal guardat d'un node sempre té la demanda vàlida
+                    _memoria.guardarCabal(n, calculCabal(n));
+                    recorregut.pujar();
+                }
+                else {
+                    int pare = recorregut.extrem(e);
+                    if (!_memoria.cabalValid(pare) && !recorregut.visitat(pare)) {
+                        recorregut.baixar(pare);
+                    }
+                }
             }
-
         }
 
-        subGraf.setAttribute("ui.quality");
-        subGraf.setAttribute("ui.antialias");
-        subGraf.setAttribute("ui.stylesheet", "url('file:src/estil.css')");
-        subGraf.display(true);
+        return _memoria.cabal(v);
     }
 
-    /** @brief Enllaç d'sprites
-     @pre ---
-     @post Crea enllaços entre atributs del nodeAixeta i sprites
+    /** @brief Càlcul del cabal independent
+     @pre v pertany a l'índex de la xarxa
+     @post Diu si el cabal del node v es calcula sense el de les canonades que hi entren (orígens i terminals sense
+     demanda)
      */
-    private void enllaçarSprites(SpriteManager sman, Node node) {
-        NodeAixeta nodeAixeta = node(node.getId());
-        //enllaç coordenades
-        Sprite spriteCoordenada = sman.addSprite(nodeAixeta.id() + "Cord");
-        spriteCoordenada.setAttribute("ui.label",
-                Math.round(nodeAixeta.coordenades().getAlatitud() * 100.0)/100.0 + ":" +
-                        Math.round(nodeAixeta.coordenades().getAlongitud() * 100.0)/100.0);
-        spriteCoordenada.setPosition(0, 0.03, 0);
-        spriteCoordenada.attachToNode(nodeAixeta.id());
+    private boolean calculCabalIndependent(int v) {
+        byte tipus = _index.tipus(v);
 
-        //enllaç demandes terminals
-        if(nodeAixeta instanceof Terminal nodeTerminal) {
-            Sprite spriteTerminal = sman.addSprite(nodeAixeta.id() + "Terminal");
-            spriteTerminal.setAttribute("ui.label",cabal(nodeAixeta) + "/" + nodeTerminal.demandaActual());
-            spriteTerminal.setPosition(0, -0.06, 0);
-            spriteTerminal.setAttribute("ui.class", "terminal");
-            spriteTerminal.attachToNode(nodeAixeta.id());
-        }
+        return tipus == IndexXarxa.ORIGEN
+                || (tipus == IndexXarxa.TERMINAL && ((Terminal) _index.node(v)).demandaActual() == 0);
+    }
 
-        //enllaç cabal canonades
-        for (Edge edge : node.edges().toList()) {
+    /** @brief Càlcul del cabal d'un node
+     @pre v pertany a l'índex de la xarxa i, si calen, els cabals dels nodes d'on li arriben canonades són vàlids
+     @post Retorna el cabal teòric al node v a partir del cabal de les canonades que hi entren
+     */
+    private float calculCabal(int v) {
+        byte tipus = _index.tipus(v);
 
-            Canonada canonada = (Canonada) edge.getAttribute("canonada");
-            if(canonada != null) {
-                String cabalReal = String.valueOf(Math.round(calculCabalCanonada(canonada)* 100.0)/100.0);
-                Sprite spriteCabal = sman.addSprite(edge.getId() + "Canonada");
-                spriteCabal.setAttribute("ui.label",cabalReal + "/" + canonada.capacitat());
-                spriteCabal.setPosition(0.5);
-                spriteCabal.setAttribute("ui.class", "canonada");
-                spriteCabal.attachToEdge(edge.getId());
+        if(tipus == IndexXarxa.TERMINAL) {
+            if(((Terminal) _index.node(v)).demandaActual() == 0) {
+                return 0;
             }
-            else throw new IllegalArgumentException("Canonada no trobada per dibuixar");
         }
-    }
 
-    /** @brief Crear SubGraf
-     @pre nodeXarxa pertany a la xarxa
-     @post retorna un subgraf en el qual nodeXarxa pertany
-     */
-    public Graph crearSubGraf(Origen nodeXarxa) {
-        Graph subGraph = new SingleGraph("Subgraf");
-        Set<Node> visitats = new HashSet<>();
+        if(tipus == IndexXarxa.ORIGEN) {
+            return MemoriaCabals.cabalOrigen(((Origen) _index.node(v)).cabal(), demandaNode(v));
+        }
 
-        Node n = _xarxa.getNode(nodeXarxa.id());
-        // Iniciem la cerca en profunditat des del nodeXarxa
-        copiaGraf(n, visitats, subGraph);
+        int[] seguents = _index.seguentsEntrades();
+        float cabalTotal = 0;
+        for (int e = _index.primeresEntrades()[v]; e >= 0; e = seguents[e]) {
+            cabalTotal += repartirCabal(e);
+        }
 
-        return subGraph;
+        return cabalTotal;
     }
 
-    /** @brief Copiar graf
-     @pre ---
-     @post Actualitza el subGraph en el qual nomès hi ha les connexions i nodes del graf al qual pertany node
+    /** @brief Cabal d'una canonada de l'índex
+     @pre e pertany a l'índex de la xarxa
+     @post Retorna el cabal que circula per la canonada e
      */
-    private void copiaGraf(Node node, Set<Node> visitats, Graph subGraph) {
-        visitats.add(node);
-        Node n = subGraph.addNode(node.getId());
+    private float cabalCanonada(int e) {
+        cabalNode(_index.origens()[e]); //amb el cabal del node de dalt també són vàlides les demandes de sota
 
-        Node nodeXarxa = _xarxa.getNode(node.getId());
-        NodeAixeta nodeAixeta = (NodeAixeta) nodeXarxa.getAttribute("aixeta");
+        return repartirCabal(e);
+    }
+
+    /** @brief Repartició del cabal
+     @pre e pertany a l'índex de la xarxa i el cabal del node d'on surt és vàlid
+     @post Retorna la part del cabal del node d'on surt e que circula per e
+     */
+    private float repartirCabal(int e) {
+        int v1 = _index.origens()[e];
 
-        if (nodeAixeta instanceof Connexio nodeConnexio) {
-            n.setAttribute("aixeta", nodeConnexio);
-            n.setAttribute("ui.class", "connexio");
+        return MemoriaCabals.repartirCabal(repartirDemanda(e), _memoria.demandaSortides(v1), _memoria.cabal(v1));
+    }
 
+    /** @brief Demanda d'un node de l'índex
+     @pre v pertany a l'índex de la xarxa
+     @post Retorna la demanda teòrica al node v, calculant-la només si no està guardada a la memòria
+     */
+    private float demandaNode(int v) {
+        if (!_memoria.demandaValida(v)) {
+            //es calculen en postordre els descendents de v que no tenen la demanda guardada
+            RecorregutXarxa recorregut = _recorregutDemanda;
+            recorregut.recorrerSortides(v);
+            while (!recorregut.buit()) {
+                int e = recorregut.seguentCanonada();
+                if (e < 0) {
+                    calculDemanda(recorregut.actual());
+                    recorregut.pujar();
+                }
+                else {
+                    int fill = recorregut.extrem(e);
+                    if (!_memoria.demandaValida(fill) && !recorregut.visitat(fill)) {
+                        recorregut.baixar(fill);
+                    }
+                }
+            }
         }
-        else if(nodeAixeta instanceof Origen nodeOrigen) {
-            n.setAttribute("aixeta", nodeOrigen);
-            n.setAttribute("ui.class", "origen");
 
-        } else if (nodeAixeta instanceof Terminal nodeTerminal) {
-            n.setAttribute("aixeta", nodeTerminal);
-            n.setAttribute("ui.class", "terminal");
+        return _memoria.demanda(v);
+    }
 
+    /** @brief Càlcul de la demanda d'un node
+     @pre v pertany a l'índex de la xarxa i les demandes dels nodes on arriben les canonades que en surten són vàlides
+     @post Guarda a la memòria la demanda teòrica al node v i la de les canonades que en surten
+     */
+    private void calculDemanda(int v) {
+        int[] seguents = _index.seguentsSortides();
+        float demandaSortides = 0;
+        for (int e = _index.primeresSortides()[v]; e >= 0; e = seguents[e]) {
+            demandaSortides += repartirDemanda(e);
         }
 
-        n.setAttribute("ui.label", node.getId());
+        NodeAixeta node = _index.node(v);
+        float demandaActual = (node instanceof Terminal nodeTerminal) ? nodeTerminal.demandaActual() : 0;
+        _memoria.guardarDemanda(v, MemoriaCabals.demandaNode(node.aixetaOberta(), _index.tipus(v), demandaActual,
+                demandaSortides), demandaSortides);
+    }
 
-        Iterator<Edge> iterator = node.edges().iterator();
-        while (iterator.hasNext()) {
-            Edge edge = iterator.next();
-            Node adjacent = edge.getOpposite(node);
+    /** @brief Repartició de la demanda
+     @pre e pertany a l'índex de la xarxa i la demanda del node on arriba és vàlida
+     @post Retorna la part de la demanda del node on arriba e que ha de passar per e
+     */
+    private float repartirDemanda(int e) {
+        float capacitat = _index.capacitats()[e];
+        int v2 = _index.destins()[e];
 
-            if (!visitats.contains(adjacent)) {
-                copiaGraf(adjacent, visitats, subGraph);
-            }
+        return MemoriaCabals.repartirDemanda(capacitat, _memoria.capacitatEntrades(v2), _memoria.demanda(v2));
+    }
 
-            // Verifiquem si els dos extrems de l'aresta estan al subgraf abans d'afegir l'aresta
-            if (subGraph.getNode(node.getId()) != null && subGraph.getNode(adjacent.getId()) != null) {
-                // Afegim l'aresta al subgraf
-                if (subGraph.getEdge(edge.getId()) == null) {
-                    Node nodeInicial = edge.getSourceNode();
-                    if (nodeInicial.equals(node)) {
-                        // Si el node d'origen es el mateix que el node actual, mantenim la mateixa direccio
-                        subGraph.addEdge(edge.getId(), node.getId(), adjacent.getId(), true);
-                    } else {
-                        subGraph.addEdge(edge.getId(), adjacent.getId(), node.getId(), true);
-                    }
+    /** @brief Dibuixar
+     @pre ---
+     @post Dibuixa la xarxa de distribució d'aigua en la qual pertany nodeOrigen
+     */
+    public void dibuixar(Origen nodeOrigen) {
+        VisorGrafic.mostrar(dibuix(nodeOrigen));
+    }
 
-                    if (edge.hasAttribute("canonada")) {
-                        subGraph.getEdge(edge.getId()).setAttribute("canonada", edge.getAttribute("canonada"));
-                    }
-                }
+    /** @brief Dibuix
+     @pre nodeOrigen pertany a la xarxa
+     @post Retorna, sense mostrar-lo, el dibuix de la component connexa on pertany nodeOrigen: cada node amb la seva
+     classe (els tancats com a tancat), els terminals amb cabal/demanda i cada canonada amb cabal/capacitat, tot
+     d'un mateix estat de la xarxa
+     @exception "NoSuchElementException" si nodeOrigen no pertany a la xarxa
+     IllegalArgumentException si la component té cicles
+     */
+    public DibuixXarxa dibuix(Origen nodeOrigen) {
+        InstantaniaXarxa instantania;
+        int[] nodes;
+        int[] canonades;
+        long segell = _bloqueig.readLock();
+        _calcul.lock();
+        try {
+            int v = _index.id(nodeOrigen.id());
+            if (v < 0) {
+                throw new NoSuchElementException("Aquest node no pertany a la xarxa");
+            }
+            instantania = new InstantaniaXarxa(_index, _estat.instantania());
+            ComponentXarxa component = _index.component(v);
+            nodes = component.nodes();
+            canonades = component.canonades();
+        }
+        finally {
+            _calcul.unlock();
+            _bloqueig.unlockRead(segell);
+        }
+
+        //a partir d'aquí només es fa servir la instantània
+        DibuixXarxa dibuix = new DibuixXarxa("Subgraf");
+        AvaluacioCabals cabals = new AvaluacioCabals(instantania, nodes);
+        for (int v : nodes) {
+            NodeAixeta nodeAixeta = instantania.node(v);
+            String classe = instantania.aixetaOberta(v) ? classeNode(instantania.tipus(v)) : "tancat";
+            String etiqueta = null;
+            if (instantania.tipus(v) == IndexXarxa.TERMINAL) {
+                etiqueta = cabals.cabal(nodeAixeta) + "/" + instantania.demandaActual(v);
             }
+            dibuix.afegirNode(nodeAixeta, classe, etiqueta);
+        }
+
+        for (int e : canonades) {
+            Canonada canonada = instantania.canonada(e);
+            String cabalReal = String.valueOf(Math.round(cabals.cabal(canonada)* 100.0)/100.0);
+            dibuix.afegirCanonada(canonada, cabalReal + "/" + canonada.capacitat(), null);
+        }
+
+        return dibuix;
+    }
+
+    /** @brief Classe d'un node
+     @pre tipus és IndexXarxa.ORIGEN, IndexXarxa.CONNEXIO o IndexXarxa.TERMINAL
+     @post Retorna la classe de l'estil (ui.class) dels nodes de tipus tipus
+     */
+    static String classeNode(byte tipus) {
+        if (tipus == IndexXarxa.ORIGEN) {
+            return "origen";
+        }
+        else if (tipus == IndexXarxa.TERMINAL) {
+            return "terminal";
         }
+        return "connexio";
     }
-}
\ No newline at end of file
+}
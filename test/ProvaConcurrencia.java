@@ -0,0 +1,328 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/** @file ProvaConcurrencia.java
+ @brief Classe ProvaConcurrencia
+ */
+
+/** @class ProvaConcurrencia
+ @brief Prova d'estrès de Xarxa amb lectors concurrents i un sol fil que la modifica
+
+ Es fa una xarxa en arbre (un origen, unes quantes connexions i terminals abonats) i una seqüència de passos
+ aleatoris, però sempre la mateixa per a una llavor: obrir o tancar l'aixeta d'una connexió o d'un terminal, o
+ canviar la demanda d'un terminal. Primer s'apliquen els passos a una xarxa bessona, d'un en un, i després de cada pas
+ es guarden el cabal i la demanda de tots els terminals. Després s'apliquen els mateixos passos a una altra xarxa des
+ d'un sol fil, que de tant en tant també hi afegeix una component nova (i per tant es reconstrueixen les taules de
+ l'índex), mentre diversos fils hi llegeixen sense parar: cabal(), cabalAbonat(), demanda(), dibuix(), instantania(),
+ i les consultes de GestorXarxes esArbre(), teCicles(), dibuixFluxMaxim() i aixetesTancar().
+
+ Cada valor llegit ha de ser el d'algun estat de la seqüència, i cada lector no pot tornar enrere: si ha vist l'estat
+ j, les lectures següents han de ser de l'estat j o d'un de posterior. Els dibuixos i les instantànies han de tenir els
+ cabals de tots els terminals d'un mateix estat, l'arbre no pot deixar de ser-ho, el flux màxim no canvia (només depèn
+ de les capacitats) i cap consulta no pot fallar. Al final, tots els valors han de ser els de l'últim estat. Es compila amb les classes de src i s'executa des de l'arrel del projecte:
+
+     javac -encoding UTF-8 -cp "lib/*" -d out/prova src/*.java test/ProvaConcurrencia.java
+     java -cp "out/prova:lib/*" ProvaConcurrencia [lectors] [passos] [llavor]
+
+ Acaba amb codi 1 si hi ha alguna lectura incorrecta.
+ */
+
+public class ProvaConcurrencia {
+
+    private static final int CONNEXIONS = 4;
+    private static final int TERMINALS_PER_CONNEXIO = 10;
+    private static final int TERMINALS = CONNEXIONS * TERMINALS_PER_CONNEXIO;
+    private static final int ERRORS_MOSTRATS = 5;
+    private static final int PASSOS_PER_COMPONENT = 200; //cada quants passos s'afegeix una component nova
+    private static final int CONSULTES = 8;
+
+    //Atributs
+    private final Xarxa _xarxa;
+    private final Origen _origen;
+    private final Connexio[] _connexions;
+    private final Terminal[] _terminals;
+
+    /** @brief Crea una ProvaConcurrencia
+     @pre ---
+     @post Crea la xarxa de la prova: un origen que alimenta CONNEXIONS connexions, cadascuna amb
+     TERMINALS_PER_CONNEXIO terminals abonats, amb capacitats diferents perquè la repartició no sigui trivial
+     */
+    private ProvaConcurrencia() {
+        _xarxa = new Xarxa();
+        _connexions = new Connexio[CONNEXIONS];
+        _terminals = new Terminal[TERMINALS];
+
+        Coordenades c = new Coordenades(0.0, 0.0);
+        Origen origen = new Origen("origen", c);
+        _origen = origen;
+        _xarxa.afegir(origen);
+        for (int i = 0; i < CONNEXIONS; i++) {
+            _connexions[i] = new Connexio("connexio" + i, c);
+            _xarxa.afegir(_connexions[i]);
+            _xarxa.connectarAmbCanonada(origen, _connexions[i], 300 + 50 * i);
+            for (int j = 0; j < TERMINALS_PER_CONNEXIO; j++) {
+                int k = i * TERMINALS_PER_CONNEXIO + j;
+                _terminals[k] = new Terminal("terminal" + k, c, 100);
+                _xarxa.afegir(_terminals[k]);
+                _xarxa.connectarAmbCanonada(_connexions[i], _terminals[k], 20 + k);
+                _xarxa.establirDemanda(_terminals[k], 10 + k);
+                _xarxa.abonar("client" + k, _terminals[k]);
+            }
+        }
+        //l'origen no dona prou aigua per a tota la demanda
+        _xarxa.establirCabal(origen, 500);
+    }
+
+    /** @brief Pas
+     @pre pas >= 0
+     @post S'ha aplicat a la xarxa el pas pas de la seqüència de llavor llavor
+     */
+    private void aplicar(long llavor, int pas) {
+        Random aleatori = new Random(llavor * 1_000_003L + pas);
+        int tipus = aleatori.nextInt(3);
+        if (tipus == 0) {
+            Connexio connexio = _connexions[aleatori.nextInt(CONNEXIONS)];
+            if (connexio.aixetaOberta()) {
+                _xarxa.tancarAixeta(connexio);
+            }
+            else {
+                _xarxa.obrirAixeta(connexio);
+            }
+        }
+        else if (tipus == 1) {
+            Terminal terminal = _terminals[aleatori.nextInt(TERMINALS)];
+            if (terminal.aixetaOberta()) {
+                _xarxa.tancarAixeta(terminal);
+            }
+            else {
+                _xarxa.obrirAixeta(terminal);
+            }
+        }
+        else {
+            _xarxa.establirDemanda(_terminals[aleatori.nextInt(TERMINALS)], aleatori.nextInt(100));
+        }
+    }
+
+    /** @brief Component nova
+     @pre No s'ha afegit cap component amb número i
+     @post S'ha afegit a la xarxa una component separada de la resta (un origen que alimenta un terminal) i en retorna
+     l'origen
+     */
+    private Origen afegirComponent(int i) {
+        Coordenades c = new Coordenades(0.0, 0.0);
+        Origen origen = new Origen("origen_extra" + i, c);
+        Terminal terminal = new Terminal("terminal_extra" + i, c, 100);
+        _xarxa.afegir(origen);
+        _xarxa.afegir(terminal);
+        _xarxa.connectarAmbCanonada(origen, terminal, 10);
+        return origen;
+    }
+
+    /** @brief Estat d'una lectura
+     @pre valors té un valor per a cada terminal, o NaN si no s'ha llegit
+     @post Retorna el primer estat j, entre darrer i nPassos, en què tots els valors llegits són els de esperats[j], o -1
+     si no n'hi ha cap
+     */
+    private static int estat(float[][] esperats, float[] valors, int darrer, int nPassos) {
+        for (int j = darrer; j <= nPassos; j++) {
+            boolean iguals = true;
+            for (int k = 0; k < TERMINALS && iguals; k++) {
+                iguals = Float.isNaN(valors[k])
+                        || Float.floatToIntBits(esperats[j][k]) == Float.floatToIntBits(valors[k]);
+            }
+            if (iguals) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    /** @brief Consulta de tots els terminals
+     @pre 3 <= consulta < CONSULTES
+     @post Fa la consulta consulta, escriu a valors el cabal de cada terminal que s'hi ha llegit (NaN si no n'hi ha) i
+     retorna null si el resultat és correcte o la descripció de l'error altrament
+     */
+    private String consultar(int consulta, int k, float fluxMaxim, Origen extra, float[] valors) {
+        Arrays.fill(valors, Float.NaN);
+        if (consulta == 3) {
+            DibuixXarxa dibuix = _xarxa.dibuix(_origen);
+            if (dibuix.nombreNodes() != 1 + CONNEXIONS + TERMINALS) {
+                return "el dibuix té " + dibuix.nombreNodes() + " nodes";
+            }
+            for (int i = 0; i < dibuix.nombreNodes(); i++) {
+                String id = dibuix.node(i).id();
+                if (id.startsWith("terminal")) {
+                    String etiqueta = dibuix.etiquetaNode(i);
+                    valors[Integer.parseInt(id.substring(8))] =
+                            Float.parseFloat(etiqueta.substring(0, etiqueta.indexOf('/')));
+                }
+            }
+        }
+        else if (consulta == 4) {
+            InstantaniaXarxa instantania = _xarxa.instantania();
+            for (int t = 0; t < TERMINALS; t++) {
+                valors[t] = instantania.cabal(_terminals[t]);
+            }
+        }
+        else if (consulta == 5) {
+            if (!GestorXarxes.esArbre(_xarxa, _origen) || GestorXarxes.teCicles(_xarxa, _origen)) {
+                return "la xarxa ha deixat de ser un arbre";
+            }
+            if (extra != null && !GestorXarxes.esArbre(_xarxa, extra)) {
+                return "la component " + extra.id() + " no és un arbre";
+            }
+        }
+        else if (consulta == 6) {
+            float valor = GestorXarxes.dibuixFluxMaxim(_xarxa, _origen).total();
+            if (valor != fluxMaxim) {
+                return "flux màxim " + valor + " en lloc de " + fluxMaxim;
+            }
+        }
+        else {
+            Set<NodeAixeta> aixetes = GestorXarxes.aixetesTancar(_xarxa, Map.of(_terminals[k], false));
+            aixetes.remove(_connexions[k / TERMINALS_PER_CONNEXIO]);
+            if (!aixetes.isEmpty()) {
+                return "aixetes a tancar de terminal" + k + ": " + aixetes;
+            }
+        }
+        return null;
+    }
+
+    /** @brief Estat
+     @pre ---
+     @post Ha guardat a cabals i demandes el cabal i la demanda actuals de cada terminal
+     */
+    private void estat(float[] cabals, float[] demandes) {
+        for (int k = 0; k < TERMINALS; k++) {
+            cabals[k] = _xarxa.cabal(_terminals[k]);
+            demandes[k] = _xarxa.demanda(_terminals[k]);
+        }
+    }
+
+    /** @brief Programa principal
+     @pre ---
+     @post Ha fet la prova amb els lectors i els passos indicats (per defecte, 4 i 20000) i ha escrit el resultat
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int nLectors = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        int nPassos = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+        long llavor = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+
+        //repetició seqüencial: l'estat esperat després de cada pas
+        ProvaConcurrencia bessona = new ProvaConcurrencia();
+        float[][] cabals = new float[nPassos + 1][TERMINALS];
+        float[][] demandes = new float[nPassos + 1][TERMINALS];
+        bessona.estat(cabals[0], demandes[0]);
+        for (int pas = 1; pas <= nPassos; pas++) {
+            bessona.aplicar(llavor, pas);
+            bessona.estat(cabals[pas], demandes[pas]);
+        }
+
+        float fluxMaxim = GestorXarxes.calcularFluxMaxim(bessona._xarxa, bessona._origen).valor();
+
+        ProvaConcurrencia prova = new ProvaConcurrencia();
+        AtomicReference<Origen> extra = new AtomicReference<>(); //darrera component afegida
+        AtomicBoolean acabat = new AtomicBoolean(false);
+        AtomicLong lectures = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        Thread[] lectors = new Thread[nLectors];
+        for (int i = 0; i < nLectors; i++) {
+            long llavorLector = llavor + i;
+            lectors[i] = new Thread(() -> {
+                Random aleatori = new Random(llavorLector);
+                float[] valors = new float[TERMINALS];
+                int darrer = 0; //darrer estat vist
+                long n = 0;
+                while (!acabat.get()) {
+                    int k = aleatori.nextInt(TERMINALS);
+                    int consulta = aleatori.nextInt(CONSULTES);
+                    n++;
+                    if (consulta >= 3) {
+                        String error;
+                        try {
+                            error = prova.consultar(consulta, k, fluxMaxim, extra.get(), valors);
+                        }
+                        catch (RuntimeException e) {
+                            error = "consulta " + consulta + ": " + e;
+                        }
+                        if (error == null) {
+                            int j = estat(cabals, valors, darrer, nPassos);
+                            if (j < 0) {
+                                error = "cabals de la consulta " + consulta + " " + Arrays.toString(valors)
+                                        + " després de l'estat " + darrer;
+                            }
+                            else {
+                                darrer = j;
+                            }
+                        }
+                        if (error != null && errors.incrementAndGet() <= ERRORS_MOSTRATS) {
+                            System.out.println("Consulta incorrecta: " + error);
+                        }
+                        continue;
+                    }
+
+                    float valor;
+                    float[][] esperats;
+                    if (consulta == 0) {
+                        valor = prova._xarxa.cabal(prova._terminals[k]);
+                        esperats = cabals;
+                    }
+                    else if (consulta == 1) {
+                        valor = prova._xarxa.cabalAbonat("client" + k);
+                        esperats = cabals;
+                    }
+                    else {
+                        valor = prova._xarxa.demanda(prova._terminals[k]);
+                        esperats = demandes;
+                    }
+
+                    int j = darrer;
+                    while (j <= nPassos && Float.floatToIntBits(esperats[j][k]) != Float.floatToIntBits(valor)) {
+                        j++;
+                    }
+                    if (j > nPassos) {
+                        if (errors.incrementAndGet() <= ERRORS_MOSTRATS) {
+                            System.out.println("Lectura incorrecta: terminal" + k + " " + valor + " després de l'estat "
+                                    + darrer);
+                        }
+                    }
+                    else {
+                        darrer = j;
+                    }
+                }
+                lectures.addAndGet(n);
+            }, "lector-" + i);
+            lectors[i].start();
+        }
+
+        long inici = System.nanoTime();
+        for (int pas = 1; pas <= nPassos; pas++) {
+            prova.aplicar(llavor, pas);
+            if (pas % PASSOS_PER_COMPONENT == 0) {
+                extra.set(prova.afegirComponent(pas / PASSOS_PER_COMPONENT));
+            }
+            if (pas % 50 == 0) {
+                Thread.yield(); //perquè els lectors també vegin estats intermedis amb pocs processadors
+            }
+        }
+        long temps = (System.nanoTime() - inici) / 1_000_000;
+        acabat.set(true);
+        for (Thread lector : lectors) {
+            lector.join();
+        }
+
+        float[] cabalsFinals = new float[TERMINALS];
+        float[] demandesFinals = new float[TERMINALS];
+        prova.estat(cabalsFinals, demandesFinals);
+        if (!Arrays.equals(cabalsFinals, cabals[nPassos]) || !Arrays.equals(demandesFinals, demandes[nPassos])) {
+            errors.incrementAndGet();
+            System.out.println("L'estat final no és el de la repetició seqüencial");
+        }
+
+        System.out.println(nLectors + " lectors, " + nPassos + " passos en " + temps + " ms, " + lectures.get()
+                + " lectures, " + errors.get() + " errors");
+        if (errors.get() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.*;
+
+/** @file ProvaOrdreTopologic.java
+ @brief Classe ProvaOrdreTopologic
+ */
+
+/** @class ProvaOrdreTopologic
+ @brief Prova del manteniment incremental de cicles de Xarxa quan es construeix d'aigües avall cap amunt
+
+ Primer es fa una cadena molt llarga afegint les canonades de baix a dalt, de manera que cada canonada nova trenca
+ l'ordre topològic de tots els nodes que ja hi ha, i es mesura quant triga. No ha de tenir cicles fins que s'hi afegeix
+ una canonada que en tanca un.
+
+ Després es fan xarxes aleatòries (la mateixa per a una llavor) amb canonades afegides majoritàriament de baix a dalt i
+ alguna que tanca un cicle, i després de cada canonada es pregunta de tant en tant si la component d'un origen té
+ cicles. La resposta es compara amb l'algorisme de Kahn sobre la component sencera. Es compila amb les classes de src
+ i s'executa des de l'arrel del projecte:
+
+     javac -encoding UTF-8 -cp "lib/*" -d out/prova src/*.java test/ProvaOrdreTopologic.java
+     java -cp "out/prova:lib/*" ProvaOrdreTopologic [nodes cadena] [llavor]
+
+ Acaba amb codi 1 si alguna resposta és incorrecta.
+ */
+
+public class ProvaOrdreTopologic {
+
+    private static final int XARXES_ALEATORIES = 10;
+    private static final int NODES_ALEATORIS = 4000;
+    private static final int CANONADES_ALEATORIES = 6000;
+    private static final double PROBABILITAT_CICLE = 0.0005;
+    private static final double PROBABILITAT_CONSULTA = 0.01;
+    private static final int ERRORS_MOSTRATS = 5;
+
+    private static int _errors = 0;
+
+    /** @brief Programa principal
+     @pre ---
+     @post Fa les dues proves i acaba amb codi 1 si alguna resposta és incorrecta
+     */
+    public static void main(String[] args) {
+        int nodesCadena = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        long llavor = (args.length > 1) ? Long.parseLong(args[1]) : 1;
+
+        provaCadena(nodesCadena);
+        provaAleatoria(new Random(llavor));
+
+        System.out.println("Errors: " + _errors);
+        if (_errors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** @brief Prova de la cadena inversa
+     @pre n >= 3
+     @post Construeix una cadena de n nodes de baix a dalt, comprova que no té cicles i que en té després de tancar-ne un
+     */
+    private static void provaCadena(int n) {
+        Coordenades c = new Coordenades(0.0, 0.0);
+        Xarxa xarxa = new Xarxa();
+        NodeAixeta[] nodes = new NodeAixeta[n];
+        Terminal terminal = new Terminal("terminal", c, 10);
+        xarxa.afegir(terminal);
+        nodes[0] = terminal;
+        for (int i = 1; i < n - 1; i++) {
+            Connexio connexio = new Connexio("connexio" + i, c);
+            xarxa.afegir(connexio);
+            nodes[i] = connexio;
+        }
+        Origen origen = new Origen("origen", c);
+        xarxa.afegir(origen);
+        nodes[n - 1] = origen;
+
+        long inici = System.nanoTime();
+        for (int i = 1; i < n; i++) {
+            xarxa.connectarAmbCanonada(nodes[i], nodes[i - 1], 100);
+        }
+        boolean ambCicles = GestorXarxes.teCicles(xarxa, origen);
+        long fi = System.nanoTime();
+        System.out.printf("Cadena inversa de %d nodes: %.3f s%n", n, (fi - inici) / 1e9);
+        comprovar(!ambCicles, "la cadena inversa no té cicles");
+
+        xarxa.connectarAmbCanonada(nodes[1], nodes[n / 2], 100);
+        comprovar(GestorXarxes.teCicles(xarxa, origen), "la cadena tancada té cicles");
+    }
+
+    /** @brief Prova amb xarxes aleatòries
+     @pre ---
+     @post Compara les respostes de teCicles amb l'algorisme de Kahn en XARXES_ALEATORIES xarxes aleatòries
+     */
+    private static void provaAleatoria(Random aleatori) {
+        Coordenades c = new Coordenades(0.0, 0.0);
+        int consultes = 0;
+        for (int x = 0; x < XARXES_ALEATORIES; x++) {
+            Xarxa xarxa = new Xarxa();
+            NodeAixeta[] nodes = new NodeAixeta[NODES_ALEATORIS];
+            List<Integer> origens = new ArrayList<>();
+            for (int i = 0; i < NODES_ALEATORIS; i++) {
+                if (i % 10 == 0) {
+                    Origen origen = new Origen("node" + i, c);
+                    xarxa.afegir(origen);
+                    nodes[i] = origen;
+                    origens.add(i);
+                }
+                else {
+                    Connexio connexio = new Connexio("node" + i, c);
+                    xarxa.afegir(connexio);
+                    nodes[i] = connexio;
+                }
+            }
+
+            //canonades cap a un node afegit abans, afegides de la més baixa a la més alta, i de tant en tant una al revés
+            List<int[]> canonades = new ArrayList<>();
+            Set<Long> parelles = new HashSet<>();
+            while (canonades.size() < CANONADES_ALEATORIES) {
+                int v2 = aleatori.nextInt(NODES_ALEATORIS - 1);
+                int v1 = v2 + 1 + aleatori.nextInt(Math.min(50, NODES_ALEATORIS - 1 - v2));
+                if (aleatori.nextDouble() < PROBABILITAT_CICLE) {
+                    int v = v1;
+                    v1 = v2;
+                    v2 = v;
+                }
+                long parella = (long) Math.min(v1, v2) * NODES_ALEATORIS + Math.max(v1, v2);
+                if (parelles.add(parella)) {
+                    canonades.add(new int[] {v1, v2});
+                }
+            }
+            canonades.sort((a, b) -> Integer.compare(Math.min(a[0], a[1]), Math.min(b[0], b[1])));
+
+            List<List<Integer>> sortides = new ArrayList<>();
+            for (int i = 0; i < NODES_ALEATORIS; i++) {
+                sortides.add(new ArrayList<>());
+            }
+            for (int[] canonada : canonades) {
+                xarxa.connectarAmbCanonada(nodes[canonada[0]], nodes[canonada[1]], 100);
+                sortides.get(canonada[0]).add(canonada[1]);
+                if (aleatori.nextDouble() < PROBABILITAT_CONSULTA) {
+                    int o = origens.get(aleatori.nextInt(origens.size()));
+                    consultes++;
+                    comprovar(GestorXarxes.teCicles(xarxa, (Origen) nodes[o]) == teCicles(sortides, o),
+                            "xarxa " + x + ", component de node" + o);
+                }
+            }
+            for (int o : origens) {
+                consultes++;
+                comprovar(GestorXarxes.teCicles(xarxa, (Origen) nodes[o]) == teCicles(sortides, o),
+                        "xarxa " + x + " acabada, component de node" + o);
+            }
+        }
+        System.out.println("Consultes a xarxes aleatòries: " + consultes);
+    }
+
+    /** @brief Té cicles (referència)
+     @pre 0 <= o < sortides.size()
+     @post Diu si la component connexa de o té cicles, amb l'algorisme de Kahn sobre tota la component
+     */
+    private static boolean teCicles(List<List<Integer>> sortides, int o) {
+        int n = sortides.size();
+        List<List<Integer>> veins = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            veins.add(new ArrayList<>());
+        }
+        int[] grauEntrada = new int[n];
+        for (int v = 0; v < n; v++) {
+            for (int w : sortides.get(v)) {
+                veins.get(v).add(w);
+                veins.get(w).add(v);
+                grauEntrada[w]++;
+            }
+        }
+
+        boolean[] visitat = new boolean[n];
+        Deque<Integer> pendents = new ArrayDeque<>();
+        List<Integer> component = new ArrayList<>();
+        visitat[o] = true;
+        pendents.push(o);
+        while (!pendents.isEmpty()) {
+            int v = pendents.pop();
+            component.add(v);
+            for (int w : veins.get(v)) {
+                if (!visitat[w]) {
+                    visitat[w] = true;
+                    pendents.push(w);
+                }
+            }
+        }
+
+        for (int v : component) {
+            if (grauEntrada[v] == 0) {
+                pendents.push(v);
+            }
+        }
+        int ordenats = 0;
+        while (!pendents.isEmpty()) {
+            int v = pendents.pop();
+            ordenats++;
+            for (int w : sortides.get(v)) {
+                if (--grauEntrada[w] == 0) {
+                    pendents.push(w);
+                }
+            }
+        }
+        return ordenats < component.size();
+    }
+
+    /** @brief Comprovar
+     @pre ---
+     @post Si correcte és fals, compta un error i el mostra si encara no se n'han mostrat ERRORS_MOSTRATS
+     */
+    private static void comprovar(boolean correcte, String descripcio) {
+        if (!correcte) {
+            if (_errors < ERRORS_MOSTRATS) {
+                System.out.println("Error: " + descripcio);
+            }
+            _errors++;
+        }
+    }
+}